@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.benchmarks;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import com.github.javaparser.JavaParser;
+import com.gzoltar.locstostms.output.OutputFormat;
+import com.gzoltar.locstostms.output.StatementWriter;
+import com.gzoltar.locstostms.statements.StatementExplorer;
+import com.gzoltar.locstostms.statements.StatementMap;
+
+/**
+ * Benchmarks writing the statements of already parsed java files in each output format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputBenchmark {
+
+  /**
+   * Either the examples of the unit tests or the number of lines of a synthetic class.
+   */
+  @Param({Sources.EXAMPLES, "100", "1000", "10000"})
+  public String corpus;
+
+  @Param({"TEXT", "BINARY"})
+  public OutputFormat format;
+
+  private final List<StatementMap> statements = new ArrayList<StatementMap>();
+
+  private int lines;
+
+  private File outputFile;
+
+  @Setup
+  public void setup() throws Exception {
+    this.lines = 0;
+    for (String source : Sources.load(this.corpus)) {
+      this.statements.add(StatementExplorer.explore(JavaParser.parse(new StringReader(source),
+          true)));
+      this.lines += Sources.lines(source);
+    }
+    this.outputFile = File.createTempFile("locstostms", ".out");
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.outputFile.delete();
+  }
+
+  @Benchmark
+  public long write(final Throughput throughput) throws Exception {
+    StatementWriter writer = this.format.open(this.outputFile);
+    try {
+      for (int i = 0; i < this.statements.size(); i++) {
+        writer.write("org.foo.Synthetic" + i, this.statements.get(i));
+      }
+    } finally {
+      writer.close();
+    }
+    throughput.add(this.statements.size(), this.lines);
+    return writer.getBytes();
+  }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.benchmarks;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.gzoltar.locstostms.statements.StatementExplorer;
+
+/**
+ * Benchmarks the two phases of parsing a java file, i.e., building the AST with JavaParser and
+ * exploring it to aggregate lines per statement, separately and together.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+  /**
+   * Either the examples of the unit tests or the number of lines of a synthetic class.
+   */
+  @Param({Sources.EXAMPLES, "100", "1000", "10000"})
+  public String corpus;
+
+  private List<String> sources;
+
+  private List<CompilationUnit> compilationUnits;
+
+  private int lines;
+
+  @Setup
+  public void setup() throws Exception {
+    this.sources = Sources.load(this.corpus);
+    this.compilationUnits = new ArrayList<CompilationUnit>();
+    this.lines = 0;
+    for (String source : this.sources) {
+      this.compilationUnits.add(JavaParser.parse(new StringReader(source), true));
+      this.lines += Sources.lines(source);
+    }
+  }
+
+  @Benchmark
+  public void javaParser(final Throughput throughput, final Blackhole blackhole)
+      throws Exception {
+    for (String source : this.sources) {
+      blackhole.consume(JavaParser.parse(new StringReader(source), true));
+    }
+    throughput.add(this.sources.size(), this.lines);
+  }
+
+  @Benchmark
+  public void explore(final Throughput throughput, final Blackhole blackhole) {
+    for (CompilationUnit compilationUnit : this.compilationUnits) {
+      blackhole.consume(StatementExplorer.explore(compilationUnit));
+    }
+    throughput.add(this.sources.size(), this.lines);
+  }
+
+  @Benchmark
+  public void parseAndExplore(final Throughput throughput, final Blackhole blackhole)
+      throws Exception {
+    for (String source : this.sources) {
+      blackhole.consume(
+          StatementExplorer.explore(JavaParser.parse(new StringReader(source), true)));
+    }
+    throughput.add(this.sources.size(), this.lines);
+  }
+}
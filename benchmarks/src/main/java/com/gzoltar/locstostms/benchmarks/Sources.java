@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Java sources used by the benchmarks: either the examples of the unit tests or synthetic classes
+ * of a given number of lines.
+ */
+final class Sources {
+
+  /**
+   * Name of the corpus of examples of the unit tests.
+   */
+  static final String EXAMPLES = "examples";
+
+  private static final String[] EXAMPLE_FILES = {"Annotation", "ClassDefinition", "Comments",
+      "EnumDeclaration", "Fields", "ForLoop", "IfCondition", "MethodArguments", "WhileLoop"};
+
+  private Sources() {
+    // no-op
+  }
+
+  /**
+   * Returns the sources of a corpus.
+   * 
+   * @param corpus either {@link #EXAMPLES} or the (approximate) number of lines of a synthetic
+   *        class
+   * @return list of java sources
+   * @throws IOException if the examples cannot be read
+   */
+  static List<String> load(final String corpus) throws IOException {
+    List<String> sources = new ArrayList<String>();
+    if (EXAMPLES.equals(corpus)) {
+      for (String name : EXAMPLE_FILES) {
+        sources.add(read("examples/" + name + ".java"));
+      }
+    } else {
+      sources.add(generate(Integer.parseInt(corpus)));
+    }
+    return sources;
+  }
+
+  /**
+   * Returns the number of lines of a java source.
+   * 
+   * @param source a java source
+   * @return number of lines
+   */
+  static int lines(final CharSequence source) {
+    int lines = 1;
+    for (int i = 0; i < source.length(); i++) {
+      if (source.charAt(i) == '\n') {
+        lines++;
+      }
+    }
+    return lines;
+  }
+
+  private static String read(final String resource) throws IOException {
+    try (InputStream in = Sources.class.getClassLoader().getResourceAsStream(resource)) {
+      if (in == null) {
+        throw new IOException("Resource not found: " + resource);
+      }
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int n;
+      while ((n = in.read(buffer)) >= 0) {
+        bytes.write(buffer, 0, n);
+      }
+      return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Generates a class with a mix of single-line and multi-line statements, nested expressions,
+   * fields and comments, similar to the examples of the unit tests.
+   */
+  private static String generate(final int lines) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("package org.foo;\n\n");
+    sb.append("public class Synthetic {\n");
+
+    int total = 3;
+    for (int method = 0; total < lines; method++) {
+      StringBuilder block = new StringBuilder();
+      block.append("  /**\n   * Method ").append(method).append(".\n   */\n");
+      block.append("  private String[] array").append(method).append(" = {\n");
+      block.append("      \"1\", \"2\", \"3\",\n      \"4\", \"5\", \"6\"\n  };\n\n");
+      block.append("  public int method").append(method).append("(int a,\n      int b) {\n");
+      block.append("    int c = a + b;\n");
+      block.append("    if (a < 10\n        && b > 0) {\n");
+      block.append("      c = Math.max(a,\n          b);\n    }\n");
+      block.append("    for (int i = 0;\n        i < b;\n        i++) {\n");
+      block.append("      c += i; // comment\n    }\n");
+      block.append("    String s = \"Hello \" +\n        \"World \" +\n        c;\n");
+      block.append("    return s.length()\n        + c;\n");
+      block.append("  }\n\n");
+
+      sb.append(block);
+      total += lines(block) - 1;
+    }
+
+    sb.append("}\n");
+    return sb.toString();
+  }
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Secondary JMH results: as counters are of type {@link AuxCounters.Type#OPERATIONS}, JMH reports
+ * them as files/s and lines/s next to the primary score of each benchmark.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+
+  /**
+   * Number of java files processed.
+   */
+  public long files;
+
+  /**
+   * Number of lines of code processed.
+   */
+  public long lines;
+
+  @Setup(Level.Iteration)
+  public void reset() {
+    this.files = 0;
+    this.lines = 0;
+  }
+
+  void add(final int numFiles, final int numLines) {
+    this.files += numFiles;
+    this.lines += numLines;
+  }
+}
@@ -0,0 +1,226 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.commands;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.kohsuke.args4j.Option;
+import com.gzoltar.locstostms.Command;
+import com.gzoltar.locstostms.output.BinaryStatementFile;
+import com.gzoltar.locstostms.output.LineIndex;
+import com.gzoltar.locstostms.output.OutputFormat;
+import com.gzoltar.locstostms.output.StatementReader;
+
+/**
+ * The <code>collapse</code> command, which turns line-level GZoltar spectra into statement-level
+ * spectra.
+ * 
+ * <p>
+ * Each component of the spectra file is a <code>path.java#line</code> identifier, as written by
+ * the <code>locstostms</code> command, and each row of the matrix file is a test: one
+ * <code>0</code>/<code>1</code> column per component, followed by the outcome of the test. All
+ * lines of the same statement are collapsed into a single <code>path.java#statement</code>
+ * component, covered by a test if any of its lines is. Components that are not part of any
+ * (multi-line) statement are kept as they are. The matrix is processed in a single streaming
+ * pass: memory depends on the number of components, not on the number of tests.
+ * </p>
+ */
+public class Collapse extends Command {
+
+  @Option(name = "--statementsFile",
+      usage = "output of the locstostms command, in text, binary or index format",
+      metaVar = "<file>", required = true)
+  private File statementsFile = null;
+
+  @Option(name = "--spectraFile", usage = "line-level spectra file, one path.java#line per line",
+      metaVar = "<file>", required = true)
+  private File spectraFile = null;
+
+  @Option(name = "--matrixFile", usage = "line-level matrix file, one row per test",
+      metaVar = "<file>", required = true)
+  private File matrixFile = null;
+
+  @Option(name = "--outputSpectraFile",
+      usage = "file to which the statement-level spectra is written", metaVar = "<file>",
+      required = true)
+  private File outputSpectraFile = null;
+
+  @Option(name = "--outputMatrixFile",
+      usage = "file to which the statement-level matrix is written", metaVar = "<file>",
+      required = true)
+  private File outputMatrixFile = null;
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String description() {
+    return "Collapses line-level GZoltar spectra into statement-level spectra.";
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int execute(final PrintStream out, final PrintStream err) throws Exception {
+    out.println("* " + this.description());
+
+    final LineIndex index = loadStatements(this.statementsFile);
+
+    // statement column of each line column, statements in order of their first line
+    final Map<String, Integer> statements = new LinkedHashMap<String, Integer>();
+    int[] columns = new int[1024];
+    int numLines = 0;
+    try (BufferedReader reader =
+        Files.newBufferedReader(this.spectraFile.toPath(), StandardCharsets.UTF_8)) {
+      String component;
+      while ((component = reader.readLine()) != null) {
+        String statement = statementOf(index, component);
+        Integer column = statements.get(statement);
+        if (column == null) {
+          column = statements.size();
+          statements.put(statement, column);
+        }
+        if (numLines == columns.length) {
+          columns = Arrays.copyOf(columns, 2 * numLines);
+        }
+        columns[numLines++] = column;
+      }
+    }
+
+    try (BufferedWriter writer =
+        Files.newBufferedWriter(this.outputSpectraFile.toPath(), StandardCharsets.UTF_8)) {
+      for (String statement : statements.keySet()) {
+        writer.write(statement);
+        writer.write('\n');
+      }
+    }
+
+    final boolean[] covered = new boolean[statements.size()];
+    final StringBuilder row = new StringBuilder(2 * statements.size() + 16);
+    long numRows = 0;
+    try (BufferedReader reader =
+        Files.newBufferedReader(this.matrixFile.toPath(), StandardCharsets.UTF_8);
+        BufferedWriter writer =
+            Files.newBufferedWriter(this.outputMatrixFile.toPath(), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.trim().isEmpty()) {
+          continue;
+        }
+        numRows++;
+        Arrays.fill(covered, false);
+
+        // every column but the last one, the outcome of the test, is a line
+        int column = 0;
+        int outcome = -1;
+        int i = 0;
+        while (i < line.length()) {
+          if (line.charAt(i) == ' ') {
+            i++;
+            continue;
+          }
+          int end = line.indexOf(' ', i);
+          if (end < 0) {
+            end = line.length();
+          }
+          if (column < numLines && (end - i != 1 || line.charAt(i) != '0')) {
+            covered[columns[column]] = true;
+          }
+          outcome = i;
+          column++;
+          i = end;
+        }
+        if (column != numLines + 1) {
+          err.println("Row " + numRows + " of " + this.matrixFile.getPath() + " has "
+              + Math.max(0, column - 1) + " columns, " + numLines + " expected");
+          return -1;
+        }
+
+        row.setLength(0);
+        for (boolean c : covered) {
+          row.append(c ? '1' : '0').append(' ');
+        }
+        row.append(line, outcome, line.length()).append('\n');
+        writer.append(row);
+      }
+    }
+
+    out.println("* Written: " + statements.size() + " statements (of " + numLines + " lines) to "
+        + this.outputSpectraFile.getAbsolutePath());
+    out.println("* Written: " + numRows + " rows to " + this.outputMatrixFile.getAbsolutePath());
+    return 0;
+  }
+
+  /**
+   * Returns the component of the statement of a line.
+   * 
+   * @param index statements of each line
+   * @param component a <code>path.java#line</code> component
+   * @return a <code>path.java#statement</code> component, or the component itself if it is not
+   *         part of any statement
+   */
+  private static String statementOf(final LineIndex index, final String component) {
+    int hash = component.lastIndexOf('#');
+    if (hash < 0) {
+      return component;
+    }
+    int line;
+    try {
+      line = Integer.parseInt(component.substring(hash + 1));
+    } catch (NumberFormatException e) {
+      return component;
+    }
+    int statement = index.statement(component.substring(0, hash), line);
+    if (statement == LineIndex.NO_STATEMENT || statement == line) {
+      return component;
+    }
+    return component.substring(0, hash + 1) + statement;
+  }
+
+  /**
+   * Loads the output of the <code>locstostms</code> command, in the text, the binary or the index
+   * format.
+   * 
+   * @param statementsFile output of the <code>locstostms</code> command
+   * @return a {@link LineIndex} object
+   * @throws IOException if the file cannot be read or it is malformed
+   */
+  static LineIndex loadStatements(final File statementsFile) throws IOException {
+    if (LineIndex.isIndex(statementsFile)) {
+      return LineIndex.load(statementsFile);
+    }
+
+    OutputFormat format =
+        BinaryStatementFile.isBinary(statementsFile) ? OutputFormat.BINARY : OutputFormat.TEXT;
+    LineIndex.Builder index = new LineIndex.Builder();
+    try (StatementReader reader = format.read(statementsFile)) {
+      while (reader.next()) {
+        index.add(reader.path(), reader.statements());
+      }
+    }
+    return index.build();
+  }
+}
@@ -33,7 +33,8 @@ public final class Commands {
    * @return list of new instances of all available commands
    */
   public static List<Command> get() {
-    return Arrays.asList(new Version(), new LocsToStms());
+    return Arrays.asList(new Version(), new LocsToStms(), new Serve(), new Collapse(),
+        new Merge());
   }
 
   /**
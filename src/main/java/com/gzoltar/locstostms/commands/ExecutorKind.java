@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.commands;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Kinds of executors on which java files are read and parsed.
+ */
+public enum ExecutorKind {
+
+  /**
+   * A fixed pool of platform threads, one per java file parsed in parallel.
+   */
+  PLATFORM {
+    @Override
+    public boolean isSupported() {
+      return true;
+    }
+
+    @Override
+    public ExecutorService create(final int threads) {
+      return Executors.newFixedThreadPool(threads);
+    }
+  },
+
+  /**
+   * A new virtual thread per java file (Java 21 or later). A java file that waits for I/O, e.g.,
+   * on a network file system, does not hold an OS thread, and parsing is spread by the JVM over
+   * as many OS threads as there are processors. The number of java files in flight is only bounded
+   * by the memory budget (see {@link ParsePipeline}).
+   */
+  VIRTUAL {
+    @Override
+    public boolean isSupported() {
+      return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    @Override
+    public ExecutorService create(final int threads) {
+      if (!this.isSupported()) {
+        throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+      }
+      try {
+        return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+      } catch (IllegalAccessException | InvocationTargetException e) {
+        throw new UnsupportedOperationException("Virtual threads are not available", e);
+      }
+    }
+  };
+
+  /**
+   * <code>Executors.newVirtualThreadPerTaskExecutor()</code>, looked up at runtime because the
+   * project is compiled for Java 7.
+   */
+  private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = lookupVirtual();
+
+  private static Method lookupVirtual() {
+    try {
+      return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns <code>true</code> if this kind of executor is supported by the running JVM.
+   * 
+   * @return <code>true</code> if {@link #create(int)} can be called
+   */
+  public abstract boolean isSupported();
+
+  /**
+   * Creates an executor, which must be shut down by the caller.
+   * 
+   * @param threads number of java files parsed in parallel (ignored by {@link #VIRTUAL})
+   * @return a {@link ExecutorService} object
+   * @throws UnsupportedOperationException if this kind of executor is not supported
+   */
+  public abstract ExecutorService create(int threads);
+}
@@ -16,38 +16,82 @@
  */
 package com.gzoltar.locstostms.commands;
 
-import java.io.BufferedWriter;
+import java.io.CharArrayReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileWriter;
-import java.io.InputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeoutException;
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.Option;
 import com.github.javaparser.JavaParser;
 import com.github.javaparser.ast.CompilationUnit;
-import com.github.javaparser.ast.Node;
-import com.github.javaparser.ast.body.EnumConstantDeclaration;
-import com.github.javaparser.ast.body.VariableDeclarator;
 import com.gzoltar.locstostms.Command;
+import com.gzoltar.locstostms.commands.ParsePipeline.Job;
+import com.gzoltar.locstostms.output.BinaryStatementUpdater;
+import com.gzoltar.locstostms.output.OutputFormat;
+import com.gzoltar.locstostms.output.SpanIndexWriter;
+import com.gzoltar.locstostms.output.StatementWriter;
+import com.gzoltar.locstostms.sources.SourceIndex;
+import com.gzoltar.locstostms.sources.SourceReader;
+import com.gzoltar.locstostms.statements.Engine;
+import com.gzoltar.locstostms.statements.StatementAnalyzer;
+import com.gzoltar.locstostms.statements.StatementCache;
+import com.gzoltar.locstostms.statements.StatementDiff;
+import com.gzoltar.locstostms.statements.StatementExplorer;
+import com.gzoltar.locstostms.statements.StatementLexer;
+import com.gzoltar.locstostms.statements.StatementLru;
+import com.gzoltar.locstostms.statements.StatementMap;
+import com.gzoltar.locstostms.statements.StatementSpans;
+import com.gzoltar.locstostms.stats.Statistics;
+import com.gzoltar.locstostms.stats.Statistics.Phase;
 
 /**
  * The <code>locstostms</code> command.
  */
 public class LocsToStms extends Command {
 
-  @Argument(usage = "list of classes to parse, e.g., org.foo.Bar", metaVar = "<classes>",
-      required = true)
+  @Argument(usage = "list of classes to parse, e.g., org.foo.Bar (or paths of java files in the "
+      + "source directories, e.g., src/main/java/org/foo/Bar.java)", metaVar = "<classes>",
+      required = false)
   private List<String> classes = new ArrayList<String>();
 
-  @Option(name = "--srcDirs", usage = "list of directories with .java files", metaVar = "<dir>",
-      required = true)
+  @Option(name = "--classesFile",
+      usage = "file with the list of classes to parse, one per line (in addition to <classes>)",
+      metaVar = "<file>", required = false)
+  private File classesFile = null;
+
+  @Option(name = "--all", usage = "parse all java files in the source directories",
+      forbids = {"--classesFile"}, required = false)
+  private boolean all = false;
+
+  @Option(name = "--update",
+      usage = "only parse the given classes and replace their sections in an existing binary "
+          + "output file (sections of classes whose java file no longer exists are removed)",
+      forbids = {"--all"}, required = false)
+  private boolean update = false;
+
+  @Option(name = "--srcDirs",
+      usage = "list of directories (or -sources.jar/.zip archives) with .java files",
+      metaVar = "<dir>", required = true)
   private List<File> srcDirs = new ArrayList<File>();
 
   @Option(name = "--outputFile",
@@ -55,7 +99,91 @@ public class LocsToStms extends Command {
       metaVar = "<file>", required = false)
   private File outputFile = new File("locstostms.txt");
 
-  private final Map<Integer, Set<Integer>> javaStatements = new HashMap<Integer, Set<Integer>>();
+  @Option(name = "--format", usage = "format of the output file",
+      metaVar = "<format>", required = false)
+  private OutputFormat format = OutputFormat.TEXT;
+
+  @Option(name = "--engine", usage = "engine that computes the statements of each java file",
+      metaVar = "<engine>", required = false)
+  private Engine engine = Engine.JAVAPARSER;
+
+  @Option(name = "--differential",
+      usage = "compute the statements of each java file with every engine and report every "
+          + "statement on which they disagree",
+      forbids = {"--cacheDir"}, required = false)
+  private boolean differential = false;
+
+  @Option(name = "--encoding", usage = "charset of the java files (default 'UTF-8')",
+      metaVar = "<charset>", required = false)
+  private String encoding = StandardCharsets.UTF_8.name();
+
+  @Option(name = "--shard",
+      usage = "only parse the java files of the i-th of n shards (0 <= i < n), partitioned by "
+          + "path",
+      metaVar = "<i/n>", required = false)
+  private String shard = null;
+
+  @Option(name = "--threads",
+      usage = "number of java files parsed in parallel (default: number of available processors)",
+      metaVar = "<n>", required = false)
+  private int threads = Runtime.getRuntime().availableProcessors();
+
+  @Option(name = "--executor",
+      usage = "threads on which java files are read and parsed: a fixed pool of --threads "
+          + "platform threads (default), or a virtual thread per java file (Java 21 or later)",
+      metaVar = "<kind>", required = false)
+  private ExecutorKind executor = ExecutorKind.PLATFORM;
+
+  @Option(name = "--cacheDir",
+      usage = "directory in which the statements of each java file are cached and reused by "
+          + "following runs if the file has not changed",
+      metaVar = "<dir>", required = false)
+  private File cacheDir = null;
+
+  @Option(name = "--stats",
+      usage = "print the time spent in each phase, number of files, nodes and statements, and "
+          + "the slowest files",
+      required = false)
+  private boolean stats = false;
+
+  @Option(name = "--statsFile", usage = "file to which statistics are written as JSON",
+      metaVar = "<file>", required = false)
+  private File statsFile = null;
+
+  @Option(name = "--slowestFiles", usage = "number of slowest files reported in the statistics",
+      metaVar = "<n>", required = false)
+  private int slowestFiles = 10;
+
+  @Option(name = "--fileTimeout",
+      usage = "maximum time spent on a single java file, in milliseconds, after which the file is "
+          + "skipped (default: no limit)",
+      metaVar = "<ms>", required = false)
+  private long fileTimeout = 0;
+
+  @Option(name = "--failuresFile",
+      usage = "file to which the java files that failed or timed out are written, one "
+          + "'path<TAB>failed|timeout<TAB>reason' line per file",
+      metaVar = "<file>", required = false)
+  private File failuresFile = null;
+
+  @Option(name = "--memoryBudget",
+      usage = "approximate heap, in MB, for the java files that are parsed or wait to be written "
+          + "(default: a quarter of the maximum heap)",
+      metaVar = "<MB>", required = false)
+  private long memoryBudget = 0;
+
+  @Option(name = "--spansFile",
+      usage = "file to which the position and kind of every statement and declaration of each "
+          + "java file are written as a columnar index (requires --engine javaparser, java files "
+          + "are always parsed)",
+      metaVar = "<file>", forbids = {"--update"}, required = false)
+  private File spansFile = null;
+
+  private static final int DEFAULT_BUDGET_FRACTION = 4;
+
+  private static final StatementAnalyzer ANALYZER = new StatementAnalyzer();
+
+  private StatementMap javaStatements = StatementMap.EMPTY;
 
   /**
    * {@inheritDoc}
@@ -78,45 +206,397 @@ public class LocsToStms extends Command {
    */
   @Override
   public int execute(final PrintStream out, final PrintStream err) throws Exception {
+    return this.execute(out, err, null, null, null);
+  }
+
+  /**
+   * Executes the command with state that outlives it, see {@link Serve}.
+   * 
+   * @param out std out
+   * @param err std err
+   * @param sharedExecutor executor by which java files are parsed, or <code>null</code> to create
+   *        one of <code>--threads</code> threads for this execution only
+   * @param memory in-memory cache of statements, may be <code>null</code>
+   * @param sharedSources index of the source directories opened by {@link SourceIndex#open(List)},
+   *        which outlives this execution, or <code>null</code> to open one for this execution only
+   *        (unused with <code>--all</code>, which always walks the source directories)
+   * @return exit code, 0 for normal operation
+   * @throws Exception any exception that my occur during execution
+   */
+  int execute(final PrintStream out, final PrintStream err, final ExecutorService sharedExecutor,
+      final StatementLru memory, final SourceIndex sharedSources) throws Exception {
     out.println("* " + this.description());
 
-    this.outputFile.createNewFile();
-    FileWriter fw = new FileWriter(this.outputFile.getAbsoluteFile(), false);
-    BufferedWriter bw = new BufferedWriter(fw);
-
-    for (String clazz : this.classes) {
-      for (File srcDir : this.srcDirs) {
-        String fileName = srcDir.getAbsolutePath() + System.getProperty("file.separator")
-            + clazz.replace(".", System.getProperty("file.separator")) + ".java";
-        File javaFile = new File(fileName);
-        if (!javaFile.exists()) {
-          continue;
+    if (this.threads < 1) {
+      err.println("Invalid number of threads: " + this.threads);
+      return -1;
+    }
+
+    final Charset charset;
+    try {
+      charset = Charset.forName(this.encoding);
+    } catch (IllegalArgumentException e) {
+      // either an illegal or an unsupported charset name
+      err.println("Unsupported encoding: " + this.encoding);
+      return -1;
+    }
+
+    int shardIndex = 0;
+    int shardCount = 1;
+    if (this.shard != null) {
+      int slash = this.shard.indexOf('/');
+      try {
+        shardIndex = Integer.parseInt(this.shard.substring(0, Math.max(0, slash)));
+        shardCount = Integer.parseInt(this.shard.substring(slash + 1));
+      } catch (NumberFormatException e) {
+        shardCount = 0;
+      }
+      if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+        err.println("Invalid shard: " + this.shard);
+        return -1;
+      }
+    }
+    final int finalShardIndex = shardIndex;
+    final int finalShardCount = shardCount;
+
+    if (!this.executor.isSupported()) {
+      err.println("Unsupported executor: " + this.executor.name().toLowerCase(Locale.ROOT)
+          + " (virtual threads require Java 21 or later)");
+      return -1;
+    }
+
+    if (this.memoryBudget < 0) {
+      err.println("Invalid memory budget: " + this.memoryBudget);
+      return -1;
+    }
+
+    if (this.fileTimeout < 0) {
+      err.println("Invalid file timeout: " + this.fileTimeout);
+      return -1;
+    }
+
+    if (this.update && this.format != OutputFormat.BINARY) {
+      err.println("--update requires --format binary");
+      return -1;
+    }
+
+    if (this.spansFile != null && this.engine != Engine.JAVAPARSER) {
+      err.println("--spansFile requires --engine javaparser");
+      return -1;
+    }
+
+    // an update only parses the changed java files, the spans of all others would be lost
+    if (this.update && this.spansFile != null) {
+      err.println("--spansFile cannot be combined with --update");
+      return -1;
+    }
+
+    final List<String> javaClasses = new ArrayList<String>();
+    List<String> entries = new ArrayList<String>(this.classes);
+    if (this.classesFile != null) {
+      entries.addAll(readClasses(this.classesFile));
+    }
+    for (String entry : entries) {
+      String clazz = this.toClassName(entry);
+      if (clazz == null) {
+        err.println("* Not in any source directory: " + entry);
+        continue;
+      }
+      javaClasses.add(clazz);
+    }
+    if (this.all && !entries.isEmpty()) {
+      err.println("--all cannot be combined with a list of classes");
+      return -1;
+    }
+    if (!this.all && entries.isEmpty()) {
+      err.println("No classes to parse, either provide a list of classes or use --all");
+      return -1;
+    }
+
+    final Statistics statistics = new Statistics(this.slowestFiles);
+
+    // results of different engines or of different charsets must never be mixed, the
+    // differential mode must always run every engine, and spans are not cached
+    final StatementCache cache = this.differential || this.spansFile != null
+        || (this.cacheDir == null && memory == null) ? null : new StatementCache(this.cacheDir,
+            toolVersion() + "/" + this.engine.name() + "/" + charset.name(), memory);
+
+    final Map<Path, List<String>> disagreements =
+        this.differential ? new ConcurrentHashMap<Path, List<String>>() : null;
+
+    final BinaryStatementUpdater updater;
+    try {
+      updater = this.update ? new BinaryStatementUpdater(this.outputFile.getAbsoluteFile()) : null;
+    } catch (IOException e) {
+      err.println("Cannot update " + this.outputFile.getAbsolutePath() + ": " + e.getMessage());
+      return -1;
+    }
+    final StatementWriter writer =
+        updater != null ? updater : this.format.open(this.outputFile.getAbsoluteFile());
+    final SpanIndexWriter spansWriter;
+    try {
+      spansWriter =
+          this.spansFile == null ? null : new SpanIndexWriter(this.spansFile.getAbsoluteFile());
+    } catch (IOException e) {
+      writer.close();
+      throw e;
+    }
+
+    final Engine engine = this.engine;
+    int numFiles = 0;
+    int numParsed = 0;
+    // java files that could not be parsed are skipped, and reported once all others are written
+    final List<String> failures = new ArrayList<String>();
+    final ExecutorService executor =
+        sharedExecutor != null ? sharedExecutor : this.executor.create(this.threads);
+    // each file is parsed independently into its own map of statements, ahead of the writer but
+    // within the memory budget
+    final ParsePipeline pipeline = new ParsePipeline(executor, charset, engine, cache, statistics,
+        disagreements, spansWriter != null, this.memoryBudget > 0 ? this.memoryBudget << 20
+            : Runtime.getRuntime().maxMemory() / DEFAULT_BUDGET_FRACTION);
+    SourceIndex sourceIndex = null;
+    try {
+      final Statistics.Stopwatch lookup = statistics.start();
+      if (this.all) {
+        // files are parsed while source directories are still being walked, and written sorted
+        // by class name
+        final Map<String, Job> discovered = new TreeMap<String, Job>(StatementWriter.CLASS_ORDER);
+        sourceIndex = SourceIndex.build(this.srcDirs, new SourceIndex.Listener() {
+          @Override
+          public void found(final String className, final Path javaFile) {
+            if (shardOf(className, finalShardCount) != finalShardIndex) {
+              return;
+            }
+            Job job = ParsePipeline.job(className, javaFile);
+            pipeline.trySubmit(job);
+            discovered.put(className, job);
+          }
+        });
+        for (Job job : discovered.values()) {
+          pipeline.add(job);
         }
-        out.println("* Parsing: " + fileName);
+      } else {
+        // java files are written in the order in which classes have been provided, or sorted by
+        // class name when an existing file is updated
+        Collection<String> classes = javaClasses;
+        if (updater != null) {
+          classes = new TreeSet<String>(StatementWriter.CLASS_ORDER);
+          classes.addAll(javaClasses);
+        }
+        // only the given classes are looked up, source directories are not walked
+        sourceIndex = sharedSources != null ? sharedSources : SourceIndex.open(this.srcDirs);
+        for (String clazz : classes) {
+          if (shardOf(clazz, shardCount) != shardIndex) {
+            continue;
+          }
+          Path javaFile = sourceIndex.find(clazz);
+          if (javaFile == null && updater != null) {
+            // the java file has been deleted
+            pipeline.add(ParsePipeline.job(clazz, null));
+            continue;
+          }
+          if (javaFile == null) {
+            err.println("* Class not found: " + clazz);
+            continue;
+          }
+          pipeline.add(ParsePipeline.job(clazz, javaFile));
+        }
+      }
+      lookup.lap(Phase.LOOKUP);
+      numFiles = pipeline.size();
 
-        this.javaStatements.clear();
-        this.parse(javaFile);
+      // results are written in the order in which java files have been added to the pipeline, so
+      // that the output is deterministic regardless of the number of threads
+      while (pipeline.hasNext()) {
+        Job job = pipeline.next();
+        try {
+          if (job.javaFile == null) {
+            out.println("* Removing: " + job.clazz);
+            updater.remove(job.clazz);
+            continue;
+          }
+          String path = SourceIndex.toString(job.javaFile);
+          out.println("* Parsing: " + path);
 
-        for (Integer statementNumber : this.javaStatements.keySet()) {
-          for (Integer lineNumber : this.javaStatements.get(statementNumber)) {
-            if (lineNumber.equals(statementNumber)) {
-              // minor optimisation: if a line number and a statement number is equal, skip it
-              continue;
+          StatementMap statements;
+          try {
+            statements = job.await(this.fileTimeout);
+          } catch (TimeoutException e) {
+            // the parser may ignore the interruption, do not let it hold up the other files
+            pipeline.timedOut(job);
+            err.println("* Timed out: " + path + " (" + this.fileTimeout + " ms)");
+            failures.add(path + "\ttimeout\t" + this.fileTimeout + " ms");
+            continue;
+          } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (isFatal(cause)) {
+              throw (Error) cause;
             }
+            String reason = firstLine(cause);
+            err.println("* Failed: " + path + " (" + reason + ")");
+            failures.add(path + "\tfailed\t" + reason);
+            continue;
+          }
+          numParsed++;
 
-            bw.write(clazz.replace(".", "/") + ".java#" + statementNumber + ":"
-                + clazz.replace(".", "/") + ".java#" + lineNumber + "\n");
+          List<String> differences =
+              disagreements == null ? null : disagreements.get(job.javaFile);
+          if (differences != null) {
+            out.println("* Disagreement: " + differences.size() + " statements");
+            for (String difference : differences) {
+              out.println("  " + difference);
+            }
           }
+
+          Statistics.Stopwatch write = statistics.start();
+          writer.write(job.clazz, statements);
+          if (spansWriter != null) {
+            spansWriter.write(job.clazz, job.spans());
+          }
+          write.lap(Phase.WRITE);
+        } finally {
+          // the statements of the java file are no longer needed
+          pipeline.done(job);
+        }
+      }
+    } finally {
+      if (sharedExecutor == null) {
+        executor.shutdownNow();
+      } else {
+        // a shared executor outlives this execution, files that are still pending are dropped
+        pipeline.cancel();
+      }
+      Statistics.Stopwatch close = statistics.start();
+      try {
+        writer.close();
+      } finally {
+        if (spansWriter != null) {
+          spansWriter.close();
         }
+      }
+      close.lap(Phase.WRITE);
+      if (sourceIndex != null && sourceIndex != sharedSources) {
+        sourceIndex.close();
+      }
+    }
+
+    statistics.inFlight(pipeline.getPeakFiles(), pipeline.getPeakUsed());
 
-        break;
+    if (updater != null) {
+      out.println("* Updated: " + numParsed + " files parsed, "
+          + updater.getRemoved() + " removed, " + updater.getCopied() + " unchanged, "
+          + writer.getBytes() + " bytes to " + this.outputFile.getAbsolutePath());
+    } else {
+      out.println("* Written: " + writer.getRows() + " rows, " + writer.getBytes()
+          + " bytes to " + this.outputFile.getAbsolutePath());
+    }
+
+    if (spansWriter != null) {
+      out.println("* Spans: " + spansWriter.getRows() + " rows, " + spansWriter.getBytes()
+          + " bytes to " + this.spansFile.getAbsolutePath());
+    }
+
+    if (!failures.isEmpty()) {
+      out.println("* Failures: " + failures.size() + " of " + numFiles + " files were skipped");
+    }
+    if (this.failuresFile != null) {
+      Files.write(this.failuresFile.toPath(), failures, StandardCharsets.UTF_8);
+    }
+
+    if (cache != null) {
+      out.println("* Cache: " + cache.getHits() + " hits, " + cache.getMisses() + " misses");
+      if (cache.getWriteFailures() > 0) {
+        err.println("* Cannot write to cache: " + cache.getWriteFailures() + " entries were not"
+            + " stored (" + cache.getWriteError() + ")");
+      }
+    }
+
+    if (this.stats) {
+      statistics.print(out);
+    }
+    if (this.statsFile != null) {
+      statistics.writeJson(this.statsFile);
+    }
+
+    if (disagreements != null) {
+      out.println("* Differential: " + disagreements.size() + " of " + numFiles
+          + " files disagree");
+      if (!disagreements.isEmpty()) {
+        return 1;
       }
     }
 
-    bw.close();
     return 0;
   }
 
+  /**
+   * Returns whether an error thrown while parsing a java file must abort the run. JavaParser
+   * reports lexical errors (e.g., an invalid unicode escape) with {@link Error}s, which only
+   * concern that file, as does a stack overflow on a deeply nested file.
+   */
+  private static boolean isFatal(final Throwable t) {
+    return (t instanceof VirtualMachineError && !(t instanceof StackOverflowError))
+        || t instanceof ThreadDeath;
+  }
+
+  private static String firstLine(final Throwable t) {
+    String message = t.getMessage() == null ? t.getClass().getName() : t.getMessage().trim();
+    int newline = message.indexOf('\n');
+    return (newline < 0 ? message : message.substring(0, newline)).replace('\t', ' ').trim();
+  }
+
+  /**
+   * Returns the shard of a class. Shards only depend on the path of the java file of the class
+   * (e.g., org/foo/Bar.java), so that all machines agree on them.
+   * 
+   * @param clazz fully qualified name of the class, e.g., org.foo.Bar
+   * @param shardCount number of shards
+   * @return index of the shard, between 0 and <code>shardCount</code> (exclusive)
+   */
+  static int shardOf(final String clazz, final int shardCount) {
+    // String.hashCode is specified, thus stable across JVMs
+    return ((clazz.replace('.', '/') + ".java").hashCode() & 0x7FFFFFFF) % shardCount;
+  }
+
+  /**
+   * Returns the class of an entry of the list of classes, which may also be the path of a java
+   * file, e.g., as listed by <code>git diff --name-only</code>.
+   * 
+   * @param entry a fully qualified class name or the path of a java file
+   * @return a fully qualified class name, or <code>null</code> if the entry is the path of a java
+   *         file that is not in any source directory
+   */
+  private String toClassName(final String entry) {
+    if (!entry.endsWith(".java")) {
+      return entry;
+    }
+    // the java file may have been deleted
+    Path javaFile = Paths.get(entry).toAbsolutePath().normalize();
+    for (File srcDir : this.srcDirs) {
+      Path root = srcDir.toPath().toAbsolutePath().normalize();
+      if (javaFile.startsWith(root) && !javaFile.equals(root)) {
+        StringBuilder clazz = new StringBuilder();
+        for (Path name : root.relativize(javaFile)) {
+          clazz.append(clazz.length() == 0 ? "" : ".").append(name.toString());
+        }
+        return clazz.substring(0, clazz.length() - ".java".length());
+      }
+    }
+    return null;
+  }
+
+  private static List<String> readClasses(final File classesFile) throws IOException {
+    List<String> classes = new ArrayList<String>();
+    for (String line : Files.readAllLines(classesFile.toPath(), StandardCharsets.UTF_8)) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      classes.add(line);
+    }
+    return classes;
+  }
+
   /**
    * Returns the list of directories to analyse.
    * 
@@ -135,6 +615,105 @@ public class LocsToStms extends Command {
     return this.classes;
   }
 
+  /**
+   * Returns the file with the list of classes to parse.
+   * 
+   * @return a {@link java.io.File} object, or <code>null</code> if not defined
+   */
+  public File getClassesFile() {
+    return this.classesFile;
+  }
+
+  /**
+   * Returns whether all java files in the source directories are parsed.
+   * 
+   * @return <code>true</code> if all java files are parsed
+   */
+  public boolean isAll() {
+    return this.all;
+  }
+
+  /**
+   * Returns the format of the output file.
+   * 
+   * @return a {@link com.gzoltar.locstostms.output.OutputFormat} object
+   */
+  public OutputFormat getFormat() {
+    return this.format;
+  }
+
+  /**
+   * Returns the engine that computes the statements of each java file.
+   * 
+   * @return a {@link com.gzoltar.locstostms.statements.Engine} object
+   */
+  public Engine getEngine() {
+    return this.engine;
+  }
+
+  /**
+   * Returns whether the statements of each java file are computed by every engine and compared.
+   * 
+   * @return <code>true</code> if engines are compared
+   */
+  public boolean isDifferential() {
+    return this.differential;
+  }
+
+  /**
+   * Returns the charset of the java files.
+   * 
+   * @return name of the charset
+   */
+  public String getEncoding() {
+    return this.encoding;
+  }
+
+  /**
+   * Returns the shard of java files to parse.
+   * 
+   * @return a <code>i/n</code> string, or <code>null</code> if all java files are parsed
+   */
+  public String getShard() {
+    return this.shard;
+  }
+
+  /**
+   * Returns the number of java files parsed in parallel.
+   * 
+   * @return number of threads
+   */
+  public int getThreads() {
+    return this.threads;
+  }
+
+  /**
+   * Returns the kind of executor on which java files are parsed.
+   * 
+   * @return a {@link ExecutorKind} object
+   */
+  public ExecutorKind getExecutor() {
+    return this.executor;
+  }
+
+  /**
+   * Returns the directory in which statements are cached.
+   * 
+   * @return a {@link java.io.File} object, or <code>null</code> if no cache is used
+   */
+  public File getCacheDir() {
+    return this.cacheDir;
+  }
+
+  /**
+   * Returns the file to which statistics are written as JSON.
+   * 
+   * @return a {@link java.io.File} object, or <code>null</code> if not defined
+   */
+  public File getStatsFile() {
+    return this.statsFile;
+  }
+
   /**
    * Returns the file to which the outcome of the parse will be written.
    * 
@@ -145,11 +724,30 @@ public class LocsToStms extends Command {
   }
 
   /**
-   * Returns a map of all lines that compose a single Java statement, e.g., 2={2,3,4}.
+   * Returns the file to which the spans of each java file are written.
+   * 
+   * @return a {@link java.io.File} object, or <code>null</code> if spans are not written
+   */
+  public File getSpansFile() {
+    return this.spansFile;
+  }
+
+  /**
+   * Returns a map of all lines that compose a single Java statement, e.g., 2={2,3,4}. This is a
+   * read-only view of {@link #getStatementMap()}.
    * 
    * @return a java.util.Map<Integer, java.util.Set<Integer>> object
    */
   public Map<Integer, Set<Integer>> getJavaStatements() {
+    return this.javaStatements.asMap();
+  }
+
+  /**
+   * Returns all lines that compose a single Java statement of the last parsed file.
+   * 
+   * @return a {@link com.gzoltar.locstostms.statements.StatementMap} object
+   */
+  public StatementMap getStatementMap() {
     return this.javaStatements;
   }
 
@@ -160,73 +758,133 @@ public class LocsToStms extends Command {
    * @throws Exception
    */
   protected void parse(final File javaFile) throws Exception {
-    // creates an input stream for the file to be parsed
-    InputStream in = new FileInputStream(javaFile);
+    this.javaStatements = parseStatements(javaFile);
+  }
 
-    CompilationUnit compilationUnit;
-    try {
-      // parse the file
-      compilationUnit = JavaParser.parse(in);
-    } finally {
-      in.close();
+  /**
+   * Parses a java file, encoded in UTF-8, and returns all its statements. This method can be
+   * safely called by several threads at the same time. Tools that embed
+   * <code>locs-to-stms</code> should rather use a
+   * {@link com.gzoltar.locstostms.statements.StatementAnalyzer}.
+   * 
+   * @param javaFile the java file to parse
+   * @return a {@link com.gzoltar.locstostms.statements.StatementMap} object
+   * @throws Exception
+   */
+  protected static StatementMap parseStatements(final File javaFile) throws Exception {
+    return ANALYZER.analyze(javaFile);
+  }
+
+  /**
+   * Parses a java file and returns all its statements. If a cache is provided, the file is only
+   * parsed if there is no cached result for its content.
+   * 
+   * @param javaFile the java file to parse
+   * @param reader reader of the java file, must not be used by any other thread during the call
+   * @param engine engine that computes the statements
+   * @param cache cache of statements, may be <code>null</code>
+   * @param statistics accumulator of the time spent in each phase
+   * @param disagreements if not <code>null</code>, the file is parsed by every engine and the
+   *        statements on which they disagree, if any, are put in this map
+   * @param spans if not <code>null</code>, the position and kind of every statement and
+   *        declaration found by JavaParser are added to this builder (the cache must not be used)
+   * @return a {@link com.gzoltar.locstostms.statements.StatementMap} object
+   * @throws Exception
+   */
+  protected static StatementMap parseStatements(final Path javaFile, final SourceReader reader,
+      final Engine engine, final StatementCache cache, final Statistics statistics,
+      final Map<Path, List<String>> disagreements, final StatementSpans.Builder spans)
+      throws Exception {
+    final Statistics.Stopwatch stopwatch = statistics.start();
+
+    ByteBuffer content = reader.read(javaFile);
+    stopwatch.lap(Phase.READ);
+
+    String key = null;
+    if (cache != null) {
+      key = cache.key(content);
+      StatementMap cached = cache.get(key);
+      stopwatch.lap(Phase.CACHE);
+      if (cached != null) {
+        statistics.file(SourceIndex.toString(javaFile), stopwatch.elapsed(), 0, cached.size(),
+            cached.pairs());
+        return cached;
+      }
     }
 
-    // explore tree
-    this.explore(compilationUnit);
-  }
+    StatementMap javaParserStatements = null;
+    StatementMap lexerStatements = null;
+    long nodes = 0;
 
-  private void explore(final Node node) {
-    // ignore everything related to comments
-    if (node.getClass().getCanonicalName().startsWith("com.github.javaparser.ast.comments.")) {
-      return;
+    // decoded once for every engine, decoding time is attributed to the first engine
+    CharBuffer source = reader.decode();
+    char[] chars = source.array();
+    int offset = source.arrayOffset() + source.position();
+    int length = source.remaining();
+
+    if (engine == Engine.JAVAPARSER || disagreements != null) {
+      // parse the file
+      CompilationUnit compilationUnit =
+          JavaParser.parse(new InterruptibleReader(chars, offset, length), true);
+      stopwatch.lap(Phase.PARSE);
+
+      // explore tree
+      StatementExplorer explorer = new StatementExplorer();
+      javaParserStatements = explorer.visit(compilationUnit, spans);
+      stopwatch.lap(Phase.EXPLORE);
+      nodes += explorer.getVisitedNodes();
     }
-    if (node.getClass().getCanonicalName()
-        .equals(EnumConstantDeclaration.class.getCanonicalName())) {
-      return;
+
+    if (engine == Engine.LEXER || disagreements != null) {
+      StatementLexer lexer = new StatementLexer();
+      lexerStatements = lexer.scan(chars, offset, length);
+      stopwatch.lap(Phase.LEX);
+      nodes += lexer.getScannedTokens();
     }
 
-    if (node.getChildrenNodes().isEmpty()) {
-      Integer line_number = node.getParentNode().getBeginLine();
+    if (disagreements != null) {
+      List<String> differences =
+          StatementDiff.compare("javaparser", javaParserStatements, "lexer", lexerStatements);
+      if (!differences.isEmpty()) {
+        disagreements.put(javaFile, differences);
+      }
+    }
 
-      // is it a statement?
-      if (node.getClass().getCanonicalName().startsWith("com.github.javaparser.ast.stmt.")
-          && node.getBeginLine() == node.getEndLine()) {
-        line_number = node.getBeginLine();
-      } else if (node.getParentNode().getBeginLine() == node.getParentNode().getEndLine()) {
-        Node clone = node;
-        Node parent = null;
+    StatementMap javaStatements =
+        engine == Engine.LEXER ? lexerStatements : javaParserStatements;
 
-        // to handle special cases: parameters, binary expressions, etc
-        // search for the next 'Declaration' or 'Statement'
-        while ((parent = clone.getParentNode()) != null) {
-          if ((parent.getClass().getCanonicalName().startsWith("com.github.javaparser.ast.stmt."))
-              || (parent.getClass().getCanonicalName()
-                  .equals(VariableDeclarator.class.getCanonicalName()))
-              || (parent.getClass().getCanonicalName().startsWith("com.github.javaparser.ast.body.")
-                  && parent.getClass().getCanonicalName().endsWith("Declaration"))) {
-            line_number = parent.getBeginLine();
-            break;
-          }
+    if (cache != null) {
+      // a cache that cannot be written only costs time, it is reported once at the end
+      cache.offer(key, javaStatements);
+      stopwatch.lap(Phase.CACHE);
+    }
 
-          clone = parent;
-        }
-      }
+    statistics.file(SourceIndex.toString(javaFile), stopwatch.elapsed(), nodes,
+        javaStatements.size(), javaStatements.pairs());
+    return javaStatements;
+  }
 
-      Set<Integer> lines = null;
+  /**
+   * Reader that stops reading once the thread is interrupted, e.g., when a java file has timed
+   * out, so that JavaParser does not parse the rest of the file.
+   */
+  private static final class InterruptibleReader extends CharArrayReader {
 
-      if (this.javaStatements.containsKey(line_number)) {
-        lines = this.javaStatements.get(line_number);
-      } else {
-        lines = new HashSet<Integer>();
-        lines.add(line_number);
-      }
+    private InterruptibleReader(final char[] buf, final int offset, final int length) {
+      super(buf, offset, length);
+    }
 
-      lines.add(node.getBeginLine());
-      this.javaStatements.put(line_number, lines);
-    } else {
-      for (Node child : node.getChildrenNodes()) {
-        this.explore(child);
+    @Override
+    public int read(final char[] b, final int off, final int len) throws IOException {
+      if (Thread.currentThread().isInterrupted()) {
+        throw new InterruptedIOException();
       }
+      return super.read(b, off, len);
     }
   }
+
+  private static String toolVersion() {
+    String version = LocsToStms.class.getPackage().getImplementationVersion();
+    return version == null ? "unknown" : version;
+  }
 }
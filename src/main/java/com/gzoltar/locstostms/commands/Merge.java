@@ -0,0 +1,191 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.commands;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import org.kohsuke.args4j.Argument;
+import org.kohsuke.args4j.Option;
+import com.gzoltar.locstostms.Command;
+import com.gzoltar.locstostms.output.OutputFormat;
+import com.gzoltar.locstostms.output.StatementReader;
+import com.gzoltar.locstostms.output.StatementWriter;
+
+/**
+ * The <code>merge</code> command, which merges the outputs of <code>locstostms --all
+ * --shard i/n</code> runs into the output of a single run.
+ * 
+ * <p>
+ * Each output is sorted by class name (see {@link StatementWriter#CLASS_ORDER}), the outputs are
+ * merged by a k-way merge that only holds the statements of the current java file of each output
+ * in memory. The merged output is sorted the same way, and does not depend on the order of the
+ * outputs. An output that is not sorted is rejected.
+ * </p>
+ */
+public class Merge extends Command {
+
+  private static final Comparator<Input> BY_CLASS = new Comparator<Input>() {
+    @Override
+    public int compare(final Input a, final Input b) {
+      int c = StatementWriter.CLASS_ORDER.compare(a.clazz, b.clazz);
+      return c != 0 ? c : a.inputFile.getPath().compareTo(b.inputFile.getPath());
+    }
+  };
+
+  @Argument(usage = "outputs of the locstostms command to merge", metaVar = "<files>",
+      required = true)
+  private List<File> inputFiles = new ArrayList<File>();
+
+  @Option(name = "--format", usage = "format of the outputs and of the merged output",
+      metaVar = "<format>", required = false)
+  private OutputFormat format = OutputFormat.TEXT;
+
+  @Option(name = "--outputFile",
+      usage = "file to which the merged output will be written (default 'locstostms.txt')",
+      metaVar = "<file>", required = false)
+  private File outputFile = new File("locstostms.txt");
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String description() {
+    return "Merges the outputs of sharded locstostms runs.";
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int execute(final PrintStream out, final PrintStream err) throws Exception {
+    out.println("* " + this.description());
+
+    final List<Input> inputs = new ArrayList<Input>();
+    final PriorityQueue<Input> queue =
+        new PriorityQueue<Input>(Math.max(1, this.inputFiles.size()), BY_CLASS);
+    try {
+      for (File inputFile : this.inputFiles) {
+        Input input = new Input(inputFile, this.format.read(inputFile));
+        inputs.add(input);
+        if (input.next()) {
+          queue.add(input);
+        }
+      }
+
+      final StatementWriter writer = this.format.open(this.outputFile.getAbsoluteFile());
+      try {
+        String previous = null;
+        while (!queue.isEmpty()) {
+          Input input = queue.poll();
+          String clazz = input.clazz;
+          String path = input.reader.path();
+          if (clazz.equals(previous)) {
+            err.println("* Duplicate: " + path + " in " + input.inputFile.getPath());
+          } else {
+            writer.write(clazz, input.reader.statements());
+            previous = clazz;
+          }
+
+          if (input.next()) {
+            if (StatementWriter.CLASS_ORDER.compare(input.clazz, clazz) < 0) {
+              err.println(input.inputFile.getPath() + " is not sorted by class name ("
+                  + input.reader.path() + " after " + path + "), was it written with "
+                  + "--all?");
+              return -1;
+            }
+            queue.add(input);
+          }
+        }
+      } finally {
+        writer.close();
+      }
+
+      out.println("* Written: " + writer.getRows() + " rows, " + writer.getBytes() + " bytes to "
+          + this.outputFile.getAbsolutePath());
+    } finally {
+      for (Input input : inputs) {
+        input.reader.close();
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Returns the class of a java file, e.g., org.foo.Bar for org/foo/Bar.java.
+   */
+  private static String toClass(final String path) {
+    String clazz = path.endsWith(".java") ? path.substring(0, path.length() - 5) : path;
+    return clazz.replace('/', '.');
+  }
+
+  /**
+   * Returns the outputs to merge.
+   * 
+   * @return list of {@link java.io.File} objects
+   */
+  public List<File> getInputFiles() {
+    return this.inputFiles;
+  }
+
+  /**
+   * Returns the format of the outputs and of the merged output.
+   * 
+   * @return a {@link com.gzoltar.locstostms.output.OutputFormat} object
+   */
+  public OutputFormat getFormat() {
+    return this.format;
+  }
+
+  /**
+   * Returns the file to which the merged output will be written.
+   * 
+   * @return a {@link java.io.File} object
+   */
+  public File getOutputFile() {
+    return this.outputFile;
+  }
+
+  private static final class Input {
+
+    private final File inputFile;
+
+    private final StatementReader reader;
+
+    /**
+     * Class of the current java file of the reader.
+     */
+    private String clazz;
+
+    private Input(final File inputFile, final StatementReader reader) {
+      this.inputFile = inputFile;
+      this.reader = reader;
+    }
+
+    private boolean next() throws IOException {
+      if (!this.reader.next()) {
+        return false;
+      }
+      this.clazz = toClass(this.reader.path());
+      return true;
+    }
+  }
+}
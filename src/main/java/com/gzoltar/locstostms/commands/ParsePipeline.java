@@ -0,0 +1,504 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.commands;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import com.gzoltar.locstostms.sources.SourceReader;
+import com.gzoltar.locstostms.statements.Engine;
+import com.gzoltar.locstostms.statements.StatementCache;
+import com.gzoltar.locstostms.statements.StatementMap;
+import com.gzoltar.locstostms.statements.StatementSpans;
+import com.gzoltar.locstostms.stats.Statistics;
+
+/**
+ * Parses java files on an executor, ahead of the writer of the output but within a memory budget.
+ * 
+ * <p>
+ * Java files go through three stages: discovery (java files are added in the order in which they
+ * must be written), parsing (each file is read, parsed and explored by a thread of the executor)
+ * and writing (the writer takes java files in order and waits for their statements). A java file
+ * is only submitted to the executor if the estimated heap of all java files submitted but not yet
+ * written, i.e., of their ASTs or of their statements waiting to be written, fits the budget. The
+ * java file the writer waits for is always submitted. Thus, the heap used by a run does not grow
+ * with the number of java files.
+ * </p>
+ * 
+ * <p>
+ * A java file that times out is cancelled, but JavaParser may ignore the interruption and keep
+ * parsing it. Its budget is therefore only released once its task actually ends, and, on a pool
+ * of platform threads, the pool runs an extra thread in its place until then (at most as many
+ * extra threads as the pool had threads when the pipeline was created).
+ * </p>
+ * 
+ * <p>
+ * A pipeline is only used by the thread that discovers and writes java files.
+ * </p>
+ */
+final class ParsePipeline {
+
+  /**
+   * Estimated heap per byte of a java file while it is parsed (the ASTs of JavaParser take about
+   * 11 bytes per byte of the sources of the JDK).
+   */
+  static final int HEAP_PER_SOURCE_BYTE = 16;
+
+  private final ExecutorService executor;
+
+  private final Charset charset;
+
+  /**
+   * Readers of java files, whose buffers are reused by the java files parsed one after the other
+   * (a thread local would not do, as virtual threads only parse a single java file).
+   */
+  private final Queue<SourceReader> readers = new ConcurrentLinkedQueue<SourceReader>();
+
+  private final Engine engine;
+
+  private final StatementCache cache;
+
+  private final Statistics statistics;
+
+  private final Map<Path, List<String>> disagreements;
+
+  /**
+   * Whether the spans of each java file are collected, see {@link Job#spans()}.
+   */
+  private final boolean withSpans;
+
+  private final long budget;
+
+  /**
+   * Maximum number of extra threads, see {@link #timedOut(Job)}.
+   */
+  private final int maxExtraThreads;
+
+  private final AtomicInteger extraThreads = new AtomicInteger();
+
+  /**
+   * Java files in the order in which they are written.
+   */
+  private final List<Job> jobs = new ArrayList<Job>();
+
+  /**
+   * Java files submitted to the executor that have not been written yet.
+   */
+  private final Set<Job> inFlight = new LinkedHashSet<Job>();
+
+  /**
+   * Index of the next java file to write.
+   */
+  private int head = 0;
+
+  /**
+   * Index of the first java file that may not have been submitted yet.
+   */
+  private int next = 0;
+
+  /**
+   * Estimated heap of the java files submitted whose budget has not been released, updated by the
+   * writer and by the threads that parse java files.
+   */
+  private final AtomicLong used = new AtomicLong();
+
+  private long peakUsed = 0;
+
+  private int peakFiles = 0;
+
+  ParsePipeline(final ExecutorService executor, final Charset charset,
+      final Engine engine, final StatementCache cache, final Statistics statistics,
+      final Map<Path, List<String>> disagreements, final boolean withSpans, final long budget) {
+    this.executor = executor;
+    this.charset = charset;
+    this.engine = engine;
+    this.cache = cache;
+    this.statistics = statistics;
+    this.disagreements = disagreements;
+    this.withSpans = withSpans;
+    this.budget = budget;
+    this.maxExtraThreads = executor instanceof ThreadPoolExecutor
+        ? ((ThreadPoolExecutor) executor).getCorePoolSize() : 0;
+  }
+
+  /**
+   * Creates a job for a java file, which is neither added to the pipeline nor submitted.
+   * 
+   * @param clazz fully qualified name of the class, e.g., org.foo.Bar
+   * @param javaFile java file of the class, or <code>null</code> if it does not exist
+   * @return a {@link Job} object
+   */
+  static Job job(final String clazz, final Path javaFile) {
+    long size = 0;
+    if (javaFile != null) {
+      try {
+        size = Files.size(javaFile);
+      } catch (IOException e) {
+        // the file is reported when it is read
+      }
+    }
+    return new Job(clazz, javaFile, size * HEAP_PER_SOURCE_BYTE);
+  }
+
+  /**
+   * Adds a java file after all java files added so far.
+   * 
+   * @param job the java file
+   */
+  void add(final Job job) {
+    this.jobs.add(job);
+  }
+
+  /**
+   * Submits a java file if it fits the budget, before it is added (e.g., while source directories
+   * are still being walked).
+   * 
+   * @param job the java file
+   * @return <code>true</code> if the java file has been submitted
+   */
+  boolean trySubmit(final Job job) {
+    if (job.submitted || job.javaFile == null) {
+      return true;
+    }
+    long used = this.used.get();
+    if (used > 0 && used + job.cost > this.budget) {
+      return false;
+    }
+    this.submit(job);
+    return true;
+  }
+
+  private void submit(final Job job) {
+    // released once by the writer (see #done(Job)) and once by the task
+    job.references.set(2);
+    job.statements = this.executor.submit(new Callable<StatementMap>() {
+      @Override
+      public StatementMap call() throws Exception {
+        if (!job.state.compareAndSet(Job.PENDING, Job.RUNNING)) {
+          // dropped by the writer before it started
+          return null;
+        }
+        job.started.set(System.nanoTime());
+        SourceReader reader = readers.poll();
+        if (reader == null) {
+          reader = new SourceReader(charset);
+        }
+        try {
+          StatementSpans.Builder spans = withSpans ? new StatementSpans.Builder() : null;
+          StatementMap statements = LocsToStms.parseStatements(job.javaFile, reader, engine,
+              cache, statistics, disagreements, spans);
+          if (spans != null) {
+            job.spans = spans.build();
+          }
+          return statements;
+        } finally {
+          readers.offer(reader);
+          finished(job);
+        }
+      }
+    });
+    job.submitted = true;
+
+    this.inFlight.add(job);
+    this.peakUsed = Math.max(this.peakUsed, this.used.addAndGet(job.cost));
+    this.peakFiles = Math.max(this.peakFiles, this.inFlight.size());
+  }
+
+  /**
+   * Returns the number of java files added so far.
+   * 
+   * @return number of java files
+   */
+  int size() {
+    return this.jobs.size();
+  }
+
+  /**
+   * Returns <code>true</code> if there are java files left to write.
+   * 
+   * @return <code>true</code> if there are java files left to write
+   */
+  boolean hasNext() {
+    return this.head < this.jobs.size();
+  }
+
+  /**
+   * Returns the next java file to write, once it and as many following java files as fit the
+   * budget have been submitted.
+   * 
+   * @return a {@link Job} object
+   */
+  Job next() {
+    Job job = this.jobs.get(this.head++);
+    if (!job.submitted && job.javaFile != null) {
+      this.submit(job);
+    }
+
+    this.next = Math.max(this.next, this.head);
+    while (this.next < this.jobs.size() && this.trySubmit(this.jobs.get(this.next))) {
+      this.next++;
+    }
+    return job;
+  }
+
+  /**
+   * Releases the statements of a java file that has been written (or skipped), and its budget
+   * unless it is still being parsed.
+   * 
+   * @param job the java file
+   */
+  void done(final Job job) {
+    if (this.inFlight.remove(job)) {
+      if (job.state.compareAndSet(Job.PENDING, Job.DROPPED)) {
+        // the task will never run, so it releases nothing
+        this.release(job);
+      }
+      this.release(job);
+    }
+    job.statements = null;
+    job.spans = null;
+  }
+
+  /**
+   * Lets the pool run an extra thread while a java file that has timed out is still being parsed,
+   * so that it does not hold up the other java files. The thread is removed once the task ends.
+   * 
+   * @param job the java file, cancelled by {@link Job#await(long)}
+   */
+  void timedOut(final Job job) {
+    if (!(this.executor instanceof ThreadPoolExecutor)) {
+      // virtual threads are not pooled
+      return;
+    }
+    synchronized (job) {
+      if (job.state.get() != Job.RUNNING || job.extraThread) {
+        return;
+      }
+      if (this.extraThreads.incrementAndGet() > this.maxExtraThreads) {
+        this.extraThreads.decrementAndGet();
+        return;
+      }
+      resize((ThreadPoolExecutor) this.executor, 1);
+      job.extraThread = true;
+    }
+  }
+
+  /**
+   * Called by the thread that parsed a java file, once it is done with it.
+   */
+  private void finished(final Job job) {
+    boolean extraThread;
+    synchronized (job) {
+      job.state.set(Job.FINISHED);
+      extraThread = job.extraThread;
+      job.extraThread = false;
+    }
+    if (extraThread) {
+      // the pool stops this thread, or another idle one, once it is idle
+      resize((ThreadPoolExecutor) this.executor, -1);
+      this.extraThreads.decrementAndGet();
+    }
+    this.release(job);
+  }
+
+  private void release(final Job job) {
+    if (job.references.decrementAndGet() == 0) {
+      this.used.addAndGet(-job.cost);
+    }
+  }
+
+  private static void resize(final ThreadPoolExecutor pool, final int delta) {
+    // pools may be shared by several pipelines, e.g., by the requests to a daemon
+    synchronized (pool) {
+      if (delta > 0) {
+        pool.setMaximumPoolSize(pool.getMaximumPoolSize() + delta);
+        pool.setCorePoolSize(pool.getCorePoolSize() + delta);
+      } else {
+        pool.setCorePoolSize(pool.getCorePoolSize() + delta);
+        pool.setMaximumPoolSize(pool.getMaximumPoolSize() + delta);
+      }
+    }
+  }
+
+  /**
+   * Cancels all java files that have been submitted but not written.
+   */
+  void cancel() {
+    for (Job job : this.inFlight) {
+      job.statements.cancel(true);
+    }
+  }
+
+  /**
+   * Returns the estimated heap of the java files submitted whose task has not ended or that have
+   * not been written yet, in bytes.
+   * 
+   * @return number of bytes
+   */
+  long getUsed() {
+    return this.used.get();
+  }
+
+  /**
+   * Returns the largest estimated heap of the java files in flight so far, in bytes.
+   * 
+   * @return number of bytes
+   */
+  long getPeakUsed() {
+    return this.peakUsed;
+  }
+
+  /**
+   * Returns the largest number of java files in flight so far.
+   * 
+   * @return number of java files
+   */
+  int getPeakFiles() {
+    return this.peakFiles;
+  }
+
+  /**
+   * A java file to parse and write.
+   */
+  static final class Job {
+
+    private static final int PENDING = 0;
+
+    private static final int RUNNING = 1;
+
+    private static final int FINISHED = 2;
+
+    private static final int DROPPED = 3;
+
+    final String clazz;
+
+    /**
+     * Java file of the class, <code>null</code> if it has been deleted (see
+     * {@link com.gzoltar.locstostms.output.BinaryStatementUpdater#remove(String)}).
+     */
+    final Path javaFile;
+
+    /**
+     * Estimated heap, in bytes, used by the java file until it is written.
+     */
+    private final long cost;
+
+    /**
+     * {@link System#nanoTime()} at which a thread started to parse the java file, 0 until then.
+     */
+    private final AtomicLong started = new AtomicLong();
+
+    private boolean submitted = false;
+
+    /**
+     * {@link #PENDING} until a thread starts to parse the java file, then {@link #RUNNING} and
+     * {@link #FINISHED}; {@link #DROPPED} if the writer is done with it before it started.
+     */
+    private final AtomicInteger state = new AtomicInteger(PENDING);
+
+    /**
+     * Number of releases left before the budget of the java file is released.
+     */
+    private final AtomicInteger references = new AtomicInteger();
+
+    /**
+     * Whether an extra thread runs in the pool while this java file is parsed, guarded by the job.
+     */
+    private boolean extraThread = false;
+
+    private Future<StatementMap> statements = null;
+
+    /**
+     * Set by the thread that parses the java file, before its statements are available.
+     */
+    private StatementSpans spans = null;
+
+    private Job(final String clazz, final Path javaFile, final long cost) {
+      this.clazz = clazz;
+      this.javaFile = javaFile;
+      this.cost = cost;
+    }
+
+    /**
+     * Returns whether a thread is parsing the java file, e.g., after it has timed out.
+     * 
+     * @return <code>true</code> if the java file is being parsed
+     */
+    boolean isParsing() {
+      return this.state.get() == RUNNING;
+    }
+
+    /**
+     * Returns the spans of the java file, once its statements are available (see
+     * {@link #await(long)}).
+     * 
+     * @return a {@link com.gzoltar.locstostms.statements.StatementSpans} object, or
+     *         <code>null</code> if spans are not collected
+     */
+    StatementSpans spans() {
+      return this.spans;
+    }
+
+    /**
+     * Waits for the statements of the java file. The time spent waiting for a thread to start
+     * parsing the file does not count towards the timeout.
+     * 
+     * @param timeout maximum time spent parsing the file, in milliseconds, 0 for no limit
+     * @return a {@link com.gzoltar.locstostms.statements.StatementMap} object
+     * @throws TimeoutException if the file has been parsed for longer than the timeout, in which
+     *         case it is cancelled
+     */
+    StatementMap await(final long timeout)
+        throws InterruptedException, ExecutionException, TimeoutException {
+      if (timeout == 0) {
+        return this.statements.get();
+      }
+
+      final long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+      while (true) {
+        long start = this.started.get();
+        long remaining = start == 0 ? timeoutNanos : start + timeoutNanos - System.nanoTime();
+        try {
+          return this.statements.get(Math.max(remaining, 0), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+          if (start != 0) {
+            this.statements.cancel(true);
+            throw e;
+          }
+          // still waiting for a thread, the budget starts when the file is picked up
+        }
+      }
+    }
+  }
+}
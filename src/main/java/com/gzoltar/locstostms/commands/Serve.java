@@ -0,0 +1,517 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.commands;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.Option;
+import com.gzoltar.locstostms.Command;
+import com.gzoltar.locstostms.CommandParser;
+import com.gzoltar.locstostms.sources.SourceIndex;
+import com.gzoltar.locstostms.statements.StatementLru;
+
+/**
+ * The <code>serve</code> command, a long-running process that executes <code>locstostms</code>
+ * requests, so that the JVM startup and the warm-up of the parser are only paid once.
+ * 
+ * <p>
+ * Requests are read one per line, either from stdin or from connections to a loopback port. Each
+ * request holds the arguments of the <code>locstostms</code> command (optionally preceded by its
+ * name), separated by whitespace, double quotes group an argument with spaces. The response is
+ * the output of the command followed by an <code>exit &lt;code&gt;</code> line. A
+ * <code>shutdown</code> request stops the process. All requests share a pool of threads, an
+ * in-memory cache of the statements of the most recently parsed java files, and the source
+ * directories (and archives) they have opened.
+ * </p>
+ * 
+ * <p>
+ * Requests can read and write any file the process can, so connections must be authenticated:
+ * on startup, a random token is written to a file only readable by its owner, and the first line
+ * of each connection must be that token.
+ * </p>
+ */
+public class Serve extends Command {
+
+  /**
+   * Request that stops the process.
+   */
+  public static final String SHUTDOWN = "shutdown";
+
+  /**
+   * Number of random bytes of a token.
+   */
+  private static final int TOKEN_LENGTH = 32;
+
+  @Option(name = "--port",
+      usage = "loopback port on which requests are accepted, 0 for any free port, from "
+          + "connections that first send the token of --tokenFile (default: requests are read "
+          + "from stdin)",
+      metaVar = "<port>", required = false)
+  private Integer port = null;
+
+  @Option(name = "--tokenFile",
+      usage = "file, only readable by its owner, to which the token that connections must send "
+          + "as their first line is written (default 'locstostms.token'); requests can read and "
+          + "write any file the daemon can, so keep it private",
+      metaVar = "<file>", required = false)
+  private File tokenFile = new File("locstostms.token");
+
+  @Option(name = "--threads",
+      usage = "number of java files parsed in parallel (default: number of available processors)",
+      metaVar = "<n>", required = false)
+  private int threads = Runtime.getRuntime().availableProcessors();
+
+  @Option(name = "--executor",
+      usage = "threads on which java files are read and parsed: a fixed pool of --threads "
+          + "platform threads (default), or a virtual thread per java file (Java 21 or later)",
+      metaVar = "<kind>", required = false)
+  private ExecutorKind executor = ExecutorKind.PLATFORM;
+
+  @Option(name = "--cacheSize",
+      usage = "number of java files whose statements are kept in memory, 0 to disable it "
+          + "(default: 10000)",
+      metaVar = "<n>", required = false)
+  private int cacheSize = 10000;
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String description() {
+    return "Executes locstostms requests read from stdin or from a loopback port.";
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int execute(final PrintStream out, final PrintStream err) throws Exception {
+    if (this.threads < 1) {
+      err.println("Invalid number of threads: " + this.threads);
+      return -1;
+    }
+    if (this.cacheSize < 0) {
+      err.println("Invalid cache size: " + this.cacheSize);
+      return -1;
+    }
+    if (!this.executor.isSupported()) {
+      err.println("Unsupported executor: " + this.executor.name().toLowerCase(Locale.ROOT)
+          + " (virtual threads require Java 21 or later)");
+      return -1;
+    }
+
+    try (Daemon daemon = new Daemon(this.executor, this.threads, this.cacheSize)) {
+      if (this.port == null) {
+        daemon.serve(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)),
+            out);
+        return 0;
+      }
+
+      ExecutorService connections = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+          Thread thread = new Thread(r, "locstostms-connection");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      try (ServerSocket server =
+          new ServerSocket(this.port, 0, InetAddress.getLoopbackAddress())) {
+        final String token = writeToken(this.tokenFile);
+        out.println("* Token written to " + this.tokenFile.getAbsolutePath());
+        out.println("* Listening on " + server.getInetAddress().getHostAddress() + ":"
+            + server.getLocalPort());
+        while (true) {
+          final Socket socket;
+          try {
+            socket = server.accept();
+          } catch (SocketException e) {
+            // the server socket has been closed by a shutdown request
+            break;
+          }
+          connections.execute(new Connection(daemon, server, socket, token, err));
+        }
+      } finally {
+        connections.shutdownNow();
+        Files.deleteIfExists(this.tokenFile.toPath());
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Returns the loopback port on which requests are accepted.
+   * 
+   * @return port number, or <code>null</code> if requests are read from stdin
+   */
+  public Integer getPort() {
+    return this.port;
+  }
+
+  /**
+   * Returns the file to which the token of connections is written.
+   * 
+   * @return a {@link java.io.File} object
+   */
+  public File getTokenFile() {
+    return this.tokenFile;
+  }
+
+  /**
+   * Writes a new random token to a file that only its owner can read and write. An existing file
+   * is replaced, rather than written through, so that nobody else can hold it open.
+   * 
+   * @param tokenFile destination file
+   * @return the token
+   * @throws IOException if the file cannot be written
+   */
+  static String writeToken(final File tokenFile) throws IOException {
+    byte[] random = new byte[TOKEN_LENGTH];
+    new SecureRandom().nextBytes(random);
+    StringBuilder token = new StringBuilder();
+    for (byte b : random) {
+      token.append(String.format("%02x", b & 0xFF));
+    }
+
+    Path path = tokenFile.toPath();
+    Files.deleteIfExists(path);
+    try {
+      Files.createFile(path, PosixFilePermissions.asFileAttribute(
+          EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE)));
+    } catch (UnsupportedOperationException e) {
+      // not a POSIX file system
+      Files.createFile(path);
+      if (!tokenFile.setReadable(false, false) || !tokenFile.setReadable(true, true)
+          || !tokenFile.setWritable(false, false) || !tokenFile.setWritable(true, true)) {
+        throw new IOException("Cannot restrict the permissions of " + tokenFile);
+      }
+    }
+    Files.write(path, (token + "\n").getBytes(StandardCharsets.UTF_8));
+    return token.toString();
+  }
+
+  /**
+   * Returns the number of java files parsed in parallel.
+   * 
+   * @return number of threads
+   */
+  public int getThreads() {
+    return this.threads;
+  }
+
+  /**
+   * Returns the kind of executor on which java files are parsed.
+   * 
+   * @return a {@link ExecutorKind} object
+   */
+  public ExecutorKind getExecutor() {
+    return this.executor;
+  }
+
+  /**
+   * Returns the number of java files whose statements are kept in memory.
+   * 
+   * @return number of entries
+   */
+  public int getCacheSize() {
+    return this.cacheSize;
+  }
+
+  /**
+   * Requests of a single connection, which are executed one after the other.
+   */
+  private static final class Connection implements Runnable {
+
+    private final Daemon daemon;
+
+    private final ServerSocket server;
+
+    private final Socket socket;
+
+    private final byte[] token;
+
+    private final PrintStream err;
+
+    private Connection(final Daemon daemon, final ServerSocket server, final Socket socket,
+        final String token, final PrintStream err) {
+      this.daemon = daemon;
+      this.server = server;
+      this.socket = socket;
+      this.token = token.getBytes(StandardCharsets.UTF_8);
+      this.err = err;
+    }
+
+    @Override
+    public void run() {
+      try (Socket socket = this.socket) {
+        BufferedReader in = new BufferedReader(
+            new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        PrintStream out = new PrintStream(new BufferedOutputStream(socket.getOutputStream()),
+            false, StandardCharsets.UTF_8.name());
+        String token = in.readLine();
+        // compared in constant time, so that the token cannot be guessed byte per byte
+        if (token == null
+            || !MessageDigest.isEqual(this.token, token.trim().getBytes(StandardCharsets.UTF_8))) {
+          out.println("* Unauthorized");
+          out.flush();
+          return;
+        }
+        if (this.daemon.serve(in, out)) {
+          this.server.close();
+        }
+      } catch (IOException e) {
+        this.err.println("* Connection failed: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * State shared by all requests, i.e., the threads that parse java files (and the buffers they
+   * own), the in-memory cache of statements, and an index of each list of source directories.
+   */
+  static final class Daemon implements Closeable {
+
+    private final ExecutorService executor;
+
+    private final StatementLru memory;
+
+    /**
+     * Index of each list of source directories, whose archives are kept open, see
+     * {@link SourceIndex#open(List)}.
+     */
+    private final Map<List<File>, SourceIndex> sources = new HashMap<List<File>, SourceIndex>();
+
+    /**
+     * Creates the shared state.
+     * 
+     * @param threads number of java files parsed in parallel
+     * @param cacheSize number of java files whose statements are kept in memory
+     */
+    Daemon(final int threads, final int cacheSize) {
+      this(ExecutorKind.PLATFORM, threads, cacheSize);
+    }
+
+    /**
+     * Creates the shared state.
+     * 
+     * @param executor kind of executor on which java files are parsed
+     * @param threads number of java files parsed in parallel, by a {@link ExecutorKind#PLATFORM}
+     *        executor
+     * @param cacheSize number of java files whose statements are kept in memory
+     */
+    Daemon(final ExecutorKind executor, final int threads, final int cacheSize) {
+      this.executor = executor.create(threads);
+      this.memory = cacheSize > 0 ? new StatementLru(cacheSize) : null;
+    }
+
+    /**
+     * Executes requests until the end of the input or until a shutdown request.
+     * 
+     * @param in requests, one per line
+     * @param out destination of the responses, flushed after each response
+     * @return <code>true</code> if a shutdown has been requested
+     * @throws IOException if the requests cannot be read
+     */
+    boolean serve(final BufferedReader in, final PrintStream out) throws IOException {
+      String line;
+      while ((line = in.readLine()) != null) {
+        List<String> args = split(line);
+        if (args.isEmpty()) {
+          continue;
+        }
+        if (args.size() == 1 && args.get(0).equals(SHUTDOWN)) {
+          out.println("exit 0");
+          out.flush();
+          return true;
+        }
+        out.println("exit " + this.execute(args, out));
+        out.flush();
+      }
+      return false;
+    }
+
+    /**
+     * Executes a single request.
+     * 
+     * @param args arguments of the <code>locstostms</code> command
+     * @param out destination of the output of the command
+     * @return exit code of the command
+     */
+    int execute(final List<String> args, final PrintStream out) {
+      LocsToStms command = new LocsToStms();
+      if (args.get(0).equals(command.name())) {
+        args.remove(0);
+      }
+
+      CommandParser parser = new CommandParser(command);
+      try {
+        parser.parseArgument(args);
+      } catch (CmdLineException e) {
+        out.println("* Invalid request: " + e.getMessage());
+        return -1;
+      }
+
+      if (command.help) {
+        out.println(command.description());
+        parser.printUsage(out);
+        return 0;
+      }
+
+      // all requests are parsed by the threads of the daemon
+      for (String arg : args) {
+        String name = arg.contains("=") ? arg.substring(0, arg.indexOf('=')) : arg;
+        if (name.equals("--threads") || name.equals("--executor")) {
+          out.println(
+              "* Ignoring " + name + ", java files are parsed by the threads of the daemon");
+        }
+      }
+
+      try {
+        SourceIndex sources = command.isAll() ? null : this.sources(command.getSrcDirs());
+        return command.execute(command.quiet ? new PrintStream(NUL) : out, out, this.executor,
+            this.memory, sources);
+      } catch (Exception e) {
+        // a failed request must not stop the process
+        out.println("* Error: " + e);
+        return -1;
+      }
+    }
+
+    /**
+     * Returns the in-memory cache of statements.
+     * 
+     * @return a {@link StatementLru} object, or <code>null</code> if it is disabled
+     */
+    StatementLru getMemory() {
+      return this.memory;
+    }
+
+    /**
+     * Returns the index of a list of source directories, which is opened by the first request
+     * that uses it.
+     * 
+     * @param srcDirs list of directories and archives with .java files
+     * @return a {@link SourceIndex} object
+     * @throws IOException if an archive cannot be opened
+     */
+    synchronized SourceIndex sources(final List<File> srcDirs) throws IOException {
+      List<File> key = new ArrayList<File>();
+      for (File srcDir : srcDirs) {
+        key.add(srcDir.getAbsoluteFile());
+      }
+      SourceIndex index = this.sources.get(key);
+      if (index == null) {
+        index = SourceIndex.open(key);
+        this.sources.put(key, index);
+      }
+      return index;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+      this.executor.shutdownNow();
+      synchronized (this) {
+        for (SourceIndex index : this.sources.values()) {
+          try {
+            index.close();
+          } catch (IOException e) {
+            // the process is stopping anyway
+          }
+        }
+        this.sources.clear();
+      }
+    }
+  }
+
+  /**
+   * Splits a request into arguments separated by whitespace, double quotes group an argument
+   * with spaces.
+   * 
+   * @param line a request
+   * @return list of arguments
+   */
+  static List<String> split(final String line) {
+    List<String> args = new ArrayList<String>();
+    StringBuilder arg = null;
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == '"') {
+        quoted = !quoted;
+        if (arg == null) {
+          arg = new StringBuilder();
+        }
+      } else if (!quoted && Character.isWhitespace(c)) {
+        if (arg != null) {
+          args.add(arg.toString());
+          arg = null;
+        }
+      } else {
+        if (arg == null) {
+          arg = new StringBuilder();
+        }
+        arg.append(c);
+      }
+    }
+    if (arg != null) {
+      args.add(arg.toString());
+    }
+    return args;
+  }
+
+  private static final OutputStream NUL = new OutputStream() {
+    @Override
+    public void write(final int b) {
+      // no-op
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) {
+      // no-op
+    }
+  };
+}
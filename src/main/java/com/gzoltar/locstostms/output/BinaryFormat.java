@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.output;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Constants, variable-length integer encoding and decoding of the table of files shared by
+ * {@link BinaryStatementWriter}, {@link BinaryStatementFile} and {@link BinaryStatementUpdater}.
+ * 
+ * <pre>
+ * file    := MAGIC VERSION section* table trailer
+ * section := varint(#statements) statement*
+ * stm     := varint(statement - previous statement) varint(#lines)
+ *            zigzag(first line - statement) varint(line - previous line)*
+ * table   := varint(#files) (varint(#bytes) utf8(path) varlong(offset of section))*
+ * trailer := int64(offset of table) MAGIC
+ * </pre>
+ * 
+ * All fixed-size integers are big-endian. The table is written last so that the writer can stream
+ * sections without knowing all files in advance; readers start from the trailer.
+ */
+final class BinaryFormat {
+
+  static final int MAGIC = 0x4C325342; // "L2SB"
+
+  static final int VERSION = 1;
+
+  static final int HEADER_LENGTH = 8;
+
+  static final int TRAILER_LENGTH = 12;
+
+  static final int MAX_VARINT_LENGTH = 5;
+
+  static final int MAX_VARLONG_LENGTH = 10;
+
+  private BinaryFormat() {
+    // no-op
+  }
+
+  static void putVarint(final ByteBuffer buffer, final int value) {
+    int v = value;
+    while ((v & ~0x7F) != 0) {
+      buffer.put((byte) ((v & 0x7F) | 0x80));
+      v >>>= 7;
+    }
+    buffer.put((byte) v);
+  }
+
+  static void putVarlong(final ByteBuffer buffer, final long value) {
+    long v = value;
+    while ((v & ~0x7FL) != 0) {
+      buffer.put((byte) ((v & 0x7F) | 0x80));
+      v >>>= 7;
+    }
+    buffer.put((byte) v);
+  }
+
+  static int getVarint(final ByteBuffer buffer) {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      byte b = buffer.get();
+      value |= (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("Malformed varint");
+  }
+
+  static long getVarlong(final ByteBuffer buffer) {
+    long value = 0;
+    for (int shift = 0; shift < 70; shift += 7) {
+      byte b = buffer.get();
+      value |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("Malformed varlong");
+  }
+
+  /**
+   * Decoded table of files.
+   */
+  static final class Table {
+
+    final String[] paths;
+
+    /**
+     * Offset of the section of each java file, plus the offset of the table (i.e., the end of the
+     * last section).
+     */
+    final long[] offsets;
+
+    private Table(final String[] paths, final long[] offsets) {
+      this.paths = paths;
+      this.offsets = offsets;
+    }
+  }
+
+  /**
+   * Decodes the table of files. Counts are checked against the size of the table before anything
+   * is allocated, so that a corrupted count cannot cause a huge (or negative) allocation, and
+   * sections must be in ascending order, between the header and the table.
+   * 
+   * @param table the table, from its position to its limit (the trailer excluded)
+   * @param tableOffset offset of the table in the file
+   * @return a {@link Table} object
+   * @throws IOException if the table is malformed
+   */
+  static Table readTable(final ByteBuffer table, final long tableOffset) throws IOException {
+    // each entry takes at least two bytes
+    int numFiles = getVarint(table);
+    if (numFiles < 0 || numFiles > table.remaining() / 2) {
+      throw new IOException("Malformed binary locstostms file");
+    }
+    String[] paths = new String[numFiles];
+    long[] offsets = new long[numFiles + 1];
+    offsets[numFiles] = tableOffset;
+    for (int i = 0; i < numFiles; i++) {
+      int pathLength = getVarint(table);
+      if (pathLength < 0 || pathLength > table.remaining()) {
+        throw new IOException("Malformed binary locstostms file");
+      }
+      byte[] path = new byte[pathLength];
+      table.get(path);
+      paths[i] = new String(path, StandardCharsets.UTF_8);
+      offsets[i] = getVarlong(table);
+      if (offsets[i] < (i == 0 ? HEADER_LENGTH : offsets[i - 1]) || offsets[i] > tableOffset) {
+        throw new IOException("Malformed binary locstostms file");
+      }
+    }
+    return new Table(paths, offsets);
+  }
+
+  static int zigzag(final int value) {
+    return (value << 1) ^ (value >> 31);
+  }
+
+  static int unzigzag(final int value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+}
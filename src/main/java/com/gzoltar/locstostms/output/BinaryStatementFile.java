@@ -0,0 +1,237 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.output;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import com.gzoltar.locstostms.statements.StatementMap;
+
+/**
+ * Reader of files written by {@link BinaryStatementWriter}. The file is either loaded into memory
+ * or memory-mapped; only the table of files is decoded when the file is opened, the statements of
+ * each java file are decoded on demand.
+ * 
+ * <p>
+ * Instances are immutable and can be shared by several threads.
+ * </p>
+ */
+public final class BinaryStatementFile {
+
+  private final ByteBuffer data;
+
+  private final String[] paths;
+
+  private final int[] offsets;
+
+  private final Map<String, Integer> indices;
+
+  private BinaryStatementFile(final ByteBuffer data) throws IOException {
+    this.data = data;
+
+    try {
+      if (data.limit() < BinaryFormat.HEADER_LENGTH + BinaryFormat.TRAILER_LENGTH
+          || data.getInt(0) != BinaryFormat.MAGIC
+          || data.getInt(data.limit() - 4) != BinaryFormat.MAGIC) {
+        throw new IOException("Not a binary locstostms file");
+      }
+      if (data.getInt(4) != BinaryFormat.VERSION) {
+        throw new IOException("Unsupported binary locstostms version " + data.getInt(4));
+      }
+
+      long tableOffset = data.getLong(data.limit() - BinaryFormat.TRAILER_LENGTH);
+      if (tableOffset < BinaryFormat.HEADER_LENGTH
+          || tableOffset > data.limit() - BinaryFormat.TRAILER_LENGTH) {
+        throw new IOException("Malformed binary locstostms file");
+      }
+      ByteBuffer table = data.duplicate();
+      table.limit(data.limit() - BinaryFormat.TRAILER_LENGTH);
+      table.position((int) tableOffset);
+
+      BinaryFormat.Table files = BinaryFormat.readTable(table, tableOffset);
+      int numFiles = files.paths.length;
+      this.paths = files.paths;
+      this.offsets = new int[numFiles];
+      this.indices = new HashMap<String, Integer>(numFiles * 2);
+      for (int i = 0; i < numFiles; i++) {
+        // sections lie before the table, whose offset has been checked against the size
+        this.offsets[i] = (int) files.offsets[i];
+        this.indices.put(this.paths[i], i);
+      }
+    } catch (BufferUnderflowException | IllegalArgumentException e) {
+      throw new IOException("Malformed binary locstostms file", e);
+    }
+  }
+
+  /**
+   * Reads a whole file into memory.
+   * 
+   * @param file a file written by {@link BinaryStatementWriter}
+   * @return a {@link BinaryStatementFile} object
+   * @throws IOException if the file cannot be read or it is malformed
+   */
+  public static BinaryStatementFile load(final File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      ByteBuffer data = ByteBuffer.allocate(checkSize(file, channel.size()));
+      while (data.hasRemaining() && channel.read(data) >= 0) {
+        // keep reading
+      }
+      data.flip();
+      return new BinaryStatementFile(data);
+    }
+  }
+
+  /**
+   * Memory-maps a file. The mapping remains valid after this method returns.
+   * 
+   * @param file a file written by {@link BinaryStatementWriter}
+   * @return a {@link BinaryStatementFile} object
+   * @throws IOException if the file cannot be mapped or it is malformed
+   */
+  public static BinaryStatementFile map(final File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      return new BinaryStatementFile(
+          channel.map(FileChannel.MapMode.READ_ONLY, 0, checkSize(file, channel.size())));
+    }
+  }
+
+  /**
+   * Returns whether a file starts like a binary file, e.g., to tell it apart from the text output
+   * of the <code>locstostms</code> command.
+   * 
+   * @param file a file
+   * @return <code>true</code> if the file may be a binary file
+   * @throws IOException if the file cannot be read
+   */
+  public static boolean isBinary(final File file) throws IOException {
+    try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+      return in.readInt() == BinaryFormat.MAGIC;
+    } catch (EOFException e) {
+      return false;
+    }
+  }
+
+  private static int checkSize(final File file, final long size) throws IOException {
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException(file.getAbsolutePath() + " is too large (" + size + " bytes)");
+    }
+    return (int) size;
+  }
+
+  /**
+   * Returns the number of java files.
+   * 
+   * @return number of java files
+   */
+  public int size() {
+    return this.paths.length;
+  }
+
+  /**
+   * Returns the path of the i-th java file, e.g., org/foo/Bar.java.
+   * 
+   * @param i index of the java file
+   * @return path of the java file
+   */
+  public String path(final int i) {
+    return this.paths[i];
+  }
+
+  /**
+   * Returns the index of a java file.
+   * 
+   * @param path path of the java file, e.g., org/foo/Bar.java
+   * @return index of the java file, or -1 if there is no such file
+   */
+  public int indexOf(final String path) {
+    Integer i = this.indices.get(path);
+    return i == null ? -1 : i;
+  }
+
+  /**
+   * Decodes the statements of the i-th java file.
+   * 
+   * @param i index of the java file
+   * @return a {@link com.gzoltar.locstostms.statements.StatementMap} object
+   * @throws IOException if the section of the java file is malformed
+   */
+  public StatementMap statements(final int i) throws IOException {
+    ByteBuffer section = this.data.duplicate();
+    section.position(this.offsets[i]);
+
+    try {
+      StatementMap.Builder builder = new StatementMap.Builder();
+      int numStatements = BinaryFormat.getVarint(section);
+      int statement = 0;
+      for (int s = 0; s < numStatements; s++) {
+        statement += BinaryFormat.getVarint(section);
+        int lineCount = BinaryFormat.getVarint(section);
+
+        int line = statement + BinaryFormat.unzigzag(BinaryFormat.getVarint(section));
+        builder.add(statement, line);
+        for (int j = 1; j < lineCount; j++) {
+          line += BinaryFormat.getVarint(section);
+          builder.add(statement, line);
+        }
+      }
+      return builder.build();
+    } catch (BufferUnderflowException | IllegalArgumentException e) {
+      throw new IOException("Malformed section of " + this.paths[i], e);
+    }
+  }
+
+  /**
+   * Decodes the statements of a java file.
+   * 
+   * @param path path of the java file, e.g., org/foo/Bar.java
+   * @return a {@link com.gzoltar.locstostms.statements.StatementMap} object, or <code>null</code>
+   *         if there is no such file
+   * @throws IOException if the section of the java file is malformed
+   */
+  public StatementMap statements(final String path) throws IOException {
+    int i = this.indexOf(path);
+    return i < 0 ? null : this.statements(i);
+  }
+
+  /**
+   * Returns a reader of the statements of all java files, in the order in which they have been
+   * written.
+   * 
+   * @return a {@link StatementReader} object
+   */
+  public StatementReader reader() {
+    return new TableStatementReader(this.size()) {
+      @Override
+      protected String pathAt(final int i) {
+        return BinaryStatementFile.this.path(i);
+      }
+
+      @Override
+      protected StatementMap statementsAt(final int i) throws IOException {
+        return BinaryStatementFile.this.statements(i);
+      }
+    };
+  }
+}
@@ -0,0 +1,294 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import com.gzoltar.locstostms.statements.StatementMap;
+
+/**
+ * Updates an existing file written by {@link BinaryStatementWriter}. The statements of the java
+ * files that have changed are written (or removed) and the sections of all other java files are
+ * copied byte-for-byte from the existing file, through channel transfers, so the cost of an update
+ * mostly depends on the number of java files that have changed.
+ * 
+ * <p>
+ * Java files must be written (or removed) in ascending order of class name. Sections of the
+ * existing file are merged in that order, thus a file written in ascending order (e.g., by
+ * <code>locstostms --all</code>) remains sorted and is identical to the file a full run would have
+ * written. The new file is written next to the existing one and replaces it when the updater is
+ * closed.
+ * </p>
+ */
+public final class BinaryStatementUpdater implements StatementWriter {
+
+  private final Path outputFile;
+
+  private final Path tempFile;
+
+  private final FileChannel source;
+
+  private final String[] paths;
+
+  private final String[] classes;
+
+  private final long[] offsets;
+
+  private final BinaryStatementWriter writer;
+
+  /**
+   * Classes that have been written or removed, whose sections must not be copied.
+   */
+  private final Set<String> updated = new HashSet<String>();
+
+  private final Set<String> removed = new HashSet<String>();
+
+  private String last = null;
+
+  private int next = 0;
+
+  private int numCopied = 0;
+
+  private int numRemoved = 0;
+
+  /**
+   * Opens a file to update. If the file does not exist, it is created.
+   * 
+   * @param outputFile a file written by {@link BinaryStatementWriter}
+   * @throws IOException if the file cannot be read or it is malformed
+   */
+  public BinaryStatementUpdater(final File outputFile) throws IOException {
+    this.outputFile = outputFile.toPath();
+
+    if (outputFile.exists()) {
+      this.source = FileChannel.open(this.outputFile, StandardOpenOption.READ);
+      try {
+        long tableOffset = this.readHeader();
+        ByteBuffer table = this.read(tableOffset,
+            this.source.size() - BinaryFormat.TRAILER_LENGTH - tableOffset);
+
+        BinaryFormat.Table files = BinaryFormat.readTable(table, tableOffset);
+        this.paths = files.paths;
+        // the end of the last section is the beginning of the table
+        this.offsets = files.offsets;
+        this.classes = new String[this.paths.length];
+        for (int i = 0; i < this.paths.length; i++) {
+          if (!this.paths[i].endsWith(".java")) {
+            throw new IOException("Malformed binary locstostms file " + outputFile.getPath());
+          }
+          this.classes[i] = this.paths[i]
+              .substring(0, this.paths[i].length() - ".java".length()).replace('/', '.');
+        }
+      } catch (BufferUnderflowException | IllegalArgumentException e) {
+        this.source.close();
+        throw new IOException("Malformed binary locstostms file " + outputFile.getPath(), e);
+      } catch (IOException e) {
+        this.source.close();
+        throw e;
+      }
+    } else {
+      this.source = null;
+      this.paths = new String[0];
+      this.classes = new String[0];
+      this.offsets = new long[] {BinaryFormat.HEADER_LENGTH};
+    }
+
+    // a unique name, so that concurrent updates (or a leftover of a crashed one) never share it
+    this.tempFile = File.createTempFile("." + outputFile.getName() + ".", ".tmp",
+        outputFile.getAbsoluteFile().getParentFile()).toPath();
+    try {
+      if (this.source != null
+          && Files.getFileStore(this.tempFile).supportsFileAttributeView("posix")) {
+        // a temporary file is only readable by its owner, keep the permissions of the existing file
+        Files.setPosixFilePermissions(this.tempFile,
+            Files.getPosixFilePermissions(this.outputFile));
+      }
+      this.writer = new BinaryStatementWriter(this.tempFile.toFile());
+    } catch (IOException e) {
+      Files.deleteIfExists(this.tempFile);
+      if (this.source != null) {
+        this.source.close();
+      }
+      throw e;
+    }
+  }
+
+  private long readHeader() throws IOException {
+    long size = this.source.size();
+    if (size < BinaryFormat.HEADER_LENGTH + BinaryFormat.TRAILER_LENGTH) {
+      throw new IOException("Not a binary locstostms file");
+    }
+    ByteBuffer header = this.read(0, BinaryFormat.HEADER_LENGTH);
+    ByteBuffer trailer = this.read(size - BinaryFormat.TRAILER_LENGTH, BinaryFormat.TRAILER_LENGTH);
+    if (header.getInt(0) != BinaryFormat.MAGIC || trailer.getInt(8) != BinaryFormat.MAGIC) {
+      throw new IOException("Not a binary locstostms file");
+    }
+    if (header.getInt(4) != BinaryFormat.VERSION) {
+      throw new IOException("Unsupported binary locstostms version " + header.getInt(4));
+    }
+
+    long tableOffset = trailer.getLong(0);
+    if (tableOffset < BinaryFormat.HEADER_LENGTH
+        || tableOffset > size - BinaryFormat.TRAILER_LENGTH) {
+      throw new IOException("Malformed binary locstostms file");
+    }
+    return tableOffset;
+  }
+
+  private ByteBuffer read(final long position, final long length) throws IOException {
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("Table of " + this.outputFile + " is too large (" + length + " bytes)");
+    }
+    ByteBuffer buffer = ByteBuffer.allocate((int) length);
+    while (buffer.hasRemaining()) {
+      if (this.source.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of file " + this.outputFile);
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Writes the statements of a java file, in place of its existing section (if any).
+   * 
+   * @param clazz fully qualified name of the class, e.g., org.foo.Bar, greater than the classes
+   *        written or removed so far
+   * @param statements statements of the class
+   * @throws IOException if the output cannot be written
+   */
+  @Override
+  public void write(final String clazz, final StatementMap statements) throws IOException {
+    this.copyUntil(clazz);
+    this.writer.write(clazz, statements);
+  }
+
+  /**
+   * Removes the section of a java file, if any.
+   * 
+   * @param clazz fully qualified name of the class, e.g., org.foo.Bar, greater than the classes
+   *        written or removed so far
+   * @throws IOException if the output cannot be written
+   */
+  public void remove(final String clazz) throws IOException {
+    this.copyUntil(clazz);
+    this.removed.add(clazz);
+  }
+
+  /**
+   * Copies the sections of all classes lower than the given one that have not been updated.
+   */
+  private void copyUntil(final String clazz) throws IOException {
+    if (clazz != null) {
+      if (this.last != null && CLASS_ORDER.compare(this.last, clazz) >= 0) {
+        throw new IllegalArgumentException(
+            "Classes must be updated in ascending order: " + clazz + " after " + this.last);
+      }
+      this.last = clazz;
+      this.updated.add(clazz);
+    }
+
+    while (this.next < this.paths.length
+        && (clazz == null || CLASS_ORDER.compare(this.classes[this.next], clazz) < 0)) {
+      int i = this.next++;
+      if (this.updated.contains(this.classes[i])) {
+        if (this.removed.contains(this.classes[i])) {
+          this.numRemoved++;
+        }
+        continue;
+      }
+      this.writer.copy(this.paths[i], this.source, this.offsets[i],
+          this.offsets[i + 1] - this.offsets[i]);
+      this.numCopied++;
+    }
+  }
+
+  /**
+   * Returns the number of rows of the java files written so far (the rows of the sections copied
+   * from the existing file are not counted).
+   * 
+   * @return number of rows
+   */
+  @Override
+  public long getRows() {
+    return this.writer.getRows();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getBytes() {
+    return this.writer.getBytes();
+  }
+
+  /**
+   * Returns the number of sections copied so far from the existing file.
+   * 
+   * @return number of java files
+   */
+  public int getCopied() {
+    return this.numCopied;
+  }
+
+  /**
+   * Returns the number of sections of the existing file removed so far.
+   * 
+   * @return number of java files
+   */
+  public int getRemoved() {
+    return this.numRemoved;
+  }
+
+  /**
+   * Copies the remaining sections of the existing file, writes the table of files and replaces
+   * the existing file.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      try {
+        this.copyUntil(null);
+      } finally {
+        try {
+          this.writer.close();
+        } finally {
+          if (this.source != null) {
+            this.source.close();
+          }
+        }
+      }
+      try {
+        Files.move(this.tempFile, this.outputFile, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(this.tempFile, this.outputFile, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(this.tempFile);
+    }
+  }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import com.gzoltar.locstostms.statements.StatementMap;
+
+/**
+ * Writes statements in a compact binary format (see {@link BinaryFormat}): one section of
+ * delta/varint-encoded (statement, line) pairs per java file, followed by a table with the path
+ * and offset of each section. Unlike the text format, every pair is stored, including the ones in
+ * which the line is the statement line itself. Files can be read back with
+ * {@link BinaryStatementFile}.
+ */
+public final class BinaryStatementWriter extends ChannelStatementWriter {
+
+  private final List<byte[]> paths = new ArrayList<byte[]>();
+
+  private final List<Long> offsets = new ArrayList<Long>();
+
+  /**
+   * Creates a writer, the file is created or truncated.
+   * 
+   * @param outputFile file to which statements are written
+   * @throws IOException if the file cannot be opened
+   */
+  public BinaryStatementWriter(final File outputFile) throws IOException {
+    super(outputFile);
+    this.buffer.putInt(BinaryFormat.MAGIC);
+    this.buffer.putInt(BinaryFormat.VERSION);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write(final String clazz, final StatementMap statements) throws IOException {
+    this.paths.add((clazz.replace('.', '/') + ".java").getBytes(StandardCharsets.UTF_8));
+    this.offsets.add(this.getBytes());
+
+    this.ensureRemaining(BinaryFormat.MAX_VARINT_LENGTH);
+    BinaryFormat.putVarint(this.buffer, statements.size());
+
+    int previousStatement = 0;
+    for (int i = 0; i < statements.size(); i++) {
+      int statement = statements.statement(i);
+      int lineCount = statements.lineCount(i);
+
+      this.ensureRemaining(3 * BinaryFormat.MAX_VARINT_LENGTH);
+      BinaryFormat.putVarint(this.buffer, statement - previousStatement);
+      BinaryFormat.putVarint(this.buffer, lineCount);
+
+      int previousLine = statements.line(i, 0);
+      BinaryFormat.putVarint(this.buffer, BinaryFormat.zigzag(previousLine - statement));
+      for (int j = 1; j < lineCount; j++) {
+        int line = statements.line(i, j);
+        this.ensureRemaining(BinaryFormat.MAX_VARINT_LENGTH);
+        BinaryFormat.putVarint(this.buffer, line - previousLine);
+        previousLine = line;
+      }
+
+      previousStatement = statement;
+    }
+
+    this.rows += statements.pairs();
+  }
+
+  /**
+   * Copies, as is, the section of a java file written by another writer.
+   * 
+   * @param path path of the java file, e.g., org/foo/Bar.java
+   * @param source file that contains the section
+   * @param offset offset of the section in the source
+   * @param length length of the section, in bytes
+   * @throws IOException if the section cannot be copied
+   */
+  void copy(final String path, final FileChannel source, final long offset, final long length)
+      throws IOException {
+    this.paths.add(path.getBytes(StandardCharsets.UTF_8));
+    this.offsets.add(this.getBytes());
+    // sections do not depend on their offset, so they can be moved around
+    this.transferFrom(source, offset, length);
+  }
+
+  /**
+   * Writes the table of files and closes the file.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      long tableOffset = this.getBytes();
+
+      this.ensureRemaining(BinaryFormat.MAX_VARINT_LENGTH);
+      BinaryFormat.putVarint(this.buffer, this.paths.size());
+      for (int i = 0; i < this.paths.size(); i++) {
+        byte[] path = this.paths.get(i);
+        this.ensureRemaining(
+            BinaryFormat.MAX_VARINT_LENGTH + path.length + BinaryFormat.MAX_VARLONG_LENGTH);
+        BinaryFormat.putVarint(this.buffer, path.length);
+        this.buffer.put(path);
+        BinaryFormat.putVarlong(this.buffer, this.offsets.get(i));
+      }
+
+      this.ensureRemaining(BinaryFormat.TRAILER_LENGTH);
+      this.buffer.putLong(tableOffset);
+      this.buffer.putInt(BinaryFormat.MAGIC);
+    } finally {
+      super.close();
+    }
+  }
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.output;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Base class of {@link StatementWriter}s that format their output directly into a large buffer,
+ * see {@link ChannelWriter}.
+ */
+abstract class ChannelStatementWriter extends ChannelWriter implements StatementWriter {
+
+  protected long rows = 0;
+
+  protected ChannelStatementWriter(final File outputFile) throws IOException {
+    super(outputFile);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getRows() {
+    return this.rows;
+  }
+}
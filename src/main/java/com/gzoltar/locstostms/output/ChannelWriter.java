@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.output;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Base class of writers that format their output directly into a large buffer, which is written to
+ * a {@link java.nio.channels.FileChannel} when full.
+ */
+abstract class ChannelWriter implements Closeable {
+
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  private final FileChannel channel;
+
+  protected ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+  private long bytes = 0;
+
+  protected ChannelWriter(final File outputFile) throws IOException {
+    this.channel = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+  /**
+   * Returns the number of bytes written so far, including buffered ones.
+   * 
+   * @return number of bytes
+   */
+  public long getBytes() {
+    return this.bytes + this.buffer.position();
+  }
+
+  /**
+   * Flushes all buffered data and closes the file.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      this.flush();
+    } finally {
+      this.channel.close();
+    }
+  }
+
+  /**
+   * Makes sure the buffer has room for at least the given number of bytes.
+   * 
+   * @param length number of bytes
+   * @throws IOException if buffered data cannot be written
+   */
+  protected void ensureRemaining(final int length) throws IOException {
+    if (this.buffer.remaining() >= length) {
+      return;
+    }
+    this.flush();
+    if (this.buffer.capacity() < length) {
+      // only for absurdly long class names
+      this.buffer = ByteBuffer.allocate(length);
+    }
+  }
+
+  /**
+   * Copies bytes of another file to the output, after all buffered data. Bytes are transferred
+   * between channels (see {@link FileChannel#transferTo}), without being copied through the heap.
+   * 
+   * @param source file from which bytes are copied
+   * @param position position of the first byte to copy
+   * @param count number of bytes to copy
+   * @throws IOException if bytes cannot be copied, or the source is shorter than expected
+   */
+  protected void transferFrom(final FileChannel source, final long position, final long count)
+      throws IOException {
+    this.flush();
+    long transferred = 0;
+    while (transferred < count) {
+      long n = source.transferTo(position + transferred, count - transferred, this.channel);
+      if (n <= 0) {
+        throw new EOFException("Unexpected end of file at byte " + (position + transferred));
+      }
+      transferred += n;
+    }
+    this.bytes += count;
+  }
+
+  private void flush() throws IOException {
+    this.buffer.flip();
+    while (this.buffer.hasRemaining()) {
+      this.bytes += this.channel.write(this.buffer);
+    }
+    this.buffer.clear();
+  }
+}
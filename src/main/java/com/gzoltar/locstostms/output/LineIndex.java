@@ -0,0 +1,389 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.output;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import com.gzoltar.locstostms.statements.StatementMap;
+
+/**
+ * Index that answers "which statement does line L of file F belong to?" in constant time. Files
+ * are written by {@link LineIndexWriter} (indices can also be built in memory with a
+ * {@link Builder}):
+ * 
+ * <pre>
+ * file    := MAGIC VERSION lines* table trailer
+ * lines   := int32(statement of line 1) ... int32(statement of line n), NO_STATEMENT if none
+ * table   := int32(#files) (int32(#lines) int32(#bytes) utf8(path))*
+ * trailer := int64(offset of table) MAGIC
+ * </pre>
+ * 
+ * All integers are big-endian. When a file is loaded, the statements of all lines of all files are
+ * copied into a single dense <code>int[]</code> and each java file is identified by its index in
+ * the table, so that queries neither box nor allocate.
+ * 
+ * <p>
+ * Instances are immutable and can be shared by several threads.
+ * </p>
+ */
+public final class LineIndex {
+
+  /**
+   * Returned by {@link #statement(int, int)} for lines that are not part of any statement.
+   */
+  public static final int NO_STATEMENT = -1;
+
+  static final int MAGIC = 0x4C325349; // "L2SI"
+
+  static final int VERSION = 1;
+
+  static final int HEADER_LENGTH = 8;
+
+  static final int TRAILER_LENGTH = 12;
+
+  private final String[] paths;
+
+  /**
+   * Index in {@link #statements} of line 1 of each java file, plus the total number of lines.
+   */
+  private final int[] starts;
+
+  private final int[] statements;
+
+  private final Map<String, Integer> ids;
+
+  private LineIndex(final String[] paths, final int[] starts, final int[] statements) {
+    this.paths = paths;
+    this.starts = starts;
+    this.statements = statements;
+    this.ids = new HashMap<String, Integer>(paths.length * 2);
+    for (int i = 0; i < paths.length; i++) {
+      this.ids.put(paths[i], i);
+    }
+  }
+
+  private LineIndex(final ByteBuffer data) throws IOException {
+    try {
+      if (data.limit() < HEADER_LENGTH + TRAILER_LENGTH || data.getInt(0) != MAGIC
+          || data.getInt(data.limit() - 4) != MAGIC) {
+        throw new IOException("Not a locstostms line index");
+      }
+      if (data.getInt(4) != VERSION) {
+        throw new IOException("Unsupported locstostms line index version " + data.getInt(4));
+      }
+
+      long tableOffset = data.getLong(data.limit() - TRAILER_LENGTH);
+      if (tableOffset < HEADER_LENGTH || tableOffset > data.limit() - TRAILER_LENGTH
+          || (tableOffset - HEADER_LENGTH) % 4 != 0) {
+        throw new IOException("Malformed locstostms line index");
+      }
+      ByteBuffer table = data.duplicate();
+      table.limit(data.limit() - TRAILER_LENGTH);
+      table.position((int) tableOffset);
+
+      // counts are checked against the size of the file before anything is allocated, so that a
+      // corrupted count cannot cause a huge (or negative) allocation
+      int numFiles = table.getInt();
+      if (numFiles < 0 || numFiles > table.remaining() / 8) {
+        throw new IOException("Malformed locstostms line index");
+      }
+      long totalLines = (tableOffset - HEADER_LENGTH) / 4;
+      this.paths = new String[numFiles];
+      this.starts = new int[numFiles + 1];
+      this.ids = new HashMap<String, Integer>(numFiles * 2);
+      for (int i = 0; i < numFiles; i++) {
+        int numLines = table.getInt();
+        if (numLines < 0 || this.starts[i] + (long) numLines > totalLines) {
+          throw new IOException("Malformed locstostms line index");
+        }
+        this.starts[i + 1] = this.starts[i] + numLines;
+        int pathLength = table.getInt();
+        if (pathLength < 0 || pathLength > table.remaining()) {
+          throw new IOException("Malformed locstostms line index");
+        }
+        byte[] path = new byte[pathLength];
+        table.get(path);
+        this.paths[i] = new String(path, StandardCharsets.UTF_8);
+        this.ids.put(this.paths[i], i);
+      }
+      if (this.starts[numFiles] != totalLines) {
+        throw new IOException("Malformed locstostms line index");
+      }
+
+      ByteBuffer lines = data.duplicate();
+      lines.position(HEADER_LENGTH);
+      this.statements = new int[this.starts[numFiles]];
+      lines.asIntBuffer().get(this.statements);
+    } catch (BufferUnderflowException | IllegalArgumentException e) {
+      throw new IOException("Malformed locstostms line index", e);
+    }
+  }
+
+  /**
+   * Reads a whole index into memory.
+   * 
+   * @param file a file written by {@link LineIndexWriter}
+   * @return a {@link LineIndex} object
+   * @throws IOException if the file cannot be read or it is malformed
+   */
+  public static LineIndex load(final File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException(file.getAbsolutePath() + " is too large (" + size + " bytes)");
+      }
+      ByteBuffer data = ByteBuffer.allocate((int) size);
+      while (data.hasRemaining() && channel.read(data) >= 0) {
+        // keep reading
+      }
+      data.flip();
+      return new LineIndex(data);
+    }
+  }
+
+  /**
+   * Returns whether a file starts like a line index, e.g., to tell it apart from the text output
+   * of the <code>locstostms</code> command.
+   * 
+   * @param file a file
+   * @return <code>true</code> if the file may be a line index
+   * @throws IOException if the file cannot be read
+   */
+  public static boolean isIndex(final File file) throws IOException {
+    try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+      return in.readInt() == MAGIC;
+    } catch (EOFException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns the number of java files.
+   * 
+   * @return number of java files
+   */
+  public int size() {
+    return this.paths.length;
+  }
+
+  /**
+   * Returns the path of a java file, e.g., org/foo/Bar.java.
+   * 
+   * @param file id of the java file, between 0 and {@link #size()} (exclusive)
+   * @return path of the java file
+   */
+  public String path(final int file) {
+    return this.paths[file];
+  }
+
+  /**
+   * Returns the id of a java file. Ids are meant to be looked up once per java file, and then
+   * used in all queries about its lines.
+   * 
+   * @param path path of the java file, e.g., org/foo/Bar.java
+   * @return id of the java file, or -1 if there is no such file
+   */
+  public int id(final String path) {
+    Integer id = this.ids.get(path);
+    return id == null ? -1 : id;
+  }
+
+  /**
+   * Returns the number of lines of a java file that are covered by the index, i.e., the last line
+   * that is part of a statement.
+   * 
+   * @param file id of the java file
+   * @return number of lines
+   */
+  public int lineCount(final int file) {
+    return this.starts[file + 1] - this.starts[file];
+  }
+
+  /**
+   * Returns the statement to which a line belongs. If a line belongs to several (nested)
+   * statements, the innermost one, i.e., the one that starts last, is returned; a line on which a
+   * statement starts always belongs to that statement.
+   * 
+   * @param file id of the java file
+   * @param line line number
+   * @return line on which the statement starts, or {@link #NO_STATEMENT} if the line is not part
+   *         of any statement
+   */
+  public int statement(final int file, final int line) {
+    if (line < 1 || line > this.lineCount(file)) {
+      return NO_STATEMENT;
+    }
+    return this.statements[this.starts[file] + line - 1];
+  }
+
+  /**
+   * Returns the statement to which a line belongs, see {@link #statement(int, int)}.
+   * 
+   * @param path path of the java file, e.g., org/foo/Bar.java
+   * @param line line number
+   * @return line on which the statement starts, or {@link #NO_STATEMENT} if there is no such file
+   *         or the line is not part of any statement
+   */
+  public int statement(final String path, final int line) {
+    int file = this.id(path);
+    return file < 0 ? NO_STATEMENT : this.statement(file, line);
+  }
+
+  /**
+   * Rebuilds the statements of a java file, i.e., a statement with the lines that belong to it
+   * (see {@link #statement(int, int)}) for each statement.
+   * 
+   * @param file id of the java file
+   * @return a {@link StatementMap} object
+   */
+  public StatementMap statements(final int file) {
+    StatementMap.Builder builder = new StatementMap.Builder();
+    for (int i = this.starts[file]; i < this.starts[file + 1]; i++) {
+      if (this.statements[i] != NO_STATEMENT) {
+        builder.add(this.statements[i], i - this.starts[file] + 1);
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * Returns a reader of the statements of all java files, see {@link #statements(int)}, in the
+   * order in which they have been written.
+   * 
+   * @return a {@link StatementReader} object
+   */
+  public StatementReader reader() {
+    return new TableStatementReader(this.size()) {
+      @Override
+      protected String pathAt(final int i) {
+        return LineIndex.this.path(i);
+      }
+
+      @Override
+      protected StatementMap statementsAt(final int i) {
+        return LineIndex.this.statements(i);
+      }
+    };
+  }
+
+  /**
+   * Returns the number of lines of a java file that are covered by an index, i.e., its last line
+   * that is part of a statement.
+   * 
+   * @param statements statements of the java file
+   * @return number of lines
+   */
+  static int lineCount(final StatementMap statements) {
+    int lineCount = 0;
+    for (int i = 0; i < statements.size(); i++) {
+      lineCount = Math.max(lineCount,
+          Math.max(statements.statement(i), statements.line(i, statements.lineCount(i) - 1)));
+    }
+    return lineCount;
+  }
+
+  /**
+   * Puts the statement of each line of a java file in an array.
+   * 
+   * @param statements statements of the java file
+   * @param lines destination, line 1 is put at <code>offset</code>
+   * @param offset index of line 1
+   * @param lineCount number of lines, see {@link #lineCount(StatementMap)}
+   */
+  static void fill(final StatementMap statements, final int[] lines, final int offset,
+      final int lineCount) {
+    Arrays.fill(lines, offset, offset + lineCount, NO_STATEMENT);
+
+    // statements are sorted, so inner statements overwrite the lines of outer ones
+    for (int i = 0; i < statements.size(); i++) {
+      for (int j = 0; j < statements.lineCount(i); j++) {
+        int line = statements.line(i, j);
+        if (line >= 1) {
+          lines[offset + line - 1] = statements.statement(i);
+        }
+      }
+    }
+    for (int i = 0; i < statements.size(); i++) {
+      int statement = statements.statement(i);
+      if (statement >= 1) {
+        lines[offset + statement - 1] = statement;
+      }
+    }
+  }
+
+  /**
+   * Builds a {@link LineIndex} in memory, e.g., from the text output of the
+   * <code>locstostms</code> command. A builder is not thread-safe.
+   */
+  public static final class Builder {
+
+    private final List<String> paths = new ArrayList<String>();
+
+    private int[] starts = new int[16];
+
+    private int[] statements = new int[1024];
+
+    /**
+     * Adds a java file.
+     * 
+     * @param path path of the java file, e.g., org/foo/Bar.java
+     * @param statements statements of the java file
+     * @return this builder
+     */
+    public Builder add(final String path, final StatementMap statements) {
+      int start = this.starts[this.paths.size()];
+      int lineCount = lineCount(statements);
+      if (start + lineCount > this.statements.length) {
+        this.statements = Arrays.copyOf(this.statements,
+            Math.max(start + lineCount, 2 * this.statements.length));
+      }
+      fill(statements, this.statements, start, lineCount);
+
+      this.paths.add(path);
+      if (this.paths.size() == this.starts.length) {
+        this.starts = Arrays.copyOf(this.starts, 2 * this.starts.length);
+      }
+      this.starts[this.paths.size()] = start + lineCount;
+      return this;
+    }
+
+    /**
+     * Builds an immutable {@link LineIndex} with all java files added so far.
+     * 
+     * @return a {@link LineIndex} object
+     */
+    public LineIndex build() {
+      int numFiles = this.paths.size();
+      return new LineIndex(this.paths.toArray(new String[numFiles]),
+          Arrays.copyOf(this.starts, numFiles + 1),
+          Arrays.copyOf(this.statements, this.starts[numFiles]));
+    }
+  }
+}
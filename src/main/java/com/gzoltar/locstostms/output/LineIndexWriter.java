@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import com.gzoltar.locstostms.statements.StatementMap;
+
+/**
+ * Writes a {@link LineIndex}: the statement of every line of each java file, up to its last line
+ * that is part of a statement, followed by a table with the path and number of lines of each java
+ * file. Each row is a line.
+ */
+public final class LineIndexWriter extends ChannelStatementWriter {
+
+  private final List<byte[]> paths = new ArrayList<byte[]>();
+
+  private final List<Integer> lineCounts = new ArrayList<Integer>();
+
+  /**
+   * Statement of each line of the current java file, reused from one file to the next.
+   */
+  private int[] lines = new int[1024];
+
+  /**
+   * Creates a writer, the file is created or truncated.
+   * 
+   * @param outputFile file to which the index is written
+   * @throws IOException if the file cannot be opened
+   */
+  public LineIndexWriter(final File outputFile) throws IOException {
+    super(outputFile);
+    this.buffer.putInt(LineIndex.MAGIC);
+    this.buffer.putInt(LineIndex.VERSION);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write(final String clazz, final StatementMap statements) throws IOException {
+    int lineCount = LineIndex.lineCount(statements);
+    if (lineCount > this.lines.length) {
+      this.lines = new int[Math.max(lineCount, 2 * this.lines.length)];
+    }
+    LineIndex.fill(statements, this.lines, 0, lineCount);
+
+    for (int line = 0; line < lineCount; line++) {
+      this.ensureRemaining(4);
+      this.buffer.putInt(this.lines[line]);
+    }
+
+    this.paths.add((clazz.replace('.', '/') + ".java").getBytes(StandardCharsets.UTF_8));
+    this.lineCounts.add(lineCount);
+    this.rows += lineCount;
+  }
+
+  /**
+   * Writes the table of files and closes the file.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      long tableOffset = this.getBytes();
+
+      this.ensureRemaining(4);
+      this.buffer.putInt(this.paths.size());
+      for (int i = 0; i < this.paths.size(); i++) {
+        byte[] path = this.paths.get(i);
+        this.ensureRemaining(8 + path.length);
+        this.buffer.putInt(this.lineCounts.get(i));
+        this.buffer.putInt(path.length);
+        this.buffer.put(path);
+      }
+
+      this.ensureRemaining(LineIndex.TRAILER_LENGTH);
+      this.buffer.putLong(tableOffset);
+      this.buffer.putInt(LineIndex.MAGIC);
+    } finally {
+      super.close();
+    }
+  }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.output;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Supported output formats.
+ */
+public enum OutputFormat {
+
+  /**
+   * One <code>path.java#statement:path.java#line</code> row per line, see
+   * {@link TextStatementWriter}.
+   */
+  TEXT {
+    @Override
+    public StatementWriter open(final File outputFile) throws IOException {
+      return new TextStatementWriter(outputFile);
+    }
+
+    @Override
+    public StatementReader read(final File inputFile) throws IOException {
+      return new TextStatementReader(inputFile);
+    }
+  },
+
+  /**
+   * Compact binary format, see {@link BinaryStatementWriter} and {@link BinaryStatementFile}.
+   */
+  BINARY {
+    @Override
+    public StatementWriter open(final File outputFile) throws IOException {
+      return new BinaryStatementWriter(outputFile);
+    }
+
+    @Override
+    public StatementReader read(final File inputFile) throws IOException {
+      return BinaryStatementFile.map(inputFile).reader();
+    }
+  },
+
+  /**
+   * Line-to-statement index, see {@link LineIndexWriter} and {@link LineIndex}.
+   */
+  INDEX {
+    @Override
+    public StatementWriter open(final File outputFile) throws IOException {
+      return new LineIndexWriter(outputFile);
+    }
+
+    @Override
+    public StatementReader read(final File inputFile) throws IOException {
+      return LineIndex.load(inputFile).reader();
+    }
+  };
+
+  /**
+   * Creates a writer of this format, the file is created or truncated.
+   * 
+   * @param outputFile file to which statements are written
+   * @return a {@link StatementWriter} object
+   * @throws IOException if the file cannot be opened
+   */
+  public abstract StatementWriter open(File outputFile) throws IOException;
+
+  /**
+   * Opens a reader of a file of this format.
+   * 
+   * @param inputFile file written by a writer of this format
+   * @return a {@link StatementReader} object
+   * @throws IOException if the file cannot be opened or it is malformed
+   */
+  public abstract StatementReader read(File inputFile) throws IOException;
+}
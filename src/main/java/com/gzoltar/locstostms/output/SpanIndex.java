@@ -0,0 +1,320 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import com.gzoltar.locstostms.statements.StatementKind;
+import com.gzoltar.locstostms.statements.StatementSpans;
+
+/**
+ * Columnar index of the position and kind of every statement and declaration of each java file
+ * (see {@link StatementSpans}), so that downstream tools do not have to parse the java files
+ * again. Files are written by {@link SpanIndexWriter}:
+ * 
+ * <pre>
+ * file    := MAGIC VERSION spans* table trailer
+ * spans   := int32(begin line)*n int32(begin column)*n int32(end line)*n int32(end column)*n
+ *            int8(kind)*n padding to a multiple of 4 bytes
+ * table   := int32(#files) (int32(n) int32(#bytes) utf8(path))*
+ * trailer := int64(offset of table) MAGIC
+ * </pre>
+ * 
+ * All integers are big-endian, and kinds are the codes of {@link StatementKind}. A file is loaded
+ * with a single read, and each column of all java files is copied into a single dense primitive
+ * array; spans are identified by their index in these arrays (see {@link #first(int)}), so that
+ * queries neither box nor allocate.
+ * 
+ * <p>
+ * Instances are immutable and can be shared by several threads.
+ * </p>
+ */
+public final class SpanIndex {
+
+  static final int MAGIC = 0x4C325353; // "L2SS"
+
+  static final int VERSION = 1;
+
+  static final int HEADER_LENGTH = 8;
+
+  static final int TRAILER_LENGTH = 12;
+
+  private final String[] paths;
+
+  /**
+   * Index of the first span of each java file, plus the total number of spans.
+   */
+  private final int[] starts;
+
+  private final int[] beginLines;
+
+  private final int[] beginColumns;
+
+  private final int[] endLines;
+
+  private final int[] endColumns;
+
+  private final byte[] kinds;
+
+  private final Map<String, Integer> ids;
+
+  private SpanIndex(final ByteBuffer data) throws IOException {
+    try {
+      if (data.limit() < HEADER_LENGTH + TRAILER_LENGTH || data.getInt(0) != MAGIC
+          || data.getInt(data.limit() - 4) != MAGIC) {
+        throw new IOException("Not a locstostms span index");
+      }
+      if (data.getInt(4) != VERSION) {
+        throw new IOException("Unsupported locstostms span index version " + data.getInt(4));
+      }
+
+      long tableOffset = data.getLong(data.limit() - TRAILER_LENGTH);
+      if (tableOffset < HEADER_LENGTH || tableOffset > data.limit() - TRAILER_LENGTH) {
+        throw new IOException("Malformed locstostms span index");
+      }
+      ByteBuffer table = data.duplicate();
+      table.limit(data.limit() - TRAILER_LENGTH);
+      table.position((int) tableOffset);
+
+      // counts are checked against the size of the file before anything is allocated, so that a
+      // corrupted count cannot cause a huge (or negative) allocation
+      int numFiles = table.getInt();
+      if (numFiles < 0 || numFiles > table.remaining() / 8) {
+        throw new IOException("Malformed locstostms span index");
+      }
+      this.paths = new String[numFiles];
+      this.starts = new int[numFiles + 1];
+      this.ids = new HashMap<String, Integer>(numFiles * 2);
+      long sectionsLength = 0;
+      for (int i = 0; i < numFiles; i++) {
+        int numSpans = table.getInt();
+        if (numSpans < 0) {
+          throw new IOException("Malformed locstostms span index");
+        }
+        sectionsLength += sectionLength(numSpans);
+        if (sectionsLength > tableOffset - HEADER_LENGTH) {
+          throw new IOException("Malformed locstostms span index");
+        }
+        this.starts[i + 1] = this.starts[i] + numSpans;
+        int pathLength = table.getInt();
+        if (pathLength < 0 || pathLength > table.remaining()) {
+          throw new IOException("Malformed locstostms span index");
+        }
+        byte[] path = new byte[pathLength];
+        table.get(path);
+        this.paths[i] = new String(path, StandardCharsets.UTF_8);
+        this.ids.put(this.paths[i], i);
+      }
+      if (sectionsLength != tableOffset - HEADER_LENGTH) {
+        throw new IOException("Malformed locstostms span index");
+      }
+
+      int numSpans = this.starts[numFiles];
+      this.beginLines = new int[numSpans];
+      this.beginColumns = new int[numSpans];
+      this.endLines = new int[numSpans];
+      this.endColumns = new int[numSpans];
+      this.kinds = new byte[numSpans];
+
+      ByteBuffer section = data.duplicate();
+      section.position(HEADER_LENGTH);
+      for (int i = 0; i < numFiles; i++) {
+        int start = this.starts[i];
+        int n = this.starts[i + 1] - start;
+        IntBuffer columns = section.asIntBuffer();
+        columns.get(this.beginLines, start, n);
+        columns.get(this.beginColumns, start, n);
+        columns.get(this.endLines, start, n);
+        columns.get(this.endColumns, start, n);
+        section.position(section.position() + 16 * n);
+        section.get(this.kinds, start, n);
+        section.position(section.position() + padding(n));
+      }
+    } catch (BufferUnderflowException | IllegalArgumentException e) {
+      throw new IOException("Malformed locstostms span index", e);
+    }
+  }
+
+  /**
+   * Reads a whole index into memory.
+   * 
+   * @param file a file written by {@link SpanIndexWriter}
+   * @return a {@link SpanIndex} object
+   * @throws IOException if the file cannot be read or it is malformed
+   */
+  public static SpanIndex load(final File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException(file.getAbsolutePath() + " is too large (" + size + " bytes)");
+      }
+      ByteBuffer data = ByteBuffer.allocate((int) size);
+      while (data.hasRemaining() && channel.read(data) >= 0) {
+        // keep reading
+      }
+      data.flip();
+      return new SpanIndex(data);
+    }
+  }
+
+  /**
+   * Returns the number of java files.
+   * 
+   * @return number of java files
+   */
+  public int size() {
+    return this.paths.length;
+  }
+
+  /**
+   * Returns the path of a java file, e.g., org/foo/Bar.java.
+   * 
+   * @param file id of the java file, between 0 and {@link #size()} (exclusive)
+   * @return path of the java file
+   */
+  public String path(final int file) {
+    return this.paths[file];
+  }
+
+  /**
+   * Returns the id of a java file. Ids are meant to be looked up once per java file, and then
+   * used in all queries about its spans.
+   * 
+   * @param path path of the java file, e.g., org/foo/Bar.java
+   * @return id of the java file, or -1 if there is no such file
+   */
+  public int id(final String path) {
+    Integer id = this.ids.get(path);
+    return id == null ? -1 : id;
+  }
+
+  /**
+   * Returns the index of the first span of a java file. The spans of a java file are the ones
+   * between {@link #first(int)} (inclusive) and {@link #first(int) first(file + 1)} (exclusive),
+   * in source order.
+   * 
+   * @param file id of the java file, between 0 and {@link #size()} (inclusive)
+   * @return index of a span
+   */
+  public int first(final int file) {
+    return this.starts[file];
+  }
+
+  /**
+   * Returns the number of spans of a java file.
+   * 
+   * @param file id of the java file
+   * @return number of spans
+   */
+  public int spanCount(final int file) {
+    return this.starts[file + 1] - this.starts[file];
+  }
+
+  /**
+   * Returns the line on which a span begins.
+   * 
+   * @param span index of the span, see {@link #first(int)}
+   * @return a line number
+   */
+  public int beginLine(final int span) {
+    return this.beginLines[span];
+  }
+
+  /**
+   * Returns the column at which a span begins.
+   * 
+   * @param span index of the span, see {@link #first(int)}
+   * @return a column number
+   */
+  public int beginColumn(final int span) {
+    return this.beginColumns[span];
+  }
+
+  /**
+   * Returns the line on which a span ends.
+   * 
+   * @param span index of the span, see {@link #first(int)}
+   * @return a line number
+   */
+  public int endLine(final int span) {
+    return this.endLines[span];
+  }
+
+  /**
+   * Returns the column of the last character of a span.
+   * 
+   * @param span index of the span, see {@link #first(int)}
+   * @return a column number
+   */
+  public int endColumn(final int span) {
+    return this.endColumns[span];
+  }
+
+  /**
+   * Returns the kind of a span.
+   * 
+   * @param span index of the span, see {@link #first(int)}
+   * @return a {@link StatementKind} object
+   */
+  public StatementKind kind(final int span) {
+    return StatementKind.of(this.kinds[span]);
+  }
+
+  /**
+   * Copies the spans of a java file.
+   * 
+   * @param file id of the java file
+   * @return a {@link StatementSpans} object
+   */
+  public StatementSpans spans(final int file) {
+    StatementSpans.Builder builder = new StatementSpans.Builder();
+    for (int i = this.starts[file]; i < this.starts[file + 1]; i++) {
+      builder.add(this.kinds[i], this.beginLines[i], this.beginColumns[i], this.endLines[i],
+          this.endColumns[i]);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Returns the number of bytes of the spans of a java file.
+   * 
+   * @param numSpans number of spans
+   * @return number of bytes
+   */
+  static long sectionLength(final int numSpans) {
+    return 17L * numSpans + padding(numSpans);
+  }
+
+  /**
+   * Returns the number of bytes after the kinds of a java file, so that the next one starts at a
+   * multiple of 4 bytes.
+   * 
+   * @param numSpans number of spans
+   * @return number of bytes, between 0 and 3
+   */
+  static int padding(final int numSpans) {
+    return (4 - (numSpans & 3)) & 3;
+  }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import com.gzoltar.locstostms.statements.StatementSpans;
+
+/**
+ * Writes a {@link SpanIndex}: the columns of the spans of each java file, followed by a table with
+ * the path and number of spans of each java file. Each row is a span.
+ */
+public final class SpanIndexWriter extends ChannelWriter {
+
+  private final List<byte[]> paths = new ArrayList<byte[]>();
+
+  private final List<Integer> spanCounts = new ArrayList<Integer>();
+
+  private long rows = 0;
+
+  /**
+   * Creates a writer, the file is created or truncated.
+   * 
+   * @param outputFile file to which the index is written
+   * @throws IOException if the file cannot be opened
+   */
+  public SpanIndexWriter(final File outputFile) throws IOException {
+    super(outputFile);
+    this.buffer.putInt(SpanIndex.MAGIC);
+    this.buffer.putInt(SpanIndex.VERSION);
+  }
+
+  /**
+   * Writes the spans of a java file.
+   * 
+   * @param clazz fully qualified name of the class, e.g., org.foo.Bar
+   * @param spans spans of the java file
+   * @throws IOException if the spans cannot be written
+   */
+  public void write(final String clazz, final StatementSpans spans) throws IOException {
+    int n = spans.size();
+    for (int i = 0; i < n; i++) {
+      this.ensureRemaining(4);
+      this.buffer.putInt(spans.beginLine(i));
+    }
+    for (int i = 0; i < n; i++) {
+      this.ensureRemaining(4);
+      this.buffer.putInt(spans.beginColumn(i));
+    }
+    for (int i = 0; i < n; i++) {
+      this.ensureRemaining(4);
+      this.buffer.putInt(spans.endLine(i));
+    }
+    for (int i = 0; i < n; i++) {
+      this.ensureRemaining(4);
+      this.buffer.putInt(spans.endColumn(i));
+    }
+    for (int i = 0; i < n; i++) {
+      this.ensureRemaining(1);
+      this.buffer.put(spans.kindCode(i));
+    }
+    this.ensureRemaining(3);
+    for (int i = SpanIndex.padding(n); i > 0; i--) {
+      this.buffer.put((byte) 0);
+    }
+
+    this.paths.add((clazz.replace('.', '/') + ".java").getBytes(StandardCharsets.UTF_8));
+    this.spanCounts.add(n);
+    this.rows += n;
+  }
+
+  /**
+   * Returns the number of spans written so far.
+   * 
+   * @return number of spans
+   */
+  public long getRows() {
+    return this.rows;
+  }
+
+  /**
+   * Writes the table of files and closes the file.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      long tableOffset = this.getBytes();
+
+      this.ensureRemaining(4);
+      this.buffer.putInt(this.paths.size());
+      for (int i = 0; i < this.paths.size(); i++) {
+        byte[] path = this.paths.get(i);
+        this.ensureRemaining(8 + path.length);
+        this.buffer.putInt(this.spanCounts.get(i));
+        this.buffer.putInt(path.length);
+        this.buffer.put(path);
+      }
+
+      this.ensureRemaining(SpanIndex.TRAILER_LENGTH);
+      this.buffer.putLong(tableOffset);
+      this.buffer.putInt(SpanIndex.MAGIC);
+    } finally {
+      super.close();
+    }
+  }
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.output;
+
+import java.io.Closeable;
+import java.io.IOException;
+import com.gzoltar.locstostms.statements.StatementMap;
+
+/**
+ * Common interface for all readers of statements, which read back the statements of one java
+ * file at a time in the order in which they have been written.
+ */
+public interface StatementReader extends Closeable {
+
+  /**
+   * Moves to the next java file.
+   * 
+   * @return <code>false</code> if there are no more java files
+   * @throws IOException if the input cannot be read or it is malformed
+   */
+  boolean next() throws IOException;
+
+  /**
+   * Returns the path of the current java file, e.g., org/foo/Bar.java.
+   * 
+   * @return path of the java file
+   */
+  String path();
+
+  /**
+   * Returns the statements of the current java file.
+   * 
+   * @return a {@link com.gzoltar.locstostms.statements.StatementMap} object
+   */
+  StatementMap statements();
+}
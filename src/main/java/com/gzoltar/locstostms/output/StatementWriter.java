@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.output;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Comparator;
+import com.gzoltar.locstostms.statements.StatementMap;
+
+/**
+ * Common interface for all writers of statements.
+ */
+public interface StatementWriter extends Closeable {
+
+  /**
+   * Order in which sorted outputs are written, e.g., by <code>locstostms --all</code> or by
+   * {@link BinaryStatementUpdater}: ascending order of the fully qualified names of the classes.
+   * Note that it is not the order of their paths, e.g., <code>Foo</code> is lower than
+   * <code>Foo$1</code> whereas <code>Foo.java</code> is greater than <code>Foo$1.java</code>.
+   */
+  Comparator<String> CLASS_ORDER = new Comparator<String>() {
+    @Override
+    public int compare(final String a, final String b) {
+      return a.compareTo(b);
+    }
+  };
+
+  /**
+   * Writes all statements of a class.
+   * 
+   * @param clazz fully qualified name of the class, e.g., org.foo.Bar
+   * @param statements statements of the class
+   * @throws IOException if the output cannot be written
+   */
+  void write(String clazz, StatementMap statements) throws IOException;
+
+  /**
+   * Returns the number of rows written so far.
+   * 
+   * @return number of rows
+   */
+  long getRows();
+
+  /**
+   * Returns the number of bytes written so far (including buffered ones).
+   * 
+   * @return number of bytes
+   */
+  long getBytes();
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.output;
+
+import java.io.IOException;
+import com.gzoltar.locstostms.statements.StatementMap;
+
+/**
+ * Base class of readers of formats with a table of java files, which are already in memory.
+ */
+abstract class TableStatementReader implements StatementReader {
+
+  private final int size;
+
+  private int index = -1;
+
+  private String path = null;
+
+  private StatementMap statements = null;
+
+  protected TableStatementReader(final int size) {
+    this.size = size;
+  }
+
+  /**
+   * Returns the path of the i-th java file.
+   * 
+   * @param i index of the java file
+   * @return path of the java file
+   */
+  protected abstract String pathAt(int i);
+
+  /**
+   * Returns the statements of the i-th java file.
+   * 
+   * @param i index of the java file
+   * @return a {@link StatementMap} object
+   * @throws IOException if the statements are malformed
+   */
+  protected abstract StatementMap statementsAt(int i) throws IOException;
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean next() throws IOException {
+    if (this.index + 1 >= this.size) {
+      this.index = this.size;
+      this.path = null;
+      this.statements = null;
+      return false;
+    }
+    this.index++;
+    this.path = this.pathAt(this.index);
+    this.statements = this.statementsAt(this.index);
+    return true;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String path() {
+    return this.path;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public StatementMap statements() {
+    return this.statements;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() {
+    // no-op
+  }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.output;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import com.gzoltar.locstostms.statements.StatementMap;
+
+/**
+ * Reads files written by {@link TextStatementWriter}, one java file (i.e., one run of consecutive
+ * rows with the same path) at a time. As the text format does not store the lines on which
+ * statements start, nor statements of a single line, only the rows of the file are read back.
+ */
+public final class TextStatementReader implements StatementReader {
+
+  private final File inputFile;
+
+  private final BufferedReader reader;
+
+  private final StatementMap.Builder builder = new StatementMap.Builder();
+
+  /**
+   * First row of the next java file, already read.
+   */
+  private String row;
+
+  private String path = null;
+
+  private StatementMap statements = null;
+
+  /**
+   * Opens a file.
+   * 
+   * @param inputFile a file written by {@link TextStatementWriter}
+   * @throws IOException if the file cannot be opened
+   */
+  public TextStatementReader(final File inputFile) throws IOException {
+    this.inputFile = inputFile;
+    this.reader = Files.newBufferedReader(inputFile.toPath(), StandardCharsets.UTF_8);
+    this.row = this.reader.readLine();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean next() throws IOException {
+    if (this.row == null) {
+      this.path = null;
+      this.statements = null;
+      return false;
+    }
+
+    this.path = this.path(this.row);
+    this.builder.clear();
+    do {
+      // path.java#statement:path.java#line
+      int hash = this.path.length();
+      int colon = this.row.indexOf(':', hash + 1);
+      int lineHash = this.row.lastIndexOf('#');
+      if (colon < 0 || lineHash < colon) {
+        throw this.malformed(null);
+      }
+      try {
+        this.builder.add(Integer.parseInt(this.row.substring(hash + 1, colon)),
+            Integer.parseInt(this.row.substring(lineHash + 1)));
+      } catch (NumberFormatException e) {
+        throw this.malformed(e);
+      }
+      this.row = this.reader.readLine();
+    } while (this.row != null && this.row.startsWith(this.path)
+        && this.row.length() > this.path.length() && this.row.charAt(this.path.length()) == '#');
+
+    this.statements = this.builder.build();
+    return true;
+  }
+
+  private String path(final String row) throws IOException {
+    int hash = row.indexOf('#');
+    if (hash < 0) {
+      throw this.malformed(null);
+    }
+    return row.substring(0, hash);
+  }
+
+  private IOException malformed(final Exception cause) {
+    return new IOException("Malformed row of " + this.inputFile.getPath() + ": " + this.row,
+        cause);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String path() {
+    return this.path;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public StatementMap statements() {
+    return this.statements;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() throws IOException {
+    this.reader.close();
+  }
+}
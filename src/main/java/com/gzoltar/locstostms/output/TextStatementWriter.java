@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import com.gzoltar.locstostms.statements.StatementMap;
+
+/**
+ * Writes statements in the text format of the <code>locstostms</code> command, i.e., one
+ * <code>path.java#statement:path.java#line</code> row per line of code that is part of a statement
+ * but is not the statement line itself.
+ * 
+ * <p>
+ * The path of each java file is encoded (as UTF-8) once per file and every row is formatted
+ * directly into a large buffer, which is written to a {@link java.nio.channels.FileChannel} when
+ * full. No object is allocated per row.
+ * </p>
+ */
+public final class TextStatementWriter extends ChannelStatementWriter {
+
+  /**
+   * Longest textual representation of an int, i.e., "-2147483648".
+   */
+  private static final int MAX_INT_LENGTH = 11;
+
+  private final byte[] digits = new byte[MAX_INT_LENGTH];
+
+  /**
+   * Creates a writer, the file is created or truncated.
+   * 
+   * @param outputFile file to which statements are written
+   * @throws IOException if the file cannot be opened
+   */
+  public TextStatementWriter(final File outputFile) throws IOException {
+    super(outputFile);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write(final String clazz, final StatementMap statements) throws IOException {
+    final byte[] prefix = (clazz.replace('.', '/') + ".java#").getBytes(StandardCharsets.UTF_8);
+    final int maxRowLength = 2 * (prefix.length + MAX_INT_LENGTH) + 2;
+
+    for (int i = 0; i < statements.size(); i++) {
+      int statementNumber = statements.statement(i);
+      for (int j = 0; j < statements.lineCount(i); j++) {
+        int lineNumber = statements.line(i, j);
+        if (lineNumber == statementNumber) {
+          // minor optimisation: if a line number and a statement number is equal, skip it
+          continue;
+        }
+
+        this.ensureRemaining(maxRowLength);
+        this.buffer.put(prefix);
+        this.putInt(statementNumber);
+        this.buffer.put((byte) ':');
+        this.buffer.put(prefix);
+        this.putInt(lineNumber);
+        this.buffer.put((byte) '\n');
+        this.rows++;
+      }
+    }
+  }
+
+  private void putInt(final int value) {
+    if (value == Integer.MIN_VALUE) {
+      this.buffer.put(String.valueOf(value).getBytes(StandardCharsets.US_ASCII));
+      return;
+    }
+
+    int v = value;
+    if (v < 0) {
+      this.buffer.put((byte) '-');
+      v = -v;
+    }
+
+    int pos = this.digits.length;
+    do {
+      this.digits[--pos] = (byte) ('0' + v % 10);
+      v /= 10;
+    } while (v != 0);
+    this.buffer.put(this.digits, pos, this.digits.length - pos);
+  }
+}
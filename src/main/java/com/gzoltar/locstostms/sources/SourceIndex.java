@@ -0,0 +1,304 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.sources;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of all java files under a list of source roots, keyed by fully qualified class name,
+ * e.g., org.foo.Bar -> src/main/java/org/foo/Bar.java.
+ * 
+ * <p>
+ * A source root is either a directory or an archive, e.g., a <code>-sources.jar</code> or a
+ * <code>.zip</code> file. Archives are opened as zip file systems: their entries are indexed from
+ * the central directory of the archive and read without being extracted. Archives remain open
+ * until the index is closed.
+ * </p>
+ * 
+ * <p>
+ * Each source root is walked exactly once, or not at all if classes are looked up on demand (see
+ * {@link #open(List)}). If the same class exists in more than one source root, the file of the
+ * first root wins. An index can be used by several threads at the same time.
+ * </p>
+ */
+public final class SourceIndex implements Closeable {
+
+  private static final String JAVA_EXTENSION = ".java";
+
+  private final Map<String, Path> files = new ConcurrentHashMap<String, Path>();
+
+  private final List<FileSystem> archives = new ArrayList<FileSystem>();
+
+  private final Listener listener;
+
+  /**
+   * Source roots against which classes are resolved on demand, or <code>null</code> if all java
+   * files have been indexed by walking the source roots.
+   */
+  private final List<Path> roots;
+
+  /**
+   * Callback notified as soon as a java file is indexed, i.e., while source roots are still being
+   * walked.
+   */
+  public interface Listener {
+
+    /**
+     * Called once per indexed class.
+     * 
+     * @param className fully qualified name of the class
+     * @param javaFile java file of the class, which may be an entry of an archive
+     */
+    void found(String className, Path javaFile);
+  }
+
+  private SourceIndex(final Listener listener, final List<Path> roots) {
+    this.listener = listener;
+    this.roots = roots;
+  }
+
+  /**
+   * Walks all source roots and indexes their java files.
+   * 
+   * @param srcDirs list of directories and archives with .java files
+   * @return a {@link SourceIndex} object
+   * @throws IOException if a directory cannot be walked or an archive cannot be opened
+   */
+  public static SourceIndex build(final List<File> srcDirs) throws IOException {
+    return build(srcDirs, null);
+  }
+
+  /**
+   * Walks all source roots and indexes their java files, notifying a listener of each indexed
+   * file as soon as it is found.
+   * 
+   * @param srcDirs list of directories and archives with .java files
+   * @param listener callback notified of each indexed file, may be <code>null</code>
+   * @return a {@link SourceIndex} object
+   * @throws IOException if a directory cannot be walked or an archive cannot be opened
+   */
+  public static SourceIndex build(final List<File> srcDirs, final Listener listener)
+      throws IOException {
+    final SourceIndex index = new SourceIndex(listener, null);
+    try {
+      for (File srcDir : srcDirs) {
+        if (srcDir.isDirectory()) {
+          index.walk(srcDir.getAbsoluteFile().toPath());
+        } else if (srcDir.isFile() && isArchive(srcDir)) {
+          FileSystem archive =
+              FileSystems.newFileSystem(srcDir.getAbsoluteFile().toPath(), (ClassLoader) null);
+          index.archives.add(archive);
+          for (Path root : archive.getRootDirectories()) {
+            index.walk(root);
+          }
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      index.close();
+      throw e;
+    }
+    return index;
+  }
+
+  /**
+   * Opens all source roots without walking them. Classes are looked up on demand instead: each
+   * class is resolved against each source root in turn, e.g., org.foo.Bar ->
+   * root/org/foo/Bar.java, and archives are only opened to look up their central directory.
+   * 
+   * <p>
+   * The java files that have been found are remembered and checked again on each lookup, so the
+   * index can be reused as long as its archives are not replaced.
+   * </p>
+   * 
+   * @param srcDirs list of directories and archives with .java files
+   * @return a {@link SourceIndex} object
+   * @throws IOException if an archive cannot be opened
+   */
+  public static SourceIndex open(final List<File> srcDirs) throws IOException {
+    final SourceIndex index = new SourceIndex(null, new ArrayList<Path>());
+    try {
+      for (File srcDir : srcDirs) {
+        if (srcDir.isDirectory()) {
+          index.roots.add(srcDir.getAbsoluteFile().toPath().normalize());
+        } else if (srcDir.isFile() && isArchive(srcDir)) {
+          FileSystem archive =
+              FileSystems.newFileSystem(srcDir.getAbsoluteFile().toPath(), (ClassLoader) null);
+          index.archives.add(archive);
+          for (Path root : archive.getRootDirectories()) {
+            index.roots.add(root);
+          }
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      index.close();
+      throw e;
+    }
+    return index;
+  }
+
+  /**
+   * Returns whether a file is an archive that can be used as a source root.
+   * 
+   * @param file a file
+   * @return <code>true</code> if the file is a <code>.jar</code> or a <code>.zip</code> file
+   */
+  public static boolean isArchive(final File file) {
+    String name = file.getName().toLowerCase(Locale.ROOT);
+    return name.endsWith(".jar") || name.endsWith(".zip");
+  }
+
+  /**
+   * Returns a human-readable location of a java file, i.e., its absolute path, or a
+   * <code>jar:file:/...!/org/foo/Bar.java</code> URI for an entry of an archive.
+   * 
+   * @param javaFile a java file returned by this index
+   * @return location of the java file
+   */
+  public static String toString(final Path javaFile) {
+    if (javaFile.getFileSystem() == FileSystems.getDefault()) {
+      return javaFile.toAbsolutePath().toString();
+    }
+    return javaFile.toUri().toString();
+  }
+
+  private void walk(final Path root) throws IOException {
+    Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+            Path fileName = file.getFileName();
+            if (attrs.isRegularFile() && fileName != null
+                && fileName.toString().endsWith(JAVA_EXTENSION)) {
+              String className = toClassName(root.relativize(file));
+              if (!files.containsKey(className)) {
+                files.put(className, file);
+                if (listener != null) {
+                  listener.found(className, file);
+                }
+              }
+            }
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFileFailed(final Path file, final IOException exc) {
+            // unreadable entries and symbolic link cycles are not indexed
+            return FileVisitResult.CONTINUE;
+          }
+        });
+  }
+
+  private Path resolve(final String className) {
+    if (className.isEmpty()) {
+      return null;
+    }
+    for (Path root : this.roots) {
+      // a malformed name must not escape the source root, e.g., ..foo.Bar
+      Path file = root.resolve(className.replace('.', '/') + JAVA_EXTENSION).normalize();
+      if (file.startsWith(root) && Files.isRegularFile(file)) {
+        return file;
+      }
+    }
+    return null;
+  }
+
+  private static String toClassName(final Path relativePath) {
+    StringBuilder sb = new StringBuilder();
+    for (Path name : relativePath) {
+      if (sb.length() > 0) {
+        sb.append('.');
+      }
+      // names of directories of archives may end with a separator
+      String part = name.toString();
+      sb.append(part.endsWith("/") ? part.substring(0, part.length() - 1) : part);
+    }
+    sb.setLength(sb.length() - JAVA_EXTENSION.length());
+    return sb.toString();
+  }
+
+  /**
+   * Returns the java file of a class.
+   * 
+   * @param className fully qualified name of a class, e.g., org.foo.Bar
+   * @return a {@link java.nio.file.Path} object, which may be an entry of an archive, or
+   *         <code>null</code> if the class is not in any source root
+   */
+  public Path find(final String className) {
+    Path file = this.files.get(className);
+    if (this.roots == null) {
+      return file;
+    }
+    // the java file may have been deleted since it was found
+    if (file != null && Files.isRegularFile(file)) {
+      return file;
+    }
+    file = this.resolve(className);
+    if (file == null) {
+      this.files.remove(className);
+    } else {
+      this.files.put(className, file);
+    }
+    return file;
+  }
+
+  /**
+   * Returns the number of indexed java files, i.e., of the java files found so far if classes are
+   * looked up on demand.
+   * 
+   * @return number of java files
+   */
+  public int size() {
+    return this.files.size();
+  }
+
+  /**
+   * Closes all archives, java files of archives cannot be read afterwards.
+   * 
+   * @throws IOException if an archive cannot be closed
+   */
+  @Override
+  public void close() throws IOException {
+    IOException failure = null;
+    for (FileSystem archive : this.archives) {
+      try {
+        archive.close();
+      } catch (IOException e) {
+        failure = e;
+      }
+    }
+    this.archives.clear();
+    if (failure != null) {
+      throw failure;
+    }
+  }
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.sources;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads java files through a {@link FileChannel} (or the channel of an entry of an archive) and
+ * decodes them with an explicit charset.
+ * 
+ * <p>
+ * The byte and char buffers are reused from one file to the next (they only grow), so reading a
+ * file does not allocate anything once the largest file has been read. The buffers returned by
+ * {@link #read(File)} and {@link #decode()} are only valid until the next call. A reader is not
+ * thread-safe: each thread must use its own reader.
+ * </p>
+ */
+public final class SourceReader {
+
+  private static final int INITIAL_CAPACITY = 64 * 1024;
+
+  private final CharsetDecoder decoder;
+
+  private ByteBuffer bytes = ByteBuffer.allocate(INITIAL_CAPACITY);
+
+  private CharBuffer chars = CharBuffer.allocate(INITIAL_CAPACITY);
+
+  /**
+   * Creates a reader.
+   * 
+   * @param charset charset of the java files
+   */
+  public SourceReader(final Charset charset) {
+    // malformed input is replaced, as by the readers of JavaParser
+    this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  }
+
+  /**
+   * Returns the charset of the java files.
+   * 
+   * @return a {@link Charset} object
+   */
+  public Charset charset() {
+    return this.decoder.charset();
+  }
+
+  /**
+   * Reads the content of a java file.
+   * 
+   * @param javaFile the java file
+   * @return a read-only buffer with the content of the file, valid until the next call
+   * @throws IOException if the file cannot be read
+   */
+  public ByteBuffer read(final File javaFile) throws IOException {
+    return this.read(javaFile.toPath());
+  }
+
+  /**
+   * Reads the content of a java file, which may be an entry of an archive (see
+   * {@link SourceIndex}).
+   * 
+   * @param javaFile the java file
+   * @return a read-only buffer with the content of the file, valid until the next call
+   * @throws IOException if the file cannot be read
+   */
+  public ByteBuffer read(final Path javaFile) throws IOException {
+    this.bytes.clear();
+    // a FileChannel for regular files, an inflating channel for entries of archives
+    try (SeekableByteChannel channel = Files.newByteChannel(javaFile, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("File too large: " + javaFile);
+      }
+      // one spare byte, so that the end of the file is found without growing the buffer
+      if (size >= this.bytes.capacity()) {
+        this.bytes = ByteBuffer.allocate((int) Math.min(size + 1, Integer.MAX_VALUE));
+      }
+
+      // the size is just a hint, the file may change while it is read
+      while (channel.read(this.bytes) >= 0) {
+        if (!this.bytes.hasRemaining()) {
+          this.bytes = grow(this.bytes);
+        }
+      }
+    }
+    this.bytes.flip();
+    return this.bytes.asReadOnlyBuffer();
+  }
+
+  /**
+   * Decodes the content of the last java file read by {@link #read(File)}.
+   * 
+   * @return a buffer with the characters of the file, backed by an array and valid until the next
+   *         call
+   * @throws CharacterCodingException if the content cannot be decoded
+   */
+  public CharBuffer decode() throws CharacterCodingException {
+    final ByteBuffer in = this.bytes.duplicate();
+    final int capacity = (int) Math.ceil(in.remaining() * (double) this.decoder.maxCharsPerByte());
+    if (capacity > this.chars.capacity()) {
+      this.chars = CharBuffer.allocate(capacity);
+    }
+
+    this.decoder.reset();
+    this.chars.clear();
+    CoderResult result;
+    while (!(result = this.decoder.decode(in, this.chars, true)).isUnderflow()) {
+      this.chars = grow(this.chars, result);
+    }
+    while (!(result = this.decoder.flush(this.chars)).isUnderflow()) {
+      this.chars = grow(this.chars, result);
+    }
+    this.chars.flip();
+    return this.chars;
+  }
+
+  private static ByteBuffer grow(final ByteBuffer buffer) {
+    ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, INITIAL_CAPACITY));
+    buffer.flip();
+    larger.put(buffer);
+    return larger;
+  }
+
+  private static CharBuffer grow(final CharBuffer buffer, final CoderResult result)
+      throws CharacterCodingException {
+    if (!result.isOverflow()) {
+      result.throwException();
+    }
+    CharBuffer larger = CharBuffer.allocate(Math.max(buffer.capacity() * 2, INITIAL_CAPACITY));
+    buffer.flip();
+    larger.put(buffer);
+    return larger;
+  }
+}
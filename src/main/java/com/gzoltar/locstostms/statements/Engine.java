@@ -0,0 +1,39 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.statements;
+
+/**
+ * Engines that compute the statements of a java file.
+ */
+public enum Engine {
+
+  /**
+   * Builds the AST of the file with JavaParser and explores it, see {@link StatementExplorer}.
+   */
+  JAVAPARSER,
+
+  /**
+   * Scans the tokens of the file without building an AST, see {@link StatementLexer}. It is faster
+   * than {@link #JAVAPARSER} and agrees with it on the JDK 8 sources, but its outcome differs when
+   * a lambda expression is the second operand of a multi-line conditional expression, e.g.,
+   * <code>c ? () -&gt; a() :</code> followed by <code>() -&gt; b()</code> on the next line:
+   * JavaParser also parses the parameters of the second lambda expression as an enclosed
+   * expression, a child of the conditional expression, which the lexer does not reproduce. It may
+   * also differ on files that JavaParser rejects, which the lexer scans anyway.
+   */
+  LEXER
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.statements;
+
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.EnumConstantDeclaration;
+import com.github.javaparser.ast.body.VariableDeclarator;
+
+/**
+ * Classifies AST nodes by their class. The classification of each node class is computed (by name)
+ * only once and cached, so that classifying a node is a constant-time lookup.
+ */
+final class NodeKind {
+
+  /**
+   * Comments and enum constants, which are not explored.
+   */
+  static final int IGNORED = 1;
+
+  /**
+   * Nodes of the <code>com.github.javaparser.ast.stmt</code> package.
+   */
+  static final int STATEMENT = 1 << 1;
+
+  /**
+   * Statements, variable declarators and declarations, i.e., nodes to which the lines of their
+   * children are attributed.
+   */
+  static final int ANCHOR = 1 << 2;
+
+  private static final String COMMENTS_PACKAGE = "com.github.javaparser.ast.comments.";
+
+  private static final String STMT_PACKAGE = "com.github.javaparser.ast.stmt.";
+
+  private static final String BODY_PACKAGE = "com.github.javaparser.ast.body.";
+
+  private static final ClassValue<Integer> KINDS = new ClassValue<Integer>() {
+    @Override
+    protected Integer computeValue(final Class<?> type) {
+      return classify(type);
+    }
+  };
+
+  private NodeKind() {
+    // no-op
+  }
+
+  /**
+   * Returns the kind of a node.
+   * 
+   * @param node an AST node
+   * @return a bit mask of {@link #IGNORED}, {@link #STATEMENT} and {@link #ANCHOR}
+   */
+  static int of(final Node node) {
+    return KINDS.get(node.getClass());
+  }
+
+  static boolean isIgnored(final Node node) {
+    return (of(node) & IGNORED) != 0;
+  }
+
+  static boolean isStatement(final Node node) {
+    return (of(node) & STATEMENT) != 0;
+  }
+
+  static boolean isAnchor(final Node node) {
+    return (of(node) & ANCHOR) != 0;
+  }
+
+  private static int classify(final Class<?> type) {
+    final String name = type.getName();
+    int kind = 0;
+
+    if (name.startsWith(COMMENTS_PACKAGE) || type == EnumConstantDeclaration.class) {
+      kind |= IGNORED;
+    }
+    if (name.startsWith(STMT_PACKAGE)) {
+      kind |= STATEMENT | ANCHOR;
+    }
+    if (type == VariableDeclarator.class
+        || (name.startsWith(BODY_PACKAGE) && name.endsWith("Declaration"))) {
+      kind |= ANCHOR;
+    }
+
+    return kind;
+  }
+}
@@ -0,0 +1,188 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.statements;
+
+import java.io.CharArrayReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseException;
+import com.github.javaparser.TokenMgrError;
+import com.gzoltar.locstostms.sources.SourceReader;
+
+/**
+ * Computes the statements of java files, for tools that embed <code>locs-to-stms</code>.
+ * 
+ * <p>
+ * An analyzer is thread-safe and is meant to be reused: each thread owns the buffers in which
+ * files are read and decoded. Statements are either returned as a {@link StatementMap} or pushed,
+ * one line at a time, to a {@link StatementSink}, so that no more than a single file is held in
+ * memory.
+ * </p>
+ */
+public final class StatementAnalyzer {
+
+  private final Engine engine;
+
+  private final Charset charset;
+
+  private final ThreadLocal<SourceReader> readers = new ThreadLocal<SourceReader>() {
+    @Override
+    protected SourceReader initialValue() {
+      return new SourceReader(StatementAnalyzer.this.charset);
+    }
+  };
+
+  private final ThreadLocal<StatementLexer> lexers = new ThreadLocal<StatementLexer>() {
+    @Override
+    protected StatementLexer initialValue() {
+      return new StatementLexer();
+    }
+  };
+
+  /**
+   * Creates an analyzer of UTF-8 java files that uses the {@link Engine#JAVAPARSER} engine.
+   */
+  public StatementAnalyzer() {
+    this(Engine.JAVAPARSER, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Creates an analyzer.
+   * 
+   * @param engine engine that computes the statements
+   * @param charset charset of the java files
+   */
+  public StatementAnalyzer(final Engine engine, final Charset charset) {
+    if (engine == null || charset == null) {
+      throw new NullPointerException();
+    }
+    this.engine = engine;
+    this.charset = charset;
+  }
+
+  /**
+   * Returns the engine that computes the statements.
+   * 
+   * @return a {@link Engine} object
+   */
+  public Engine getEngine() {
+    return this.engine;
+  }
+
+  /**
+   * Returns the charset of the java files.
+   * 
+   * @return a {@link Charset} object
+   */
+  public Charset getCharset() {
+    return this.charset;
+  }
+
+  /**
+   * Computes the statements of a java file.
+   * 
+   * @param javaFile the java file
+   * @return a {@link StatementMap} object
+   * @throws IOException if the file cannot be read
+   * @throws ParseException if the file is not valid java, including lexical errors such as an
+   *         unterminated string literal, see {@link Engine#JAVAPARSER}
+   */
+  public StatementMap analyze(final File javaFile) throws IOException, ParseException {
+    SourceReader reader = this.readers.get();
+    reader.read(javaFile);
+    CharBuffer chars = reader.decode();
+    return this.analyze(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+  }
+
+  /**
+   * Computes the statements of a java source.
+   * 
+   * @param source content of a java file
+   * @return a {@link StatementMap} object
+   * @throws ParseException if the source is not valid java, including lexical errors such as an
+   *         unterminated string literal, see {@link Engine#JAVAPARSER}
+   */
+  public StatementMap analyze(final CharSequence source) throws ParseException {
+    if (this.engine == Engine.LEXER) {
+      return this.lexers.get().scan(source.toString());
+    }
+    return parse(new StringReader(source.toString()));
+  }
+
+  /**
+   * Computes the statements of a java file and pushes them to a sink.
+   * 
+   * @param javaFile the java file, its path is the name received by the sink
+   * @param sink destination of the statements
+   * @throws IOException if the file cannot be read
+   * @throws ParseException if the file is not valid java, including lexical errors such as an
+   *         unterminated string literal, see {@link Engine#JAVAPARSER}
+   */
+  public void analyze(final File javaFile, final StatementSink sink)
+      throws IOException, ParseException {
+    push(javaFile.getPath(), this.analyze(javaFile), sink);
+  }
+
+  /**
+   * Computes the statements of a java source and pushes them to a sink.
+   * 
+   * @param file name of the java file received by the sink
+   * @param source content of the java file
+   * @param sink destination of the statements
+   * @throws ParseException if the source is not valid java, including lexical errors such as an
+   *         unterminated string literal, see {@link Engine#JAVAPARSER}
+   */
+  public void analyze(final String file, final CharSequence source, final StatementSink sink)
+      throws ParseException {
+    push(file, this.analyze(source), sink);
+  }
+
+  private StatementMap analyze(final char[] source, final int offset, final int length)
+      throws ParseException {
+    if (this.engine == Engine.LEXER) {
+      return this.lexers.get().scan(source, offset, length);
+    }
+    return parse(new CharArrayReader(source, offset, length));
+  }
+
+  private static StatementMap parse(final Reader source) throws ParseException {
+    try {
+      return StatementExplorer.explore(JavaParser.parse(source, true));
+    } catch (TokenMgrError e) {
+      // JavaParser reports lexical errors as an Error, which callers must not have to catch
+      ParseException exception = new ParseException(e.getMessage());
+      exception.initCause(e);
+      throw exception;
+    }
+  }
+
+  private static void push(final String file, final StatementMap statements,
+      final StatementSink sink) {
+    for (int i = 0; i < statements.size(); i++) {
+      int statement = statements.statement(i);
+      for (int j = 0; j < statements.lineCount(i); j++) {
+        sink.line(file, statement, statements.line(i, j));
+      }
+    }
+  }
+}
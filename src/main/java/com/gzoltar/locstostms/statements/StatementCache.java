@@ -0,0 +1,360 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.statements;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import com.github.javaparser.JavaParser;
+
+/**
+ * On-disk cache of {@link StatementMap} objects keyed by the content of a java file. Entries are
+ * also keyed by the version of the tool and by a fingerprint of the classes that compute the
+ * statements (see {@link #BUILD}), so that neither a new version nor a rebuilt snapshot ever
+ * reuses stale results. An in-memory {@link StatementLru} may be put in front of (or used instead
+ * of) the directory.
+ * 
+ * <p>
+ * Each entry is stored in its own file and is written atomically, therefore the same cache
+ * directory can be used by several threads (or processes) at the same time.
+ * </p>
+ */
+public final class StatementCache {
+
+  /**
+   * Version of the format of the cache entries and of the semantics of the parser. It must be
+   * increased whenever the format of the entries changes, or whenever the statements computed for
+   * the same file may change for a reason {@link #BUILD} does not capture (e.g., a change in a
+   * class that is not fingerprinted).
+   */
+  private static final int FORMAT_VERSION = 1;
+
+  private static final int MAGIC = 0x4C325343; // "L2SC"
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  /**
+   * Classes whose code determines the statements computed for a java file, or how they are stored.
+   * Their nested and anonymous classes are fingerprinted as well.
+   */
+  private static final Class<?>[] FINGERPRINTED = {StatementExplorer.class, StatementLexer.class,
+      NodeKind.class, StatementKind.class, StatementMap.class, JavaParser.class};
+
+  /**
+   * Fingerprint of the class files of {@link #FINGERPRINTED}. Unlike the version of the tool (which
+   * is the same for every snapshot build), it changes whenever the explorer, the lexer or
+   * JavaParser are rebuilt with different code.
+   */
+  private static final String BUILD = fingerprint();
+
+  private final File cacheDir;
+
+  private final byte[] version;
+
+  private final StatementLru memory;
+
+  private final AtomicInteger hits = new AtomicInteger();
+
+  private final AtomicInteger misses = new AtomicInteger();
+
+  private final AtomicInteger writeFailures = new AtomicInteger();
+
+  private final AtomicReference<String> writeError = new AtomicReference<String>();
+
+  /**
+   * Creates a cache.
+   * 
+   * @param cacheDir directory in which entries are stored (created if it does not exist)
+   * @param version version of the tool
+   * @throws IOException if the directory cannot be created
+   */
+  public StatementCache(final File cacheDir, final String version) throws IOException {
+    this(cacheDir, version, null);
+  }
+
+  /**
+   * Creates a cache.
+   * 
+   * @param cacheDir directory in which entries are stored (created if it does not exist), may be
+   *        <code>null</code> if entries are only kept in memory
+   * @param version version of the tool
+   * @param memory in-memory cache looked up before the directory, may be <code>null</code>
+   * @throws IOException if the directory cannot be created
+   */
+  public StatementCache(final File cacheDir, final String version, final StatementLru memory)
+      throws IOException {
+    if (cacheDir == null && memory == null) {
+      throw new IllegalArgumentException("Either a directory or an in-memory cache is required");
+    }
+    this.cacheDir = cacheDir;
+    this.version =
+        (FORMAT_VERSION + ":" + BUILD + ":" + version + ":").getBytes(Charset.forName("UTF-8"));
+    this.memory = memory;
+
+    if (cacheDir != null && !cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+      throw new IOException("Cannot create cache directory " + cacheDir.getAbsolutePath());
+    }
+  }
+
+  /**
+   * Computes the key of the content of a java file.
+   * 
+   * @param content content of a java file
+   * @return the key of the content
+   */
+  public String key(final byte[] content) {
+    return this.key(ByteBuffer.wrap(content));
+  }
+
+  /**
+   * Computes the key of the content of a java file. The position of the buffer is not modified.
+   * 
+   * @param content content of a java file, from its position to its limit
+   * @return the key of the content
+   */
+  public String key(final ByteBuffer content) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+    digest.update(this.version);
+    digest.update(content.duplicate());
+    byte[] hash = digest.digest();
+
+    char[] chars = new char[hash.length * 2];
+    for (int i = 0; i < hash.length; i++) {
+      chars[2 * i] = HEX[(hash[i] >> 4) & 0xF];
+      chars[2 * i + 1] = HEX[hash[i] & 0xF];
+    }
+    return new String(chars);
+  }
+
+  /**
+   * Returns the statements stored under a key.
+   * 
+   * @param key a key returned by {@link #key(byte[])}
+   * @return a {@link StatementMap} object, or <code>null</code> if there is no (valid) entry
+   */
+  public StatementMap get(final String key) {
+    if (this.memory != null) {
+      StatementMap statements = this.memory.get(key);
+      if (statements != null) {
+        this.hits.incrementAndGet();
+        return statements;
+      }
+      if (this.cacheDir == null) {
+        this.misses.incrementAndGet();
+        return null;
+      }
+    }
+
+    File entry = this.entry(key);
+    if (!entry.isFile()) {
+      this.misses.incrementAndGet();
+      return null;
+    }
+
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(entry)))) {
+      if (in.readInt() != MAGIC) {
+        this.misses.incrementAndGet();
+        return null;
+      }
+      // the statements fill the rest of the entry, after the magic number
+      StatementMap statements = StatementMap.read(in, entry.length() - 4);
+      if (this.memory != null) {
+        this.memory.put(key, statements);
+      }
+      this.hits.incrementAndGet();
+      return statements;
+    } catch (IOException e) {
+      // a truncated or corrupted entry is just a miss, it will be overwritten
+      this.misses.incrementAndGet();
+      return null;
+    }
+  }
+
+  /**
+   * Stores statements under a key.
+   * 
+   * @param key a key returned by {@link #key(byte[])}
+   * @param statements statements to store
+   * @throws IOException if the entry cannot be written
+   */
+  public void put(final String key, final StatementMap statements) throws IOException {
+    if (this.memory != null) {
+      this.memory.put(key, statements);
+    }
+    if (this.cacheDir == null) {
+      return;
+    }
+
+    File entry = this.entry(key);
+    File dir = entry.getParentFile();
+    if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+      throw new IOException("Cannot create cache directory " + dir.getAbsolutePath());
+    }
+
+    // write to a temporary file first so that readers never see a partial entry
+    File tmp = File.createTempFile(key, ".tmp", dir);
+    try {
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+        out.writeInt(MAGIC);
+        statements.write(out);
+      }
+      try {
+        Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(tmp.toPath());
+    }
+  }
+
+  /**
+   * Stores statements under a key, if possible. Unlike {@link #put(String, StatementMap)}, an entry
+   * that cannot be written (e.g., a full disk or a read-only directory) is not an error, it is
+   * only counted (see {@link #getWriteFailures()}) and will be computed again next time.
+   * 
+   * @param key a key returned by {@link #key(byte[])}
+   * @param statements statements to store
+   * @return <code>true</code> if the entry has been written
+   */
+  public boolean offer(final String key, final StatementMap statements) {
+    try {
+      this.put(key, statements);
+      return true;
+    } catch (IOException e) {
+      this.writeFailures.incrementAndGet();
+      this.writeError.compareAndSet(null, e.getMessage() == null ? e.toString() : e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Returns the number of successful lookups.
+   * 
+   * @return number of hits
+   */
+  public int getHits() {
+    return this.hits.get();
+  }
+
+  /**
+   * Returns the number of lookups that did not find a valid entry.
+   * 
+   * @return number of misses
+   */
+  public int getMisses() {
+    return this.misses.get();
+  }
+
+  /**
+   * Returns the number of entries {@link #offer(String, StatementMap)} could not write.
+   * 
+   * @return number of write failures
+   */
+  public int getWriteFailures() {
+    return this.writeFailures.get();
+  }
+
+  /**
+   * Returns the error of the first entry {@link #offer(String, StatementMap)} could not write.
+   * 
+   * @return an error message, or <code>null</code> if every entry has been written
+   */
+  public String getWriteError() {
+    return this.writeError.get();
+  }
+
+  private File entry(final String key) {
+    // spread entries over 256 sub-directories to keep directories small
+    return new File(new File(this.cacheDir, key.substring(0, 2)), key + ".stms");
+  }
+
+  private static String fingerprint() {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+
+    byte[] buffer = new byte[8192];
+    for (Class<?> clazz : FINGERPRINTED) {
+      String name = clazz.getName().replace('.', '/');
+      fingerprint(digest, clazz, name + ".class", buffer);
+      for (Class<?> nested : clazz.getDeclaredClasses()) {
+        fingerprint(digest, clazz, nested.getName().replace('.', '/') + ".class", buffer);
+      }
+      // anonymous classes are numbered from 1 without gaps
+      int anonymous = 1;
+      while (fingerprint(digest, clazz, name + "$" + anonymous + ".class", buffer)) {
+        anonymous++;
+      }
+    }
+
+    byte[] hash = digest.digest();
+    char[] chars = new char[16];
+    for (int i = 0; i < chars.length / 2; i++) {
+      chars[2 * i] = HEX[(hash[i] >> 4) & 0xF];
+      chars[2 * i + 1] = HEX[hash[i] & 0xF];
+    }
+    return new String(chars);
+  }
+
+  private static boolean fingerprint(final MessageDigest digest, final Class<?> clazz,
+      final String resource, final byte[] buffer) {
+    ClassLoader loader = clazz.getClassLoader();
+    InputStream in = loader == null ? ClassLoader.getSystemResourceAsStream(resource)
+        : loader.getResourceAsStream(resource);
+    digest.update(resource.getBytes(Charset.forName("UTF-8")));
+    if (in == null) {
+      // e.g., classes that are not loaded from class files, the version of the tool still applies
+      return false;
+    }
+    try (InputStream stream = in) {
+      for (int n = stream.read(buffer); n != -1; n = stream.read(buffer)) {
+        digest.update(buffer, 0, n);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot read " + resource, e);
+    }
+    return true;
+  }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.statements;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the statements of the same java file computed by two different engines.
+ */
+public final class StatementDiff {
+
+  private StatementDiff() {
+    // no instances
+  }
+
+  /**
+   * Returns a description of every statement whose lines differ between two maps, e.g.,
+   * "statement 12: javaparser [12, 13], lexer [12]", in statement order.
+   * 
+   * @param leftName name of the engine that computed the first map
+   * @param left first map
+   * @param rightName name of the engine that computed the second map
+   * @param right second map
+   * @return a {@link java.util.List} object, empty if both maps are equal
+   */
+  public static List<String> compare(final String leftName, final StatementMap left,
+      final String rightName, final StatementMap right) {
+    List<String> differences = new ArrayList<String>();
+    if (left.equals(right)) {
+      return differences;
+    }
+
+    int i = 0;
+    int j = 0;
+    while (i < left.size() || j < right.size()) {
+      int leftStatement = i < left.size() ? left.statement(i) : Integer.MAX_VALUE;
+      int rightStatement = j < right.size() ? right.statement(j) : Integer.MAX_VALUE;
+      int statement = Math.min(leftStatement, rightStatement);
+      int l = leftStatement == statement ? i++ : -1;
+      int r = rightStatement == statement ? j++ : -1;
+
+      if (l >= 0 && r >= 0 && sameLines(left, l, right, r)) {
+        continue;
+      }
+      differences.add("statement " + statement + ": " + leftName + " " + lines(left, l) + ", "
+          + rightName + " " + lines(right, r));
+    }
+    return differences;
+  }
+
+  private static boolean sameLines(final StatementMap left, final int l, final StatementMap right,
+      final int r) {
+    if (left.lineCount(l) != right.lineCount(r)) {
+      return false;
+    }
+    for (int k = 0; k < left.lineCount(l); k++) {
+      if (left.line(l, k) != right.line(r, k)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String lines(final StatementMap statements, final int i) {
+    StringBuilder sb = new StringBuilder("[");
+    if (i >= 0) {
+      for (int k = 0; k < statements.lineCount(i); k++) {
+        if (k > 0) {
+          sb.append(", ");
+        }
+        sb.append(statements.line(i, k));
+      }
+    }
+    return sb.append(']').toString();
+  }
+}
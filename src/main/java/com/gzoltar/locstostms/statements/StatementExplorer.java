@@ -0,0 +1,188 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.statements;
+
+import java.util.Arrays;
+import java.util.List;
+import com.github.javaparser.ast.Node;
+
+/**
+ * Explores the AST of a java file and aggregates its lines of code per Java statement.
+ * 
+ * <p>
+ * Each node is visited exactly once: the line of the closest enclosing statement or declaration of
+ * each node is passed down the tree, rather than searched for by walking up from every leaf. The
+ * tree is traversed with an explicit stack, which is reused from one tree to the next, so the
+ * depth of a tree is only bounded by the heap and not by the thread stack.
+ * </p>
+ * 
+ * <p>
+ * An explorer can be reused to explore several ASTs, but it is not thread-safe: each thread must
+ * use its own explorer (or the static {@link #explore(Node)} method).
+ * </p>
+ */
+public final class StatementExplorer {
+
+  /**
+   * Anchor line of nodes without any statement or declaration as ancestor.
+   */
+  private static final int NO_ANCHOR = Integer.MIN_VALUE;
+
+  private static final int INITIAL_STACK_SIZE = 64;
+
+  /**
+   * Explicit stack of nodes to visit, reused by every call to {@link #visit(Node)}.
+   */
+  private Node[] nodes = new Node[INITIAL_STACK_SIZE];
+
+  /**
+   * Anchor line of each node in {@link #nodes}.
+   */
+  private int[] anchorLines = new int[INITIAL_STACK_SIZE];
+
+  private int top = 0;
+
+  private long visitedNodes = 0;
+
+  /**
+   * Explores an AST, e.g., a {@link com.github.javaparser.ast.CompilationUnit}, and returns all its
+   * statements. This method does not keep any state, so it can be called by several threads at the
+   * same time.
+   * 
+   * @param node root of the AST
+   * @return a {@link StatementMap} object
+   */
+  public static StatementMap explore(final Node node) {
+    return new StatementExplorer().visit(node);
+  }
+
+  /**
+   * Explores an AST, e.g., a {@link com.github.javaparser.ast.CompilationUnit}, and returns all its
+   * statements.
+   * 
+   * @param node root of the AST
+   * @return a {@link StatementMap} object
+   */
+  public StatementMap visit(final Node node) {
+    return this.visit(node, null);
+  }
+
+  /**
+   * Explores an AST, e.g., a {@link com.github.javaparser.ast.CompilationUnit}, and returns all its
+   * statements. The position and kind of every statement and declaration (see
+   * {@link StatementSpans}) are also added to a builder, in source order, so that they are
+   * collected by the same traversal.
+   * 
+   * @param node root of the AST
+   * @param spans builder to which spans are added, may be <code>null</code>
+   * @return a {@link StatementMap} object
+   */
+  public StatementMap visit(final Node node, final StatementSpans.Builder spans) {
+    StatementMap.Builder javaStatements = new StatementMap.Builder();
+    try {
+      this.explore(node, javaStatements, spans);
+    } finally {
+      // do not keep any node of a tree that could not be fully explored
+      Arrays.fill(this.nodes, 0, this.top, null);
+      this.top = 0;
+    }
+    return javaStatements.build();
+  }
+
+  /**
+   * Returns the number of AST nodes visited by this explorer so far.
+   * 
+   * @return number of nodes
+   */
+  public long getVisitedNodes() {
+    return this.visitedNodes;
+  }
+
+  /**
+   * Explores all nodes of a tree in depth-first order with an explicit stack, so that deeply nested
+   * trees do not overflow the thread stack.
+   * 
+   * @param root root of the tree
+   * @param javaStatements builder to which statements are added
+   * @param spans builder to which spans are added, may be <code>null</code>
+   */
+  private void explore(final Node root, final StatementMap.Builder javaStatements,
+      final StatementSpans.Builder spans) {
+    this.push(root, NO_ANCHOR);
+
+    while (this.top > 0) {
+      // pop the next node and the begin line of its closest ancestor that is a statement, a
+      // variable declarator or a declaration (see NodeKind#ANCHOR), if any
+      this.top--;
+      final Node node = this.nodes[this.top];
+      final int anchorLine = this.anchorLines[this.top];
+      this.nodes[this.top] = null;
+      this.visitedNodes++;
+
+      // ignore everything related to comments and enum constants
+      if (NodeKind.isIgnored(node)) {
+        continue;
+      }
+
+      // nodes are popped in source order, parents before their children
+      if (spans != null && NodeKind.isAnchor(node)) {
+        spans.add(StatementKind.of(node), node.getBeginLine(), node.getBeginColumn(),
+            node.getEndLine(), node.getEndColumn());
+      }
+
+      final List<Node> children = node.getChildrenNodes();
+      if (children.isEmpty()) {
+        Node parent = node.getParentNode();
+        if (parent == null) {
+          // an empty tree, e.g., the compilation unit of an empty java file
+          continue;
+        }
+        int line_number = parent.getBeginLine();
+
+        // is it a statement?
+        if (NodeKind.isStatement(node) && node.getBeginLine() == node.getEndLine()) {
+          line_number = node.getBeginLine();
+        } else if (parent.getBeginLine() == parent.getEndLine() && anchorLine != NO_ANCHOR) {
+          // to handle special cases: parameters, binary expressions, etc, the line of the
+          // closest 'Declaration' or 'Statement' is used
+          line_number = anchorLine;
+        }
+
+        // a statement is always composed by its own line
+        javaStatements.add(line_number, line_number);
+        javaStatements.add(line_number, node.getBeginLine());
+      } else {
+        // the closest anchor of the children of this node
+        int childrenAnchorLine = NodeKind.isAnchor(node) ? node.getBeginLine() : anchorLine;
+        // children are pushed in reverse order, so that they are visited in source order
+        for (int i = children.size() - 1; i >= 0; i--) {
+          this.push(children.get(i), childrenAnchorLine);
+        }
+      }
+    }
+  }
+
+  private void push(final Node node, final int anchorLine) {
+    if (this.top == this.nodes.length) {
+      this.nodes = Arrays.copyOf(this.nodes, this.top * 2);
+      this.anchorLines = Arrays.copyOf(this.anchorLines, this.top * 2);
+    }
+    this.nodes[this.top] = node;
+    this.anchorLines[this.top] = anchorLine;
+    this.top++;
+  }
+}
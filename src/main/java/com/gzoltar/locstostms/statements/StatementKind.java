@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.statements;
+
+import com.github.javaparser.ast.Node;
+
+/**
+ * Kind of a statement or declaration, as recorded in {@link StatementSpans}. Each kind has an
+ * explicit code, which is written to files: codes are never reused or changed, so that codes
+ * written by older versions keep their meaning regardless of the order of the constants.
+ */
+public enum StatementKind {
+
+  ASSERT(0, "AssertStmt"),
+  BLOCK(1, "BlockStmt"),
+  BREAK(2, "BreakStmt"),
+  CATCH(3, "CatchClause"),
+  CONTINUE(4, "ContinueStmt"),
+  DO(5, "DoStmt"),
+  EMPTY(6, "EmptyStmt"),
+  /**
+   * <code>this(...)</code> or <code>super(...)</code>.
+   */
+  CONSTRUCTOR_CALL(7, "ExplicitConstructorInvocationStmt"),
+  EXPRESSION(8, "ExpressionStmt"),
+  FOR(9, "ForStmt"),
+  FOREACH(10, "ForeachStmt"),
+  IF(11, "IfStmt"),
+  LABELED(12, "LabeledStmt"),
+  RETURN(13, "ReturnStmt"),
+  SWITCH(14, "SwitchStmt"),
+  /**
+   * A <code>case</code> or <code>default</code> of a switch.
+   */
+  SWITCH_ENTRY(15, "SwitchEntryStmt"),
+  SYNCHRONIZED(16, "SynchronizedStmt"),
+  THROW(17, "ThrowStmt"),
+  TRY(18, "TryStmt"),
+  /**
+   * A class declared in the body of a method.
+   */
+  LOCAL_CLASS(19, "TypeDeclarationStmt"),
+  WHILE(20, "WhileStmt"),
+  /**
+   * A variable of a field or of a local variable declaration, e.g., <code>b = 1</code> in
+   * <code>int a, b = 1;</code>.
+   */
+  VARIABLE(21, "VariableDeclarator"),
+  FIELD(22, "FieldDeclaration"),
+  METHOD(23, "MethodDeclaration"),
+  CONSTRUCTOR(24, "ConstructorDeclaration"),
+  /**
+   * A static or instance initializer.
+   */
+  INITIALIZER(25, "InitializerDeclaration"),
+  /**
+   * A class or an interface.
+   */
+  CLASS(26, "ClassOrInterfaceDeclaration"),
+  ENUM(27, "EnumDeclaration"),
+  ANNOTATION(28, "AnnotationDeclaration"),
+  ANNOTATION_MEMBER(29, "AnnotationMemberDeclaration"),
+  /**
+   * Any other statement or declaration, e.g., a stray semicolon in the body of a class, or an
+   * unknown code written by a newer version.
+   */
+  OTHER(30, null);
+
+  private static final StatementKind[] KINDS = values();
+
+  /**
+   * Kind of each code, <code>null</code> for unknown codes.
+   */
+  private static final StatementKind[] BY_CODE = new StatementKind[128];
+
+  static {
+    for (StatementKind kind : KINDS) {
+      if (BY_CODE[kind.code] != null) {
+        throw new IllegalStateException("Duplicate code " + kind.code + " of " + kind);
+      }
+      BY_CODE[kind.code] = kind;
+    }
+  }
+
+  private static final ClassValue<StatementKind> KIND_OF_CLASS = new ClassValue<StatementKind>() {
+    @Override
+    protected StatementKind computeValue(final Class<?> type) {
+      for (StatementKind kind : KINDS) {
+        if (type.getSimpleName().equals(kind.nodeClass)) {
+          return kind;
+        }
+      }
+      return OTHER;
+    }
+  };
+
+  /**
+   * Code of this kind, as written to files.
+   */
+  private final byte code;
+
+  /**
+   * Simple name of the JavaParser node class of this kind.
+   */
+  private final String nodeClass;
+
+  private StatementKind(final int code, final String nodeClass) {
+    this.code = (byte) code;
+    this.nodeClass = nodeClass;
+  }
+
+  /**
+   * Returns the code of this kind, as written to files.
+   * 
+   * @return a code between 0 and 127
+   */
+  public byte code() {
+    return this.code;
+  }
+
+  /**
+   * Returns the kind of a code.
+   * 
+   * @param code a code returned by {@link #code()}
+   * @return a {@link StatementKind} object, {@link #OTHER} if the code is unknown
+   */
+  public static StatementKind of(final int code) {
+    StatementKind kind = code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+    return kind == null ? OTHER : kind;
+  }
+
+  /**
+   * Returns the kind of a statement or declaration. The kind of each node class is only looked up
+   * once.
+   * 
+   * @param node an AST node
+   * @return a {@link StatementKind} object
+   */
+  static StatementKind of(final Node node) {
+    return KIND_OF_CLASS.get(node.getClass());
+  }
+}
@@ -0,0 +1,2301 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.statements;
+
+import java.util.Arrays;
+
+/**
+ * Aggregates the lines of code of a java file per Java statement from a single scan of its tokens,
+ * i.e., without building an AST.
+ * 
+ * <p>
+ * The source is first split into tokens (comments and whitespace are skipped), and matching
+ * brackets are paired. Statements, declarations and expressions are then recognised from keywords,
+ * semicolons, braces, brackets, commas and assignments, and every token that would be a leaf of
+ * the AST (names, literals, primitive types, etc.) is mapped to a statement following the same
+ * rules as {@link StatementExplorer}: the begin line of its parent, if the parent spans more than
+ * one line, or the begin line of the closest statement, variable declarator or declaration.
+ * Parents are approximated from the brackets, separators and operators around each token,
+ * including the quirks of JavaParser, e.g., the comments of a catch block are dropped, and the
+ * parameters of a lambda expression cast to a type are also an enclosed expression. See
+ * {@link Engine#LEXER} for the known differences with {@link StatementExplorer}.
+ * </p>
+ * 
+ * <p>
+ * The source is not validated: files that JavaParser would reject are scanned anyway. A lexer can
+ * be reused to scan several files, but it is not thread-safe.
+ * </p>
+ */
+public final class StatementLexer {
+
+  // kinds of tokens
+
+  private static final int IDENT = 1;
+  private static final int LITERAL = 2;
+  private static final int PRIMITIVE = 3;
+  private static final int THIS = 4;
+  private static final int SUPER = 5;
+  private static final int NEW = 6;
+  private static final int CLASS = 7;
+  private static final int INTERFACE = 8;
+  private static final int ENUM = 9;
+  private static final int IF = 10;
+  private static final int ELSE = 11;
+  private static final int FOR = 12;
+  private static final int WHILE = 13;
+  private static final int DO = 14;
+  private static final int TRY = 15;
+  private static final int CATCH = 16;
+  private static final int FINALLY = 17;
+  private static final int SWITCH = 18;
+  private static final int CASE = 19;
+  private static final int DEFAULT = 20;
+  private static final int SYNCHRONIZED = 21;
+  private static final int RETURN = 22;
+  private static final int BREAK = 23;
+  private static final int CONTINUE = 24;
+  private static final int STATIC = 25;
+  private static final int THROW = 26;
+  private static final int ASSERT = 27;
+  /** Any other keyword, e.g., modifiers, extends, throws. */
+  private static final int KEYWORD = 28;
+  private static final int LPAREN = 29;
+  private static final int RPAREN = 30;
+  private static final int LBRACKET = 31;
+  private static final int RBRACKET = 32;
+  private static final int LBRACE = 33;
+  private static final int RBRACE = 34;
+  private static final int SEMI = 35;
+  private static final int COMMA = 36;
+  private static final int DOT = 37;
+  private static final int AT = 38;
+  private static final int COLON = 39;
+  private static final int COLONCOLON = 40;
+  private static final int QUESTION = 41;
+  private static final int ARROW = 42;
+  /** <code>=</code> */
+  private static final int ASSIGN = 43;
+  /** Compound assignments, e.g., <code>+=</code>. */
+  private static final int OP_ASSIGN = 44;
+  private static final int LT = 45;
+  /** <code>&gt;</code>, <code>&gt;&gt;</code> and <code>&gt;&gt;&gt;</code>. */
+  private static final int GT = 46;
+  /** <code>!</code>, <code>~</code>, <code>++</code> and <code>--</code>. */
+  private static final int PREFIX = 47;
+  /** Any other operator. */
+  private static final int OP = 48;
+  private static final int PACKAGE = 49;
+
+  // kinds of frames
+
+  private static final int BODY = 1;
+  private static final int STATEMENT = 2;
+  private static final int GROUP = 3;
+
+  // kinds of bodies
+
+  private static final int UNIT_BODY = 1;
+  private static final int CLASS_BODY = 2;
+  private static final int ENUM_BODY = 3;
+  private static final int BLOCK_BODY = 4;
+  private static final int SWITCH_BODY = 5;
+
+  // kinds of statements
+
+  private static final int GENERAL = 1;
+  /** <code>if</code>, <code>for</code>, <code>catch</code>, etc, up to the closing parenthesis. */
+  private static final int CONTROL = 2;
+  /** <code>case</code>, up to the colon. */
+  private static final int CASE_LABEL = 3;
+
+  // kinds of groups, i.e., of tokens between brackets
+
+  private static final int CALL = 1;
+  private static final int NEW_CALL = 2;
+  private static final int ANNOTATION = 3;
+  private static final int INDEX = 4;
+  private static final int ENCLOSED = 5;
+  private static final int LAMBDA_PARAMS = 6;
+  private static final int CONTROL_PARAMS = 7;
+  private static final int DECL_PARAMS = 8;
+  private static final int ARRAY_INIT = 9;
+
+  private static final int NONE = Integer.MIN_VALUE;
+
+  /**
+   * Line of the type of untyped lambda parameters, as reported by JavaParser.
+   */
+  private static final int UNKNOWN_LINE = 0;
+
+  /**
+   * Parent end of an operand that is not part of a binary expression, see {@link #parentEnds}.
+   */
+  private static final int OPERAND = -1;
+
+  private static final int COMMENTED = 1;
+
+  // precedence of binary operators
+
+  private static final int BITWISE_AND = 5;
+
+  private static final int RELATIONAL = 7;
+
+  private static final int SHIFT = 8;
+
+  /**
+   * Value of 'instanceof', a relational operator whose right operand is a type.
+   */
+  private static final int INSTANCEOF = 16;
+
+  private static final int INITIAL_SIZE = 1024;
+
+  private static final int MAX_NEW_LOOKBEHIND = 32;
+
+  private static final String[] KEYWORDS = {"abstract", "assert", "boolean", "break", "byte",
+      "case", "catch", "char", "class", "const", "continue", "default", "do", "double", "else",
+      "enum", "extends", "false", "final", "finally", "float", "for", "goto", "if", "implements",
+      "import", "instanceof", "int", "interface", "long", "native", "new", "null", "package",
+      "private", "protected", "public", "return", "short", "static", "strictfp", "super", "switch",
+      "synchronized", "this", "throw", "throws", "transient", "true", "try", "void", "volatile",
+      "while"};
+
+  private static final int[] KEYWORD_KINDS = {KEYWORD, ASSERT, PRIMITIVE, BREAK, PRIMITIVE, CASE,
+      CATCH, PRIMITIVE, CLASS, KEYWORD, CONTINUE, DEFAULT, DO, PRIMITIVE, ELSE, ENUM, KEYWORD,
+      LITERAL, KEYWORD, FINALLY, PRIMITIVE, FOR, KEYWORD, IF, KEYWORD, KEYWORD, OP, PRIMITIVE,
+      INTERFACE, PRIMITIVE, KEYWORD, NEW, LITERAL, PACKAGE, KEYWORD, KEYWORD, KEYWORD, RETURN,
+      PRIMITIVE, STATIC, KEYWORD, SUPER, SWITCH, SYNCHRONIZED, THIS, THROW, KEYWORD, KEYWORD,
+      LITERAL, TRY, PRIMITIVE, KEYWORD, WHILE};
+
+  /**
+   * Open-addressing hash table of keywords, see {@link #keyword(char[], int, int)}.
+   */
+  private static final char[][] KEYWORD_TABLE = new char[256][];
+
+  private static final int[] KEYWORD_TABLE_KINDS = new int[256];
+
+  static {
+    for (int k = 0; k < KEYWORDS.length; k++) {
+      char[] keyword = KEYWORDS[k].toCharArray();
+      int slot = hash(keyword, 0, keyword.length) & 0xFF;
+      while (KEYWORD_TABLE[slot] != null) {
+        slot = (slot + 1) & 0xFF;
+      }
+      KEYWORD_TABLE[slot] = keyword;
+      KEYWORD_TABLE_KINDS[slot] = KEYWORD_KINDS[k];
+    }
+  }
+
+  /**
+   * A body (of a compilation unit, class or block), a statement, or the tokens between two
+   * brackets.
+   */
+  private static final class Frame {
+
+    private int type;
+
+    private int kind;
+
+    /**
+     * BODY: begin line of the parent of leaves directly in the body. STATEMENT: begin line of the
+     * statement. GROUP: begin line of the node that owns the brackets.
+     */
+    private int line;
+
+    /**
+     * GROUP: end line of the node that owns the brackets.
+     */
+    private int endLine;
+
+    /**
+     * GROUP: index of the closing bracket.
+     */
+    private int close;
+
+    // bodies
+
+    private int lastIfLine;
+
+    private int lastTryLine;
+
+    private int doLine;
+
+    private boolean enumConstants;
+
+    // statements
+
+    private int bodyKind;
+
+    private int firstKind;
+
+    private int start;
+
+    private int typeBody;
+
+    private boolean sawAssign;
+
+    // statements and groups, i.e., frames that contain expressions
+
+    /**
+     * Whether the frame declares variables, e.g., 'int a = 1, b;' or 'for (int i = 0, j = 1; ...'.
+     */
+    private boolean declarators;
+
+    private int baseAnchor;
+
+    private int anchor;
+
+    private boolean lambdaBody;
+
+    private int operandLine;
+
+    private boolean expectOperand;
+
+    // current segment of a statement or group, i.e., tokens between two separators
+
+    private int segStart;
+
+    private int segEnd;
+
+    private int segLine;
+
+    private boolean segBinary;
+
+    private boolean segParams;
+
+    /**
+     * Begin line of the assignment whose value is the current segment, {@link #NONE} if any.
+     */
+    private int assignLine;
+  }
+
+  private int[] kinds = new int[INITIAL_SIZE];
+
+  private int[] lines = new int[INITIAL_SIZE];
+
+  /**
+   * Index of the matching bracket of each bracket, -1 if there is none.
+   */
+  private int[] match = new int[INITIAL_SIZE];
+
+  /**
+   * Precedence of binary operators, number of '>' of the other '>' tokens, and whether a comment
+   * follows a '{'.
+   */
+  private int[] values = new int[INITIAL_SIZE];
+
+  /**
+   * Begin line of the parent of each operand of a binary expression, see
+   * {@link #operands(Frame)}.
+   */
+  private int[] parentLines = new int[INITIAL_SIZE];
+
+  /**
+   * Index of the last token of the parent of each operand of a binary expression,
+   * {@link #OPERAND} if the parent is not a binary expression, and {@link #NONE} for any other
+   * token.
+   */
+  private int[] parentEnds = new int[INITIAL_SIZE];
+
+  /**
+   * First token of the last operand skipped by {@link #operand(int, int)}, -1 if it is not a
+   * primary expression.
+   */
+  private int lastOperand;
+
+  private int[] brackets = new int[64];
+
+  private int size = 0;
+
+  private Frame[] frames = new Frame[64];
+
+  private int depth = 0;
+
+  private StatementMap.Builder javaStatements;
+
+  private long scannedTokens = 0;
+
+  /**
+   * Scans the source of a java file and returns all its statements.
+   * 
+   * @param source characters of the java file
+   * @param offset index of the first character
+   * @param length number of characters
+   * @return a {@link StatementMap} object
+   */
+  public StatementMap scan(final char[] source, final int offset, final int length) {
+    this.tokenize(source, offset, offset + length);
+    this.pairBrackets();
+    this.scannedTokens += this.size;
+
+    this.javaStatements = new StatementMap.Builder();
+    try {
+      this.analyze();
+      return this.javaStatements.build();
+    } finally {
+      this.javaStatements = null;
+      this.depth = 0;
+    }
+  }
+
+  /**
+   * Scans the source of a java file and returns all its statements.
+   * 
+   * @param source content of the java file
+   * @return a {@link StatementMap} object
+   */
+  public StatementMap scan(final String source) {
+    return this.scan(source.toCharArray(), 0, source.length());
+  }
+
+  /**
+   * Returns the number of tokens scanned by this lexer so far.
+   * 
+   * @return number of tokens
+   */
+  public long getScannedTokens() {
+    return this.scannedTokens;
+  }
+
+  //
+  // Tokens
+  //
+
+  private void tokenize(final char[] s, final int from, final int to) {
+    this.size = 0;
+    int line = 1;
+    int i = from;
+
+    while (i < to) {
+      final char c = s[i];
+
+      // line terminators and whitespace
+      if (c == '\n') {
+        line++;
+        i++;
+        continue;
+      }
+      if (c == '\r') {
+        line++;
+        i++;
+        if (i < to && s[i] == '\n') {
+          i++;
+        }
+        continue;
+      }
+      if (c == ' ' || c == '\t' || c == '\f' || c == '\u001a') {
+        i++;
+        continue;
+      }
+
+      // comments, which are children of the block that encloses them
+      if (c == '/' && i + 1 < to && (s[i + 1] == '/' || s[i + 1] == '*') && this.size > 0
+          && this.kinds[this.size - 1] == LBRACE) {
+        this.values[this.size - 1] = COMMENTED;
+      }
+      if (c == '/' && i + 1 < to && s[i + 1] == '/') {
+        i += 2;
+        while (i < to && s[i] != '\n' && s[i] != '\r') {
+          i++;
+        }
+        continue;
+      }
+      if (c == '/' && i + 1 < to && s[i + 1] == '*') {
+        i += 2;
+        while (i < to && !(s[i] == '*' && i + 1 < to && s[i + 1] == '/')) {
+          if (s[i] == '\n') {
+            line++;
+          } else if (s[i] == '\r') {
+            line++;
+            if (i + 1 < to && s[i + 1] == '\n') {
+              i++;
+            }
+          }
+          i++;
+        }
+        i += 2;
+        continue;
+      }
+
+      final int start = i;
+      final int kind;
+      int value = 0;
+      if (c == '"' || c == '\'') {
+        // string and character literals, which never span more than one line
+        i++;
+        while (i < to && s[i] != c && s[i] != '\n' && s[i] != '\r') {
+          i += s[i] == '\\' ? 2 : 1;
+        }
+        if (i < to && s[i] == c) {
+          i++;
+        }
+        kind = LITERAL;
+      } else if (isDigit(c) || (c == '.' && i + 1 < to && isDigit(s[i + 1]))) {
+        i = number(s, i, to);
+        kind = LITERAL;
+      } else if (Character.isJavaIdentifierStart(c)) {
+        i++;
+        while (i < to && Character.isJavaIdentifierPart(s[i]) && s[i] != '\u001a') {
+          i++;
+        }
+        kind = keyword(s, start, i);
+        // 'instanceof' is the only keyword that is an operator
+        value = kind == OP ? INSTANCEOF : 0;
+      } else {
+        i = operator(s, i, to);
+        kind = operatorKind(s, start, i - start);
+        value = kind == GT ? i - start : precedence(s, start, i - start);
+      }
+      this.token(kind, line, value);
+    }
+  }
+
+  private static boolean isDigit(final char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static int number(final char[] s, final int from, final int to) {
+    final boolean hex =
+        s[from] == '0' && from + 1 < to && (s[from + 1] == 'x' || s[from + 1] == 'X');
+    int i = from + 1;
+    while (i < to) {
+      char c = s[i];
+      if (c == '+' || c == '-') {
+        // sign of an exponent, e.g., 1e-3 or 0x1p+2
+        char e = s[i - 1];
+        if (hex ? (e == 'p' || e == 'P') : (e == 'e' || e == 'E')) {
+          i++;
+          continue;
+        }
+        break;
+      }
+      if (c == '.' || c == '_' || Character.isLetterOrDigit(c)) {
+        i++;
+        continue;
+      }
+      break;
+    }
+    return i;
+  }
+
+  private static int operator(final char[] s, final int from, final int to) {
+    final char c = s[from];
+    int i = from + 1;
+    switch (c) {
+      case '(':
+      case ')':
+      case '[':
+      case ']':
+      case '{':
+      case '}':
+      case ';':
+      case ',':
+      case '@':
+      case '?':
+      case '~':
+        return i;
+      case '.':
+        // '...' of varargs
+        if (i + 1 < to && s[i] == '.' && s[i + 1] == '.') {
+          return i + 2;
+        }
+        return i;
+      case ':':
+        return i < to && s[i] == ':' ? i + 1 : i;
+      case '-':
+        if (i < to && (s[i] == '>' || s[i] == '-' || s[i] == '=')) {
+          return i + 1;
+        }
+        return i;
+      case '+':
+      case '&':
+      case '|':
+        if (i < to && (s[i] == c || s[i] == '=')) {
+          return i + 1;
+        }
+        return i;
+      case '<':
+      case '>':
+        // '<<', '>>' and '>>>', possibly followed by '='
+        while (i < to && s[i] == c && i - from < (c == '<' ? 2 : 3)) {
+          i++;
+        }
+        if (i < to && s[i] == '=') {
+          i++;
+        }
+        return i;
+      default:
+        // '=', '==', '!', '!=', '*', '*=', '/', '/=', '%', '%=', '^', '^=', and any other
+        // character
+        if (i < to && s[i] == '=') {
+          return i + 1;
+        }
+        return i;
+    }
+  }
+
+  private static int operatorKind(final char[] s, final int from, final int length) {
+    final char c = s[from];
+    if (length == 1) {
+      switch (c) {
+        case '(':
+          return LPAREN;
+        case ')':
+          return RPAREN;
+        case '[':
+          return LBRACKET;
+        case ']':
+          return RBRACKET;
+        case '{':
+          return LBRACE;
+        case '}':
+          return RBRACE;
+        case ';':
+          return SEMI;
+        case ',':
+          return COMMA;
+        case '.':
+          return DOT;
+        case '@':
+          return AT;
+        case ':':
+          return COLON;
+        case '?':
+          return QUESTION;
+        case '=':
+          return ASSIGN;
+        case '<':
+          return LT;
+        case '>':
+          return GT;
+        case '!':
+        case '~':
+          return PREFIX;
+        default:
+          return OP;
+      }
+    }
+
+    final char last = s[from + length - 1];
+    if (c == ':') {
+      return COLONCOLON;
+    }
+    if (c == '-' && last == '>') {
+      return ARROW;
+    }
+    if ((c == '+' || c == '-') && last == c) {
+      return PREFIX;
+    }
+    if (c == '>' && last == '>') {
+      return GT;
+    }
+    if (last == '=' && c != '=' && c != '!' && !(length == 2 && (c == '<' || c == '>'))) {
+      return OP_ASSIGN;
+    }
+    return OP;
+  }
+
+  /**
+   * Returns the precedence of a binary operator, from 1 ('||') to 10 ('*'), or 0 if it is not a
+   * binary operator.
+   */
+  private static int precedence(final char[] s, final int from, final int length) {
+    final char c = s[from];
+    final char last = s[from + length - 1];
+    if (length == 1) {
+      switch (c) {
+        case '|':
+          return 3;
+        case '^':
+          return 4;
+        case '&':
+          return BITWISE_AND;
+        case '<':
+        case '>':
+          return RELATIONAL;
+        case '+':
+        case '-':
+          return 9;
+        case '*':
+        case '/':
+        case '%':
+          return 10;
+        default:
+          return 0;
+      }
+    }
+    if (length == 2) {
+      if (c == '|' && last == '|') {
+        return 1;
+      }
+      if (c == '&' && last == '&') {
+        return 2;
+      }
+      if ((c == '=' || c == '!') && last == '=') {
+        return 6;
+      }
+      if ((c == '<' || c == '>') && last == '=') {
+        return RELATIONAL;
+      }
+    }
+    if ((c == '<' || c == '>') && last == c) {
+      return SHIFT;
+    }
+    return 0;
+  }
+
+  private static int hash(final char[] s, final int from, final int to) {
+    int h = 0;
+    for (int i = from; i < to; i++) {
+      h = 31 * h + s[i];
+    }
+    return h ^ (h >>> 8);
+  }
+
+  private static int keyword(final char[] s, final int from, final int to) {
+    final int length = to - from;
+    if (length < 2 || length > 12 || s[from] < 'a' || s[from] > 'z') {
+      return IDENT;
+    }
+    int slot = hash(s, from, to) & 0xFF;
+    char[] keyword;
+    while ((keyword = KEYWORD_TABLE[slot]) != null) {
+      if (keyword.length == length) {
+        int i = 0;
+        while (i < length && keyword[i] == s[from + i]) {
+          i++;
+        }
+        if (i == length) {
+          return KEYWORD_TABLE_KINDS[slot];
+        }
+      }
+      slot = (slot + 1) & 0xFF;
+    }
+    return IDENT;
+  }
+
+  private void token(final int kind, final int line, final int value) {
+    if (this.size == this.kinds.length) {
+      int length = this.size * 2;
+      this.kinds = Arrays.copyOf(this.kinds, length);
+      this.lines = Arrays.copyOf(this.lines, length);
+      this.values = Arrays.copyOf(this.values, length);
+      this.match = new int[length];
+      this.parentLines = new int[length];
+      this.parentEnds = new int[length];
+    }
+    this.kinds[this.size] = kind;
+    this.lines[this.size] = line;
+    this.values[this.size] = value;
+    this.size++;
+  }
+
+  private void pairBrackets() {
+    int top = 0;
+    for (int i = 0; i < this.size; i++) {
+      final int kind = this.kinds[i];
+      if (kind == LPAREN || kind == LBRACKET || kind == LBRACE) {
+        if (top == this.brackets.length) {
+          this.brackets = Arrays.copyOf(this.brackets, top * 2);
+        }
+        this.brackets[top++] = i;
+        // unless a matching bracket is found, a bracket is closed by the end of the file
+        this.match[i] = this.size;
+      } else if (kind == RPAREN || kind == RBRACKET || kind == RBRACE) {
+        this.match[i] = -1;
+        if (top > 0 && this.kinds[this.brackets[top - 1]] == kind - 1) {
+          int open = this.brackets[--top];
+          this.match[open] = i;
+          this.match[i] = open;
+        }
+      }
+    }
+  }
+
+  //
+  // Structure
+  //
+
+  private void analyze() {
+    if (this.size == 0) {
+      return;
+    }
+
+    Frame unit = this.push(BODY, UNIT_BODY, this.lines[0]);
+    unit.lastIfLine = NONE;
+    unit.lastTryLine = NONE;
+    unit.doLine = NONE;
+
+    int i = 0;
+    while (i < this.size) {
+      Frame frame = this.frames[this.depth - 1];
+      if (frame.type == BODY) {
+        i = this.statementStart(frame, i);
+      } else {
+        i = this.expression(frame, i);
+      }
+    }
+  }
+
+  private Frame push(final int type, final int kind, final int line) {
+    if (this.depth == this.frames.length) {
+      this.frames = Arrays.copyOf(this.frames, this.depth * 2);
+    }
+    Frame frame = this.frames[this.depth];
+    if (frame == null) {
+      frame = new Frame();
+      this.frames[this.depth] = frame;
+    }
+    this.depth++;
+
+    frame.type = type;
+    frame.kind = kind;
+    frame.line = line;
+    return frame;
+  }
+
+  private Frame pushBody(final int kind, final int strayLine) {
+    Frame body = this.push(BODY, kind, strayLine);
+    body.lastIfLine = NONE;
+    body.lastTryLine = NONE;
+    body.doLine = NONE;
+    body.enumConstants = kind == ENUM_BODY;
+    return body;
+  }
+
+  /**
+   * Opens the block of a statement or declaration.
+   * 
+   * @param i index of the opening brace
+   * @param kind kind of body
+   * @param ownerLine begin line of the statement or declaration that owns the block
+   * @return index of the next token
+   */
+  private int openBlock(final int i, final int kind, final int ownerLine) {
+    if (this.match[i] == i + 1) {
+      // an empty block is a statement without children, unless it contains comments
+      if (kind == BLOCK_BODY && this.values[i] != COMMENTED) {
+        this.add(this.lines[i] == this.lines[i + 1] ? this.lines[i] : ownerLine,
+            this.lines[i]);
+      }
+      return i + 2;
+    }
+    this.pushBody(kind, kind == BLOCK_BODY ? this.lines[i] : ownerLine);
+    return i + 1;
+  }
+
+  private Frame pushStatement(final int i, final int kind, final int line, final int bodyKind) {
+    Frame statement = this.push(STATEMENT, kind, line);
+    statement.bodyKind = bodyKind;
+    statement.firstKind = this.kinds[i];
+    statement.start = i;
+    statement.typeBody = 0;
+    statement.sawAssign = false;
+    statement.declarators = false;
+    statement.baseAnchor = line;
+    statement.anchor = line;
+    statement.lambdaBody = false;
+    if (kind == CONTROL) {
+      // there are no leaves between the keyword and the opening parenthesis
+      statement.segStart = i;
+      statement.segEnd = i + 1;
+      statement.segBinary = false;
+      statement.segParams = false;
+      statement.assignLine = NONE;
+      statement.expectOperand = true;
+    } else {
+      this.segment(statement, i);
+    }
+    return statement;
+  }
+
+  private void pop() {
+    this.depth--;
+  }
+
+  private int next(final int i) {
+    return i + 1 < this.size ? this.kinds[i + 1] : 0;
+  }
+
+  private int previous(final int i) {
+    return i > 0 ? this.kinds[i - 1] : 0;
+  }
+
+  private int lineOf(final int i) {
+    return this.lines[Math.min(i, this.size - 1)];
+  }
+
+  /**
+   * Handles the first token of a statement or declaration in a body.
+   */
+  private int statementStart(final Frame body, final int i) {
+    final int kind = this.kinds[i];
+    final int line = this.lines[i];
+    final int next = this.next(i);
+
+    if (body.enumConstants) {
+      // enum constants are ignored, as by StatementExplorer
+      body.enumConstants = false;
+      int j = i;
+      while (j < this.size && this.kinds[j] != SEMI && this.kinds[j] != RBRACE) {
+        j = this.skip(j);
+      }
+      return j < this.size && this.kinds[j] == SEMI ? j + 1 : j;
+    }
+
+    if (body.kind == UNIT_BODY && (kind == AT || kind == PACKAGE)) {
+      int j = i;
+      while (j < this.size && this.kinds[j] == AT && this.next(j) == IDENT) {
+        j = this.skipAnnotation(j);
+      }
+      if (j < this.size && this.kinds[j] == PACKAGE) {
+        // the compilation unit begins with the package declaration, i.e., with its keyword
+        body.line = this.lines[j];
+        return this.packageDeclaration(i, j);
+      }
+    }
+
+    switch (kind) {
+      case RBRACE:
+        if (body.kind != UNIT_BODY) {
+          this.pop();
+        }
+        return i + 1;
+      case SEMI:
+        if (body.kind == BLOCK_BODY || body.kind == SWITCH_BODY) {
+          this.add(line, line);
+        } else {
+          // empty member or type declaration
+          this.add(body.line, line);
+        }
+        return i + 1;
+      case LBRACE:
+        return this.openBlock(i, BLOCK_BODY, body.kind == CLASS_BODY ? line : body.line);
+      case ELSE:
+        if (next == LBRACE) {
+          return this.openBlock(i + 1, BLOCK_BODY, orElse(body.lastIfLine, line));
+        }
+        return i + 1;
+      case FINALLY:
+        if (next == LBRACE) {
+          return this.openBlock(i + 1, BLOCK_BODY, orElse(body.lastTryLine, line));
+        }
+        return i + 1;
+      case TRY:
+        body.lastTryLine = line;
+        if (next == LBRACE) {
+          return this.openBlock(i + 1, BLOCK_BODY, line);
+        }
+        this.pushStatement(i, CONTROL, line, body.kind);
+        return i + 1;
+      case DO:
+        body.doLine = line;
+        if (next == LBRACE) {
+          return this.openBlock(i + 1, BLOCK_BODY, line);
+        }
+        return i + 1;
+      case WHILE:
+        if (body.doLine != NONE) {
+          // condition of a do statement
+          int doLine = body.doLine;
+          body.doLine = NONE;
+          this.pushStatement(i, CONTROL, doLine, body.kind).kind = GENERAL;
+          return i + 1;
+        }
+        this.pushStatement(i, CONTROL, line, body.kind);
+        return i + 1;
+      case IF:
+        body.lastIfLine = line;
+        this.pushStatement(i, CONTROL, line, body.kind);
+        return i + 1;
+      case FOR:
+      case SWITCH:
+      case CATCH:
+        this.pushStatement(i, CONTROL, line, body.kind);
+        return i + 1;
+      case SYNCHRONIZED:
+        if (next == LPAREN) {
+          this.pushStatement(i, CONTROL, line, body.kind);
+          return i + 1;
+        }
+        break;
+      case CASE:
+        if (body.kind == SWITCH_BODY) {
+          body.line = line;
+        }
+        this.pushStatement(i, CASE_LABEL, line, body.kind);
+        return i + 1;
+      case DEFAULT:
+        if (body.kind == SWITCH_BODY && next == COLON) {
+          body.line = line;
+          int after = i + 2 < this.size ? this.kinds[i + 2] : RBRACE;
+          if (after == CASE || after == DEFAULT || after == RBRACE) {
+            // a 'default' without statements
+            this.add(line, line);
+          }
+          return i + 2;
+        }
+        break;
+      case STATIC:
+        if (next == LBRACE) {
+          return this.openBlock(i + 1, BLOCK_BODY, line);
+        }
+        break;
+      case IDENT:
+        if (next == COLON && (body.kind == BLOCK_BODY || body.kind == SWITCH_BODY)) {
+          // a label
+          return i + 2;
+        }
+        break;
+      case BREAK:
+      case CONTINUE:
+        this.add(line, line);
+        int j = i + 1;
+        while (j < this.size && this.kinds[j] != SEMI && this.kinds[j] != RBRACE) {
+          j++;
+        }
+        return j < this.size && this.kinds[j] == SEMI ? j + 1 : j;
+      case RETURN:
+        if (next == SEMI) {
+          this.add(line, line);
+          return i + 2;
+        }
+        break;
+      case THIS:
+      case SUPER:
+        if (next == LPAREN && this.match[i + 1] == i + 2 && i + 3 < this.size
+            && this.kinds[i + 3] == SEMI) {
+          // explicit constructor invocation without arguments
+          this.add(line, line);
+          return i + 4;
+        }
+        break;
+      default:
+        break;
+    }
+
+    this.pushStatement(i, GENERAL, line, body.kind);
+    return i;
+  }
+
+  /**
+   * Handles a package declaration and its annotations. A package declaration is neither a
+   * statement nor a declaration, so, as by {@link StatementExplorer}, each leaf belongs to the
+   * begin line of its parent, however many lines the parent spans.
+   * 
+   * @param i index of the first annotation, or of the <code>package</code> keyword
+   * @param keyword index of the <code>package</code> keyword
+   * @return index of the next token
+   */
+  private int packageDeclaration(final int i, final int keyword) {
+    int j = i;
+    while (j < keyword) {
+      this.annotation(j, NONE);
+      j = this.skipAnnotation(j);
+    }
+    // the declaration begins with its keyword, its annotations are not part of it
+    this.name(keyword + 1, this.lines[keyword], NONE);
+    j = keyword + 1;
+    while (j < this.size && this.kinds[j] != SEMI) {
+      j++;
+    }
+    return j < this.size ? j + 1 : j;
+  }
+
+  /**
+   * Adds the leaves of an annotation.
+   * 
+   * @param at index of the <code>@</code>
+   * @param anchor begin line of the closest statement or declaration, or {@link #NONE} if there is
+   *        none, see {@link #packageDeclaration(int, int)}
+   */
+  private void annotation(final int at, final int anchor) {
+    final int last = this.skipAnnotation(at) - 1;
+    this.name(at + 1, this.parentLine(at, last, anchor), anchor);
+    if (this.kinds[last] != RPAREN || this.match[last] < 0) {
+      return;
+    }
+
+    // member value pairs, or a single member value
+    final int close = last;
+    int start = this.match[last] + 1;
+    while (start < close) {
+      int end = start;
+      while (end < close && this.kinds[end] != COMMA) {
+        end = this.skip(end);
+      }
+      if (end - start > 2 && this.kinds[start] == IDENT && this.kinds[start + 1] == ASSIGN) {
+        this.annotationValue(start + 2, end, this.parentLine(start, end - 1, anchor), anchor);
+      } else {
+        this.annotationValue(start, end, this.parentLine(at, close, anchor), anchor);
+      }
+      start = end + 1;
+    }
+  }
+
+  /**
+   * Adds the leaves of a member value of an annotation.
+   * 
+   * @param from index of the first token of the value
+   * @param to index after the last token of the value
+   * @param parentLine statement of the leaves whose parent is the parent of the value
+   * @param anchor begin line of the closest statement or declaration, or {@link #NONE}
+   */
+  private void annotationValue(final int from, final int to, final int parentLine,
+      final int anchor) {
+    if (from >= to) {
+      return;
+    }
+    final int kind = this.kinds[from];
+    if (kind == AT) {
+      this.annotation(from, anchor);
+    } else if (kind == LBRACE && this.match[from] == to - 1) {
+      // an array initializer, the parent of its elements
+      final int elementsLine = this.parentLine(from, to - 1, anchor);
+      int start = from + 1;
+      while (start < to - 1) {
+        int end = start;
+        while (end < to - 1 && this.kinds[end] != COMMA) {
+          end = this.skip(end);
+        }
+        this.annotationValue(start, end, elementsLine, anchor);
+        start = end + 1;
+      }
+    } else if (to - from == 1) {
+      if (kind == IDENT || kind == LITERAL || kind == PRIMITIVE) {
+        this.add(parentLine, this.lines[from]);
+      }
+    } else {
+      // any other expression, the parent of its leaves is assumed to be the expression itself
+      final int expressionLine = this.parentLine(from, to - 1, anchor);
+      for (int j = from; j < to; j++) {
+        final int leaf = this.kinds[j];
+        if ((leaf == IDENT && this.previous(j) != DOT) || leaf == LITERAL || leaf == PRIMITIVE) {
+          this.add(expressionLine, this.lines[j]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds the leaf of a simple or qualified name: the first identifier, whose parent is either the
+   * qualified name or the node that owns the name.
+   * 
+   * @param i index of the first identifier
+   * @param ownerLine statement of the leaf if the name is simple
+   * @param anchor begin line of the closest statement or declaration, or {@link #NONE}
+   */
+  private void name(final int i, final int ownerLine, final int anchor) {
+    if (i >= this.size || this.kinds[i] != IDENT) {
+      return;
+    }
+    this.add(this.next(i) == DOT ? this.parentLine(i, i + 2, anchor) : ownerLine, this.lines[i]);
+  }
+
+  /**
+   * Returns the statement of a leaf whose parent starts and ends with the given tokens: the parent
+   * itself if it spans several lines or if there is no anchor, the anchor otherwise.
+   */
+  private int parentLine(final int begin, final int end, final int anchor) {
+    return anchor == NONE || this.lineOf(end) != this.lines[begin] ? this.lines[begin] : anchor;
+  }
+
+  /**
+   * Returns the index of the token after an annotation, i.e., after its name and arguments.
+   * 
+   * @param at index of the <code>@</code>
+   * @return index of the next token
+   */
+  private int skipAnnotation(final int at) {
+    int j = at + 1;
+    while (this.next(j) == DOT && j + 2 < this.size && this.kinds[j + 2] == IDENT) {
+      j += 2;
+    }
+    if (this.next(j) == LPAREN && this.match[j + 1] >= 0) {
+      return this.match[j + 1] + 1;
+    }
+    return j + 1;
+  }
+
+  /**
+   * Handles a token of a statement or of a group of tokens between brackets.
+   */
+  private int expression(final Frame frame, final int i) {
+    final int kind = this.kinds[i];
+
+    if (i == frame.segEnd && kind == IDENT && frame.type == STATEMENT) {
+      // a variable declarator
+      frame.declarators = true;
+      frame.baseAnchor = this.lines[i];
+      frame.anchor = this.lines[i];
+      this.segment(frame, i);
+    }
+
+    if (kind == IDENT && frame.type == GROUP && frame.kind == CONTROL_PARAMS
+        && this.next(i) == ASSIGN && isTypeEnd(this.previous(i))) {
+      // a variable declarator of a resource or of the initialization of a for loop
+      frame.anchor = this.lines[i];
+      frame.declarators = true;
+    }
+
+    if (kind == IDENT && frame.type == GROUP && frame.kind == CONTROL_PARAMS
+        && this.next(i) == COLON && isTypeEnd(this.previous(i)) && !frame.declarators) {
+      // the variable declarator of a for-each loop, the parent of its name
+      this.add(this.lines[i], this.lines[i]);
+      return i + 1;
+    }
+
+    if (kind == AT && frame.type == STATEMENT && !frame.sawAssign && this.next(i) == IDENT) {
+      // an annotation of a declaration or of a local variable
+      this.annotation(i, frame.anchor);
+      return this.skipAnnotation(i);
+    }
+
+    switch (kind) {
+      case SEMI:
+        if (frame.type == STATEMENT) {
+          this.pop();
+          return i + 1;
+        }
+        frame.anchor = frame.baseAnchor;
+        frame.lambdaBody = false;
+        frame.declarators = false;
+        this.segment(frame, i + 1);
+        return i + 1;
+      case COMMA:
+        if (frame.type == STATEMENT && frame.declarators) {
+          frame.baseAnchor = this.lineOf(i + 1);
+        }
+        frame.anchor = frame.type == GROUP && frame.declarators ? this.lineOf(i + 1)
+            : frame.baseAnchor;
+        frame.lambdaBody = false;
+        this.segment(frame, i + 1);
+        return i + 1;
+      case ASSIGN:
+      case OP_ASSIGN:
+        frame.sawAssign = true;
+        final int assignLine = frame.segLine;
+        this.segment(frame, i + 1);
+        frame.assignLine = assignLine;
+        return i + 1;
+      case ARROW:
+        if (this.next(i) != LBRACE) {
+          // the body of a lambda expression is a statement
+          frame.anchor = this.lineOf(i + 1);
+          frame.lambdaBody = true;
+        }
+        this.segment(frame, i + 1);
+        return i + 1;
+      case COLON:
+        if (frame.type == STATEMENT && frame.kind == CASE_LABEL) {
+          this.pop();
+          return i + 1;
+        }
+        if (i == frame.segEnd) {
+          this.segment(frame, i + 1);
+        } else {
+          frame.expectOperand = true;
+        }
+        return i + 1;
+      case LPAREN:
+        if (frame.expectOperand) {
+          frame.operandLine = this.lines[i];
+          frame.expectOperand = false;
+        }
+        this.pushGroup(frame, i, this.parenthesesKind(frame, i));
+        return i + 1;
+      case LBRACKET:
+        this.pushGroup(frame, i, INDEX);
+        return i + 1;
+      case LBRACE:
+        return this.brace(frame, i);
+      case RPAREN:
+      case RBRACKET:
+      case RBRACE:
+        if (frame.type == GROUP && i == frame.close) {
+          return this.closeGroup(frame, i);
+        }
+        if (frame.type == STATEMENT && kind == RBRACE) {
+          // a statement without semicolon, the brace is handled by the enclosing body
+          this.pop();
+          return i;
+        }
+        return i + 1;
+      case CLASS:
+      case INTERFACE:
+      case ENUM:
+        if (frame.type == STATEMENT && this.previous(i) != DOT) {
+          frame.typeBody = kind == ENUM ? ENUM_BODY : CLASS_BODY;
+        }
+        return i + 1;
+      case QUESTION:
+        if (this.isWildcard(i)) {
+          this.leaf(frame, i);
+        } else {
+          frame.expectOperand = true;
+        }
+        return i + 1;
+      case LT:
+        final int close = this.typeArguments(i, this.size);
+        if (close < 0) {
+          frame.expectOperand = true;
+          return i + 1;
+        }
+        // the parent of the types of type arguments is a (single-line) type
+        for (int j = i + 1; j < close; j++) {
+          final int argument = this.kinds[j];
+          if (argument == IDENT && this.previous(j) != DOT && this.next(j) == DOT
+              && this.next(j + 1) == IDENT) {
+            // the scope of a qualified type
+            this.add(this.span(frame, this.lines[j], this.scopedEnd(j + 2)), this.lines[j]);
+          } else if ((argument == IDENT && this.previous(j) != DOT) || argument == PRIMITIVE
+              || (argument == QUESTION && this.next(j) != KEYWORD && this.next(j) != SUPER)) {
+            // but not a wildcard with a bound, which is not a leaf
+            this.add(frame.anchor, this.lines[j]);
+          }
+        }
+        if (this.previous(i) == DOT && this.next(close) == IDENT) {
+          // the name of a method call with type arguments, e.g., 'Collections.<T>emptyList()',
+          // is not a node
+          return close + 2;
+        }
+        return close + 1;
+      case OP:
+      case GT:
+        frame.expectOperand = true;
+        return i + 1;
+      default:
+        break;
+    }
+
+    if (frame.expectOperand && (kind == IDENT || kind == LITERAL || kind == PRIMITIVE
+        || kind == THIS || kind == SUPER || kind == NEW)) {
+      frame.operandLine = this.lines[i];
+      frame.expectOperand = false;
+    }
+    if (this.isLeaf(frame, i)) {
+      this.leaf(frame, i);
+    }
+    return i + 1;
+  }
+
+  private int parenthesesKind(final Frame frame, final int i) {
+    switch (this.previous(i)) {
+      case IF:
+      case WHILE:
+      case FOR:
+      case SWITCH:
+      case SYNCHRONIZED:
+      case CATCH:
+      case TRY:
+        return CONTROL_PARAMS;
+      case IDENT:
+        if (this.annotationStart(i - 1) >= 0) {
+          return ANNOTATION;
+        }
+        if (this.isDeclaration(frame)) {
+          return DECL_PARAMS;
+        }
+        return this.isNewCall(i) ? NEW_CALL : CALL;
+      case GT:
+        return this.isNewCall(i) ? NEW_CALL : this.enclosedKind(i);
+      case THIS:
+      case SUPER:
+        return CALL;
+      default:
+        return this.enclosedKind(i);
+    }
+  }
+
+  /**
+   * Whether the parentheses at the given index are neither the header of a control statement nor
+   * arguments or parameters, see {@link #parenthesesKind(Frame, int)}.
+   */
+  private boolean isEnclosed(final int i) {
+    switch (this.previous(i)) {
+      case IF:
+      case WHILE:
+      case FOR:
+      case SWITCH:
+      case SYNCHRONIZED:
+      case CATCH:
+      case TRY:
+      case IDENT:
+      case GT:
+      case THIS:
+      case SUPER:
+      case RPAREN:
+      case RBRACKET:
+        return false;
+      default:
+        return true;
+    }
+  }
+
+  private int enclosedKind(final int i) {
+    int close = this.match[i];
+    return close + 1 < this.size && this.kinds[close + 1] == ARROW ? LAMBDA_PARAMS : ENCLOSED;
+  }
+
+  /**
+   * Whether the parentheses that follow a name at this point are the parameters of a method or
+   * constructor declaration.
+   */
+  private boolean isDeclaration(final Frame frame) {
+    return frame.type == STATEMENT && frame.kind == GENERAL && !frame.sawAssign
+        && frame.typeBody == 0 && (frame.bodyKind == CLASS_BODY || frame.bodyKind == ENUM_BODY);
+  }
+
+  /**
+   * Returns the index of the '@' of an annotation whose (possibly qualified) name ends at the
+   * given index, or -1 if it is not the name of an annotation.
+   */
+  private int annotationStart(final int i) {
+    if (i < 1 || this.kinds[i] != IDENT) {
+      return -1;
+    }
+    int j = i;
+    while (j >= 2 && this.kinds[j - 1] == DOT && this.kinds[j - 2] == IDENT) {
+      j -= 2;
+    }
+    return j >= 1 && this.kinds[j - 1] == AT ? j - 1 : -1;
+  }
+
+  /**
+   * Whether the parentheses at the given index follow 'new' and the name of a type.
+   */
+  private boolean isNewCall(final int i) {
+    for (int j = i - 1; j >= 0 && j >= i - MAX_NEW_LOOKBEHIND; j--) {
+      switch (this.kinds[j]) {
+        case NEW:
+          return true;
+        case IDENT:
+        case DOT:
+        case LT:
+        case GT:
+        case COMMA:
+        case QUESTION:
+        case KEYWORD:
+        case SUPER:
+        case PRIMITIVE:
+        case LBRACKET:
+        case RBRACKET:
+          continue;
+        default:
+          return false;
+      }
+    }
+    return false;
+  }
+
+  private void pushGroup(final Frame parent, final int i, final int kind) {
+    final int anchor = parent.anchor;
+    final int ownerLine;
+    switch (kind) {
+      case CALL:
+      case NEW_CALL:
+      case INDEX:
+        ownerLine = parent.operandLine;
+        break;
+      case ANNOTATION:
+        ownerLine = this.lines[this.annotationStart(i - 1)];
+        break;
+      default:
+        ownerLine = this.lines[i];
+        break;
+    }
+
+    Frame group = this.push(GROUP, kind, ownerLine);
+    group.close = this.match[i];
+    group.endLine = this.lineOf(group.close);
+    if (kind == NEW_CALL && group.close + 1 < this.size && this.kinds[group.close + 1] == LBRACE) {
+      // the object creation ends with the body of its anonymous class
+      group.endLine = this.lineOf(this.match[group.close + 1]);
+    }
+    group.baseAnchor = anchor;
+    group.anchor = anchor;
+    group.lambdaBody = false;
+    group.sawAssign = false;
+    group.declarators = false;
+    this.segment(group, i + 1);
+  }
+
+  private int closeGroup(final Frame group, final int i) {
+    final int kind = group.kind;
+    this.pop();
+    final Frame parent = this.frames[this.depth - 1];
+
+    if (kind == CONTROL_PARAMS && parent.type == STATEMENT && parent.kind == CONTROL) {
+      // end of the header of a control statement, its body follows
+      this.pop();
+      if (this.next(i) == LBRACE) {
+        if (parent.firstKind == CATCH && this.match[i + 1] >= 0) {
+          // javaparser drops the comments of a catch block, and of all blocks nested in it
+          for (int j = i + 1; j < this.match[i + 1]; j++) {
+            if (this.kinds[j] == LBRACE) {
+              this.values[j] = 0;
+            }
+          }
+        }
+        return this.openBlock(i + 1, parent.firstKind == SWITCH ? SWITCH_BODY : BLOCK_BODY,
+            parent.line);
+      }
+      return i + 1;
+    }
+
+    if (kind == ENCLOSED && this.next(i) == LPAREN && this.match[i + 1] >= 0
+        && this.next(this.match[i + 1]) == ARROW) {
+      this.castLambda(parent, this.match[i], i + 1);
+    }
+    if (kind == ENCLOSED) {
+      switch (this.next(i)) {
+        case IDENT:
+        case LITERAL:
+        case PRIMITIVE:
+        case THIS:
+        case SUPER:
+        case NEW:
+        case LPAREN:
+        case PREFIX:
+          // a cast, the operand starts after the parentheses
+          parent.expectOperand = true;
+          break;
+        default:
+          break;
+      }
+    }
+    return i + 1;
+  }
+
+  private int brace(final Frame frame, final int i) {
+    final int previous = this.previous(i);
+
+    if (previous == ARROW) {
+      // body of a lambda expression
+      int params = i - 2;
+      if (params >= 0 && this.kinds[params] == RPAREN && this.match[params] >= 0) {
+        params = this.match[params];
+      }
+      return this.openBlock(i, BLOCK_BODY, this.lineOf(Math.max(params, 0)));
+    }
+    if (previous == RPAREN && this.match[i - 1] >= 0 && this.isNewCall(this.match[i - 1])) {
+      // body of an anonymous class
+      return this.openBlock(i, CLASS_BODY, frame.operandLine);
+    }
+    if (frame.type == GROUP || this.isInitializer(frame, i)) {
+      if (this.match[i] == i + 1 && this.values[i] != COMMENTED) {
+        // an empty array initializer is a leaf, whose parent may be an array creation
+        final int creation = this.arrayCreation(i);
+        if (creation >= 0) {
+          this.add(this.span(frame, this.lines[creation], i + 1), this.lines[i]);
+        } else {
+          this.leaf(frame, i);
+        }
+        return i + 2;
+      }
+      this.pushGroup(frame, i, ARRAY_INIT);
+      return i + 1;
+    }
+
+    // the body of a declaration, the statement ends here
+    this.pop();
+    if (frame.typeBody != 0 && this.match[i] == i + 1 && this.values[i] != COMMENTED
+        && this.isBareType(frame.start, i)) {
+      // a type declaration without members, modifiers aside, is a leaf
+      final Frame body = this.frames[this.depth - 1];
+      this.add(body.kind == BLOCK_BODY || body.kind == SWITCH_BODY ? frame.line : body.line,
+          frame.line);
+      return i + 2;
+    }
+    if (frame.typeBody != 0) {
+      return this.openBlock(i, frame.typeBody, frame.line);
+    }
+    return this.openBlock(i, BLOCK_BODY, frame.line);
+  }
+
+  /**
+   * Returns the index of the <code>new</code> of the array creation that owns an array
+   * initializer, e.g., 'new String[] {}', or -1 if there is none.
+   */
+  private int arrayCreation(final int i) {
+    int j = i - 1;
+    if (j < 0 || this.kinds[j] != RBRACKET) {
+      return -1;
+    }
+    while (j >= 0 && this.kinds[j] == RBRACKET && this.match[j] >= 0) {
+      j = this.match[j] - 1;
+    }
+    while (j >= 0) {
+      switch (this.kinds[j]) {
+        case NEW:
+          return j;
+        case IDENT:
+        case DOT:
+        case PRIMITIVE:
+        case LT:
+        case GT:
+        case COMMA:
+        case QUESTION:
+          j--;
+          break;
+        default:
+          return -1;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Whether a type declaration has nothing but modifiers and a name before its body.
+   */
+  private boolean isBareType(final int from, final int brace) {
+    int j = from;
+    while (j < brace && (this.kinds[j] == KEYWORD || this.kinds[j] == STATIC
+        || (this.kinds[j] == AT && this.next(j) == INTERFACE))) {
+      // modifiers, and the '@' of an annotation type declaration
+      j++;
+    }
+    return j + 2 == brace
+        && (this.kinds[j] == CLASS || this.kinds[j] == INTERFACE || this.kinds[j] == ENUM)
+        && this.kinds[j + 1] == IDENT;
+  }
+
+  /**
+   * Whether a brace at the top level of a statement is an array initializer, a lambda body or
+   * an anonymous class body, i.e., whether it is part of an expression.
+   */
+  private boolean isInitializer(final Frame frame, final int i) {
+    switch (this.previous(i)) {
+      case ASSIGN:
+      case ARROW:
+      case DEFAULT:
+        // including the default value of an annotation member
+        return true;
+      case RBRACKET:
+        return !this.isMethodDimension(i - 1);
+      case LPAREN:
+      case LBRACE:
+      case COMMA:
+        return frame.type == GROUP;
+      case RPAREN:
+        return this.match[i - 1] >= 0 && this.isNewCall(this.match[i - 1]);
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Whether brackets follow the parameters of a method, e.g., 'byte toByteArray()[] {'.
+   */
+  private boolean isMethodDimension(final int i) {
+    int j = i;
+    while (j >= 0 && this.kinds[j] == RBRACKET && this.match[j] >= 0) {
+      j = this.match[j] - 1;
+    }
+    return j >= 0 && this.kinds[j] == RPAREN;
+  }
+
+  //
+  // Segments and leaves
+  //
+
+  /**
+   * Starts a new segment of a statement or group, i.e., the tokens up to the next separator at
+   * the same level, and computes its extent.
+   */
+  private void segment(final Frame frame, final int from) {
+    int j = from;
+    int ternary = 0;
+    boolean binary = false;
+    scan: while (j < this.size) {
+      switch (this.kinds[j]) {
+        case COMMA:
+        case SEMI:
+        case ASSIGN:
+        case OP_ASSIGN:
+        case ARROW:
+        case RPAREN:
+        case RBRACKET:
+        case RBRACE:
+          break scan;
+        case COLON:
+          if (ternary == 0) {
+            break scan;
+          }
+          ternary--;
+          break;
+        case QUESTION:
+          if (!this.isWildcard(j)) {
+            ternary++;
+            binary = true;
+          }
+          break;
+        case OP:
+          binary |= j > from && isOperandEnd(this.kinds[j - 1]);
+          break;
+        case LT:
+          final int close = this.typeArguments(j, this.size);
+          if (close >= 0) {
+            j = close + 1;
+            continue scan;
+          }
+          binary = true;
+          break;
+        case GT:
+          binary = true;
+          break;
+        case LBRACE:
+          if (frame.type == STATEMENT && !this.isInitializer(frame, j)) {
+            break scan;
+          }
+          break;
+        case IDENT:
+          if (j > from && this.isDeclarator(frame, j)) {
+            break scan;
+          }
+          break;
+        default:
+          break;
+      }
+      j = this.skip(j);
+    }
+
+    frame.segStart = from;
+    frame.segEnd = j;
+    frame.segLine = this.lineOf(from);
+    frame.segBinary = binary;
+    frame.assignLine = NONE;
+    if (binary) {
+      this.operands(frame);
+    }
+    frame.segParams = (frame.type == GROUP && frame.kind == LAMBDA_PARAMS)
+        || (j < this.size && this.kinds[j] == ARROW);
+    frame.operandLine = frame.segLine;
+    frame.expectOperand = true;
+
+    if (frame.segParams && j > from && this.kinds[j - 1] == IDENT
+        && (j - 1 == from || !isTypeEnd(this.kinds[j - 2]))) {
+      // the type of an untyped lambda parameter has no position
+      this.add(frame.anchor, UNKNOWN_LINE);
+    }
+  }
+
+  /**
+   * Whether a name at the top level of a statement starts a variable declarator, e.g., 'a' in
+   * 'int a = 1;'.
+   */
+  private boolean isDeclarator(final Frame frame, final int i) {
+    if (frame.type != STATEMENT || frame.kind != GENERAL || frame.typeBody != 0
+        || frame.sawAssign) {
+      return false;
+    }
+    switch (frame.firstKind) {
+      case RETURN:
+      case THROW:
+      case ASSERT:
+      case CASE:
+      case WHILE:
+        return false;
+      default:
+        break;
+    }
+    switch (this.previous(i)) {
+      case IDENT:
+      case PRIMITIVE:
+      case GT:
+      case RBRACKET:
+        break;
+      default:
+        return false;
+    }
+    // dimensions of the variable, e.g., 'int a[] = {1};', but not of the type, e.g. 'A[] a;'
+    int j = i;
+    while (this.next(j) == LBRACKET && this.match[j + 1] < this.size) {
+      j = this.match[j + 1];
+    }
+    switch (this.next(j)) {
+      case ASSIGN:
+      case COMMA:
+      case SEMI:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private boolean isWildcard(final int i) {
+    final int previous = this.previous(i);
+    if (previous == LT) {
+      return true;
+    }
+    if (previous != COMMA) {
+      return false;
+    }
+    final int next = this.next(i);
+    return next == GT || next == COMMA || next == KEYWORD || next == SUPER;
+  }
+
+  /**
+   * Whether a token is a leaf of the AST built by JavaParser, e.g., a name or a literal.
+   */
+  private boolean isLeaf(final Frame frame, final int i) {
+    final int previous = this.previous(i);
+    switch (this.kinds[i]) {
+      case LITERAL:
+      case PRIMITIVE:
+        return true;
+      case THIS:
+      case SUPER:
+        // but not an explicit constructor invocation
+        return previous != DOT && this.next(i) != LPAREN;
+      case IDENT:
+        break;
+      default:
+        return false;
+    }
+
+    if (previous == DOT || previous == COLONCOLON) {
+      // names of fields and methods, and qualified names, are not nodes
+      return false;
+    }
+    if ((previous == CLASS || previous == INTERFACE || previous == ENUM)
+        && frame.type == STATEMENT) {
+      // name of a type declaration
+      return false;
+    }
+    if (previous == AT) {
+      return true;
+    }
+
+    final int next = this.next(i);
+    if (next == LT && this.typeArguments(i + 1, this.size) > i + 2) {
+      // a type with type arguments
+      return false;
+    }
+    if (next == LPAREN) {
+      if (previous == NEW) {
+        return true;
+      }
+      if (this.isDeclaration(frame)) {
+        return false;
+      }
+      // a method call without scope nor arguments is a leaf, otherwise its name is not a node
+      return this.match[i + 1] == i + 2;
+    }
+    if (next == ASSIGN && frame.type == GROUP && frame.kind == ANNOTATION) {
+      // name of an annotation member
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Adds a leaf to the statement of its parent: the parent itself if it spans several lines, the
+   * closest anchor otherwise. The parent is guessed from the tokens around the leaf.
+   */
+  private void leaf(final Frame frame, final int i) {
+    int statement;
+    if (frame.segParams) {
+      statement = frame.anchor;
+    } else if (frame.type == GROUP && frame.kind == DECL_PARAMS && this.isParameterLeaf(frame, i)) {
+      // the name, or the primitive type, of a parameter
+      statement = this.span(frame, frame.segLine, frame.segEnd - 1);
+    } else if (frame.type == GROUP && frame.kind == ENCLOSED && this.kinds[i] == PRIMITIVE
+        && i + 1 == frame.close && this.isCast(frame.close)) {
+      // the primitive type of a cast
+      final int end = this.castEnd(frame.close);
+      statement = end >= 0 ? this.span(frame, this.lines[i - 1], end) : frame.anchor;
+    } else {
+      statement = this.parentStatement(frame, i);
+    }
+    if (statement == NONE && frame.assignLine != NONE) {
+      // the value of an assignment
+      statement = this.span(frame, frame.assignLine, frame.segEnd - 1);
+    } else if (statement == NONE) {
+      // the parent is the node that owns the brackets, if any
+      if (frame.type == GROUP && !frame.lambdaBody && frame.line != frame.endLine
+          && frame.kind != CONTROL_PARAMS && frame.kind != DECL_PARAMS) {
+        statement = frame.line;
+      } else {
+        statement = frame.anchor;
+      }
+    }
+    this.add(statement, this.lines[i]);
+  }
+
+  /**
+   * Whether the parent of a leaf of the parameters of a declaration is the parameter itself, i.e.,
+   * whether the leaf is the name of the parameter or its type if primitive.
+   */
+  private boolean isParameterLeaf(final Frame frame, final int i) {
+    if (this.kinds[i] == PRIMITIVE) {
+      return this.next(i) != LBRACKET;
+    }
+    int j = i + 1;
+    while (j < frame.segEnd && this.kinds[j] == LBRACKET && this.match[j] == j + 1) {
+      j += 2;
+    }
+    return j == frame.segEnd;
+  }
+
+  /**
+   * Returns the statement of a leaf whose parent is part of the current segment, e.g., a method
+   * call, an object creation, a unary or a binary expression, or {@link #NONE} if the parent is
+   * the node that owns the segment.
+   */
+  private int parentStatement(final Frame frame, final int i) {
+    final int previous = this.previous(i);
+    // a method call without arguments ends with its parentheses
+    int end = i;
+    if (previous != NEW && this.next(i) == LPAREN && this.match[i + 1] == i + 2) {
+      end = i + 2;
+    }
+    final int next = this.next(end);
+
+    if (previous == NEW) {
+      if (next == DOT && this.next(end + 1) == IDENT) {
+        // the scope of the qualified type of an object creation
+        return this.span(frame, this.lines[i], end + 2);
+      }
+      int type = end;
+      if (next == LT && this.typeArguments(end + 1, this.size) >= 0) {
+        type = this.typeArguments(end + 1, this.size);
+      }
+      if (this.next(type) == LPAREN && this.match[type + 1] >= 0) {
+        // the object creation itself, and the body of its anonymous class
+        int close = this.match[type + 1];
+        if (this.next(close) == LBRACE && this.match[close + 1] >= 0) {
+          close = this.match[close + 1];
+        }
+        return this.span(frame, this.lines[i - 1], close);
+      }
+      if (this.next(type) == LBRACKET) {
+        // the array creation itself, with its dimensions and initializer
+        int close = type;
+        while (this.next(close) == LBRACKET && this.match[close + 1] >= 0) {
+          close = this.match[close + 1];
+        }
+        if (this.next(close) == LBRACE && this.match[close + 1] >= 0) {
+          close = this.match[close + 1];
+        }
+        return this.span(frame, this.lines[i - 1], close);
+      }
+      // part of the type of an object creation
+      return frame.anchor;
+    }
+    if (next == DOT) {
+      int name = end + 2;
+      if (this.next(end + 1) == LT && this.typeArguments(end + 2, this.size) >= 0) {
+        // type arguments of a method call, e.g., 'Collections.<T>emptyList()'
+        name = this.typeArguments(end + 2, this.size) + 1;
+      }
+      if (name + 1 < this.size && this.kinds[name] == IDENT && this.kinds[name + 1] == LPAREN
+          && this.match[name + 1] >= 0) {
+        // scope of a method call
+        return this.span(frame, this.lines[i], this.match[name + 1]);
+      }
+      // scope of a field access, of a qualified name or of a type
+      return name < this.size ? this.span(frame, this.lines[i], this.scopedEnd(name))
+          : frame.anchor;
+    }
+    if (next == LBRACKET && this.match[end + 1] > end + 2) {
+      // the array of an array access
+      return this.span(frame, this.lines[i], this.match[end + 1]);
+    }
+    if (next == LBRACKET || next == COLONCOLON) {
+      return frame.anchor;
+    }
+    if ((next == ASSIGN || next == OP_ASSIGN) && !this.isDeclarator(frame, i)) {
+      // the target of an assignment
+      int value = end + 2;
+      while (value < this.size && !isSeparator(this.kinds[value])) {
+        value = this.skip(value);
+      }
+      return this.span(frame, this.lines[i], value - 1);
+    }
+    if (previous == OP && this.values[i - 1] == INSTANCEOF) {
+      // the type of an instanceof expression, whose parent is a (single-line) type
+      return frame.anchor;
+    }
+    if (next == PREFIX) {
+      // a postfix unary expression, e.g., 'i++'
+      return frame.anchor;
+    }
+    if (previous == RPAREN && this.match[i - 1] >= 0 && this.isEnclosed(this.match[i - 1])) {
+      // a cast
+      return this.span(frame, this.lines[this.match[i - 1]], end);
+    }
+    if (previous == PREFIX || previous == RPAREN
+        || (previous == OP && (i < 2 || !isOperandEnd(this.kinds[i - 2])))) {
+      // a unary expression, or a leaf after the header of a control statement
+      return frame.anchor;
+    }
+    if (!frame.segBinary) {
+      return NONE;
+    }
+    final int parentEnd = this.parentEnds[i];
+    if (parentEnd == OPERAND) {
+      return NONE;
+    }
+    if (parentEnd == NONE) {
+      // e.g., type arguments, whose parent is a single-line type
+      return frame.anchor;
+    }
+    return this.span(frame, this.parentLines[i], parentEnd);
+  }
+
+  //
+  // Binary expressions
+  //
+
+  /**
+   * Finds the parent of each operand of the binary and conditional expressions of the current
+   * segment, with the precedence of their operators.
+   */
+  private void operands(final Frame frame) {
+    final int end = frame.segEnd;
+    for (int j = frame.segStart; j < end && j < this.size; j = this.skip(j)) {
+      this.parentEnds[j] = NONE;
+    }
+    int p = frame.segStart;
+    while (p < end && p < this.size) {
+      switch (this.kinds[p]) {
+        case RETURN:
+        case THROW:
+        case ASSERT:
+        case CASE:
+        case KEYWORD:
+          p++;
+          continue;
+        default:
+          break;
+      }
+      break;
+    }
+    if (p < end && p < this.size) {
+      this.conditional(p, Math.min(end, this.size));
+    }
+  }
+
+  private int conditional(final int p, final int end) {
+    final int condition = this.binary(p, 1, end);
+    if (condition + 1 >= end || this.kinds[condition + 1] != QUESTION) {
+      return condition;
+    }
+    final int conditionOperand = this.lastOperand;
+    int last = condition + 1;
+    int thenOperand = -1;
+    int elseOperand = -1;
+    if (last + 1 < end) {
+      last = this.conditional(last + 1, end);
+      thenOperand = this.lastOperand;
+      if (last + 2 < end && this.kinds[last + 1] == COLON) {
+        last = this.conditional(last + 2, end);
+        elseOperand = this.lastOperand;
+      }
+    }
+    this.parent(conditionOperand, p, last);
+    this.parent(thenOperand, p, last);
+    this.parent(elseOperand, p, last);
+    this.lastOperand = -1;
+    return last;
+  }
+
+  private int binary(final int p, final int minPrecedence, final int end) {
+    int last = this.operand(p, end);
+    int left = this.lastOperand;
+    while (last + 2 < end) {
+      final int precedence = this.binaryPrecedence(last + 1);
+      if (precedence < minPrecedence) {
+        break;
+      }
+      last = this.binary(last + 2, precedence + 1, end);
+      this.parent(left, p, last);
+      this.parent(this.lastOperand, p, last);
+      left = -1;
+    }
+    this.lastOperand = left;
+    return last;
+  }
+
+  private int binaryPrecedence(final int i) {
+    switch (this.kinds[i]) {
+      case OP:
+        return this.values[i] == INSTANCEOF ? RELATIONAL : this.values[i];
+      case LT:
+        return RELATIONAL;
+      case GT:
+        return this.values[i] == 1 ? RELATIONAL : SHIFT;
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * Adds the parameters of a lambda expression cast to a type, which javaparser also parses as an
+   * enclosed expression, a child of the cast, e.g., '()' in '(Runnable) () -> run()'. The cast
+   * then ends with these parameters.
+   * 
+   * @param frame frame of the cast
+   * @param open index of the '(' of the cast
+   * @param params index of the '(' of the parameters
+   */
+  private void castLambda(final Frame frame, final int open, final int params) {
+    final int close = this.match[params];
+    if (close == params + 1) {
+      // an empty enclosed expression is a leaf
+      this.add(this.span(frame, this.lines[open], close), this.lines[params]);
+    } else if (close == params + 2 && this.kinds[params + 1] == IDENT) {
+      // a single parameter, whose parent is the (single-line) enclosed expression
+      this.add(this.span(frame, this.lines[params], close), this.lines[params + 1]);
+    }
+  }
+
+  /**
+   * Skips an operand, i.e., a primary expression possibly preceded by unary operators and casts,
+   * and returns the index of its last token.
+   */
+  private int operand(final int p, final int end) {
+    int j = p;
+    boolean primary = true;
+    while (j < end) {
+      final int kind = this.kinds[j];
+      if (kind == PREFIX || kind == OP) {
+        primary = false;
+        j++;
+      } else if (kind == LPAREN && this.match[j] + 1 < end && this.isCast(this.match[j])) {
+        primary = false;
+        j = this.match[j] + 1;
+      } else {
+        break;
+      }
+    }
+
+    final int start = j;
+    while (j < end) {
+      final int kind = this.kinds[j];
+      if (kind == LPAREN || kind == LBRACKET || kind == LBRACE) {
+        j = this.match[j] + 1;
+      } else if (kind == LT) {
+        final int close = this.typeArguments(j, end);
+        if (close < 0) {
+          break;
+        }
+        j = close + 1;
+      } else if (j > start && (kind == OP || kind == GT || kind == QUESTION
+          || kind == COLON)) {
+        break;
+      } else {
+        j++;
+      }
+    }
+
+    if (primary && start < end) {
+      this.parentEnds[start] = OPERAND;
+      this.lastOperand = start;
+    } else {
+      this.lastOperand = -1;
+    }
+    return Math.max(Math.min(j, end) - 1, p);
+  }
+
+  private boolean isCast(final int close) {
+    switch (this.next(close)) {
+      case IDENT:
+      case LITERAL:
+      case PRIMITIVE:
+      case THIS:
+      case SUPER:
+      case NEW:
+      case LPAREN:
+      case PREFIX:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Returns the index of the last token of the operand of a cast, or -1 if it is not known, e.g.,
+   * for an object creation.
+   * 
+   * @param close index of the ')' of the cast
+   */
+  private int castEnd(final int close) {
+    int j = close + 1;
+    while (j < this.size) {
+      final int kind = this.kinds[j];
+      if (kind == PREFIX || kind == OP) {
+        j++;
+      } else if (kind == LPAREN && this.match[j] >= 0 && this.isCast(this.match[j])) {
+        j = this.match[j] + 1;
+      } else {
+        break;
+      }
+    }
+    if (j >= this.size) {
+      return -1;
+    }
+    switch (this.kinds[j]) {
+      case LPAREN:
+        j = this.match[j];
+        break;
+      case IDENT:
+      case LITERAL:
+      case PRIMITIVE:
+      case THIS:
+      case SUPER:
+        break;
+      default:
+        return -1;
+    }
+    // field accesses, method calls, array accesses and postfix unary operators
+    while (j >= 0) {
+      final int next = this.next(j);
+      if (next == DOT && this.next(j + 1) == IDENT) {
+        j += 2;
+      } else if ((next == LPAREN || next == LBRACKET) && this.match[j + 1] >= 0) {
+        j = this.match[j + 1];
+      } else if (next == PREFIX) {
+        j++;
+      } else {
+        break;
+      }
+    }
+    return j;
+  }
+
+  /**
+   * Returns the index of the '>' that closes the type arguments opened at the given index, or -1
+   * if it is a less-than operator.
+   */
+  private int typeArguments(final int i, final int end) {
+    int depth = 0;
+    for (int j = i; j < end; j++) {
+      switch (this.kinds[j]) {
+        case LT:
+          depth++;
+          break;
+        case GT:
+          depth -= this.values[j];
+          if (depth <= 0) {
+            return j;
+          }
+          break;
+        case IDENT:
+        case DOT:
+        case COMMA:
+        case QUESTION:
+        case SUPER:
+        case KEYWORD:
+        case PRIMITIVE:
+        case LBRACKET:
+        case RBRACKET:
+        case AT:
+          break;
+        case OP:
+          // bounds of a type parameter, e.g., 'T extends A & B'
+          if (this.values[j] != BITWISE_AND) {
+            return -1;
+          }
+          break;
+        default:
+          return -1;
+      }
+    }
+    return -1;
+  }
+
+  private void parent(final int operand, final int begin, final int end) {
+    if (operand >= 0) {
+      this.parentLines[operand] = this.lines[begin];
+      this.parentEnds[operand] = end;
+    }
+  }
+
+  /**
+   * Returns the index of the last token of the node whose last name is at the given index, e.g.,
+   * a field access, or a type with its type arguments.
+   */
+  private int scopedEnd(final int name) {
+    if (this.next(name) == LT) {
+      final int close = this.typeArguments(name + 1, this.size);
+      if (close >= 0) {
+        return close;
+      }
+    }
+    return name;
+  }
+
+  /**
+   * Returns the statement of a leaf whose parent starts at the given line and ends with the given
+   * token: the parent itself if it spans several lines, the closest anchor otherwise.
+   */
+  private int span(final Frame frame, final int beginLine, final int end) {
+    return this.lineOf(end) != beginLine ? beginLine : frame.anchor;
+  }
+
+  private static boolean isTypeEnd(final int kind) {
+    return kind == IDENT || kind == PRIMITIVE || kind == GT || kind == RBRACKET;
+  }
+
+  private static boolean isSeparator(final int kind) {
+    switch (kind) {
+      case COMMA:
+      case SEMI:
+      case RPAREN:
+      case RBRACKET:
+      case RBRACE:
+      case COLON:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private static boolean isOperandEnd(final int kind) {
+    switch (kind) {
+      case IDENT:
+      case LITERAL:
+      case PRIMITIVE:
+      case THIS:
+      case SUPER:
+      case RPAREN:
+      case RBRACKET:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private void add(final int statement, final int line) {
+    // a statement is always composed by its own line
+    this.javaStatements.add(statement, statement);
+    this.javaStatements.add(statement, line);
+  }
+
+  private static int orElse(final int line, final int otherLine) {
+    return line == NONE ? otherLine : line;
+  }
+
+  private int skip(final int i) {
+    final int kind = this.kinds[i];
+    if (kind == LPAREN || kind == LBRACKET || kind == LBRACE) {
+      return this.match[i] + 1;
+    }
+    return i + 1;
+  }
+}
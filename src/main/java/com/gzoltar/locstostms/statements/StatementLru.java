@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.statements;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thread-safe in-memory cache of the most recently used {@link StatementMap} objects, keyed by
+ * {@link StatementCache#key(byte[])}. As keys include the version of the tool, the engine and the
+ * charset, the same cache can be shared by {@link StatementCache} objects of different versions.
+ */
+public final class StatementLru {
+
+  private final Map<String, StatementMap> entries;
+
+  /**
+   * Creates a cache.
+   * 
+   * @param capacity maximum number of entries, the least recently used entry is evicted when it
+   *        is exceeded
+   */
+  public StatementLru(final int capacity) {
+    this.entries = new LinkedHashMap<String, StatementMap>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, StatementMap> eldest) {
+        return this.size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * Returns the statements stored under a key.
+   * 
+   * @param key a key returned by {@link StatementCache#key(byte[])}
+   * @return a {@link StatementMap} object, or <code>null</code> if there is no entry
+   */
+  public synchronized StatementMap get(final String key) {
+    return this.entries.get(key);
+  }
+
+  /**
+   * Stores statements under a key.
+   * 
+   * @param key a key returned by {@link StatementCache#key(byte[])}
+   * @param statements statements to store
+   */
+  public synchronized void put(final String key, final StatementMap statements) {
+    this.entries.put(key, statements);
+  }
+
+  /**
+   * Returns the number of entries.
+   * 
+   * @return number of entries
+   */
+  public synchronized int size() {
+    return this.entries.size();
+  }
+}
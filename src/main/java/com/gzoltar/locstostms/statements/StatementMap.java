@@ -0,0 +1,431 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.statements;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable mapping of Java statements to the lines of code that compose them, e.g., 2={2,3,4}.
+ * 
+ * <p>
+ * Statements and lines are kept in three primitive arrays: the sorted statement numbers, the offset
+ * of each statement in the lines array, and the sorted lines of all statements one after the other.
+ * A statement that spans three lines therefore costs 16 bytes instead of a boxed key, a
+ * {@link java.util.HashSet} and three boxed entries.
+ * </p>
+ */
+public final class StatementMap {
+
+  /**
+   * A map without any statement.
+   */
+  public static final StatementMap EMPTY = new StatementMap(new int[0], new int[] {0}, new int[0]);
+
+  private final int[] statements;
+
+  private final int[] offsets;
+
+  private final int[] lines;
+
+  private StatementMap(final int[] statements, final int[] offsets, final int[] lines) {
+    this.statements = statements;
+    this.offsets = offsets;
+    this.lines = lines;
+  }
+
+  /**
+   * Returns the number of statements.
+   * 
+   * @return number of statements
+   */
+  public int size() {
+    return this.statements.length;
+  }
+
+  /**
+   * Returns the total number of (statement, line) pairs.
+   * 
+   * @return number of pairs
+   */
+  public int pairs() {
+    return this.lines.length;
+  }
+
+  /**
+   * Returns the line number of the i-th statement (statements are sorted in ascending order).
+   * 
+   * @param i index of the statement
+   * @return the line number of the statement
+   */
+  public int statement(final int i) {
+    return this.statements[i];
+  }
+
+  /**
+   * Returns the number of lines of the i-th statement.
+   * 
+   * @param i index of the statement
+   * @return number of lines
+   */
+  public int lineCount(final int i) {
+    return this.offsets[i + 1] - this.offsets[i];
+  }
+
+  /**
+   * Returns the j-th line of the i-th statement (lines are sorted in ascending order).
+   * 
+   * @param i index of the statement
+   * @param j index of the line in the statement
+   * @return a line number
+   */
+  public int line(final int i, final int j) {
+    if (j < 0 || j >= this.lineCount(i)) {
+      throw new IndexOutOfBoundsException("Line " + j + " of statement " + i);
+    }
+    return this.lines[this.offsets[i] + j];
+  }
+
+  /**
+   * Returns the index of a statement.
+   * 
+   * @param statement line number of the statement
+   * @return index of the statement, or a negative value if there is no such statement
+   */
+  public int indexOf(final int statement) {
+    return Arrays.binarySearch(this.statements, statement);
+  }
+
+  /**
+   * Returns a read-only {@link java.util.Map} view of this object. The view does not copy any
+   * data; lookups are binary searches over the underlying arrays.
+   * 
+   * @return a java.util.Map<Integer, java.util.Set<Integer>> object
+   */
+  public Map<Integer, Set<Integer>> asMap() {
+    return new MapView();
+  }
+
+  /**
+   * Writes this object to a binary stream. The result can be read back with
+   * {@link #read(DataInput, long)}.
+   * 
+   * @param out destination stream
+   * @throws IOException if the stream cannot be written
+   */
+  public void write(final DataOutput out) throws IOException {
+    out.writeInt(this.statements.length);
+    out.writeInt(this.lines.length);
+    for (int i = 0; i < this.statements.length; i++) {
+      out.writeInt(this.statements[i]);
+      out.writeInt(this.lineCount(i));
+    }
+    for (int line : this.lines) {
+      out.writeInt(line);
+    }
+  }
+
+  /**
+   * Reads an object previously written with {@link #write(DataOutput)}. Counts are checked against
+   * the number of bytes available before anything is allocated, so that a corrupted stream (e.g.,
+   * a damaged cache entry) cannot cause a huge (or negative) allocation.
+   * 
+   * @param in source stream
+   * @param length number of bytes that can be read from the stream
+   * @return a {@link StatementMap} object
+   * @throws IOException if the stream cannot be read or it is malformed
+   */
+  public static StatementMap read(final DataInput in, final long length) throws IOException {
+    int numStatements = in.readInt();
+    int numLines = in.readInt();
+    // two ints per statement and one per line
+    if (numStatements < 0 || numLines < numStatements
+        || 8L + 8L * numStatements + 4L * numLines > length) {
+      throw new IOException("Malformed statement map");
+    }
+    if (numStatements == 0) {
+      return EMPTY;
+    }
+
+    int[] statements = new int[numStatements];
+    int[] offsets = new int[numStatements + 1];
+    for (int i = 0; i < numStatements; i++) {
+      statements[i] = in.readInt();
+      int lineCount = in.readInt();
+      if (lineCount < 0 || offsets[i] + (long) lineCount > numLines) {
+        throw new IOException("Malformed statement map");
+      }
+      offsets[i + 1] = offsets[i] + lineCount;
+    }
+    if (offsets[numStatements] != numLines) {
+      throw new IOException("Malformed statement map");
+    }
+
+    int[] lines = new int[numLines];
+    for (int k = 0; k < numLines; k++) {
+      lines[k] = in.readInt();
+    }
+
+    return new StatementMap(statements, offsets, lines);
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof StatementMap)) {
+      return false;
+    }
+    StatementMap other = (StatementMap) obj;
+    return Arrays.equals(this.statements, other.statements)
+        && Arrays.equals(this.offsets, other.offsets) && Arrays.equals(this.lines, other.lines);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Arrays.hashCode(this.statements) + Arrays.hashCode(this.lines);
+  }
+
+  @Override
+  public String toString() {
+    return this.asMap().toString();
+  }
+
+  private final class MapView extends AbstractMap<Integer, Set<Integer>> {
+
+    @Override
+    public int size() {
+      return StatementMap.this.size();
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+      return key instanceof Integer && indexOf((Integer) key) >= 0;
+    }
+
+    @Override
+    public Set<Integer> get(final Object key) {
+      if (!(key instanceof Integer)) {
+        return null;
+      }
+      int i = indexOf((Integer) key);
+      return i < 0 ? null : new LinesView(i);
+    }
+
+    @Override
+    public Set<Entry<Integer, Set<Integer>>> entrySet() {
+      return new AbstractSet<Entry<Integer, Set<Integer>>>() {
+        @Override
+        public int size() {
+          return StatementMap.this.size();
+        }
+
+        @Override
+        public Iterator<Entry<Integer, Set<Integer>>> iterator() {
+          return new Iterator<Entry<Integer, Set<Integer>>>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+              return this.i < StatementMap.this.size();
+            }
+
+            @Override
+            public Entry<Integer, Set<Integer>> next() {
+              if (!this.hasNext()) {
+                throw new NoSuchElementException();
+              }
+              int index = this.i++;
+              return new SimpleImmutableEntry<Integer, Set<Integer>>(statement(index),
+                  new LinesView(index));
+            }
+
+            @Override
+            public void remove() {
+              throw new UnsupportedOperationException();
+            }
+          };
+        }
+      };
+    }
+  }
+
+  private final class LinesView extends AbstractSet<Integer> {
+
+    private final int from;
+
+    private final int to;
+
+    private LinesView(final int i) {
+      this.from = offsets[i];
+      this.to = offsets[i + 1];
+    }
+
+    @Override
+    public int size() {
+      return this.to - this.from;
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+      return o instanceof Integer
+          && Arrays.binarySearch(lines, this.from, this.to, (Integer) o) >= 0;
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+      return new Iterator<Integer>() {
+        private int j = from;
+
+        @Override
+        public boolean hasNext() {
+          return this.j < to;
+        }
+
+        @Override
+        public Integer next() {
+          if (!this.hasNext()) {
+            throw new NoSuchElementException();
+          }
+          return lines[this.j++];
+        }
+
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+  }
+
+  /**
+   * Collects (statement, line) pairs in any order, possibly with duplicates, and builds a
+   * {@link StatementMap}. A builder is not thread-safe.
+   */
+  public static final class Builder {
+
+    private long[] pairs = new long[64];
+
+    private int size = 0;
+
+    /**
+     * Whether pairs have been added in ascending order, e.g., when decoding a serialized map.
+     */
+    private boolean sorted = true;
+
+    /**
+     * Adds a line to a statement.
+     * 
+     * @param statement line number of the statement
+     * @param line line number that is part of the statement
+     * @return this builder
+     */
+    public Builder add(final int statement, final int line) {
+      if (this.size == this.pairs.length) {
+        this.pairs = Arrays.copyOf(this.pairs, this.size * 2);
+      }
+      // statement in the high bits, so that sorting pairs sorts by statement first
+      long pair = ((long) statement << 32) | (line & 0xFFFFFFFFL);
+      if (this.size > 0 && pair < this.pairs[this.size - 1]) {
+        this.sorted = false;
+      }
+      this.pairs[this.size++] = pair;
+      return this;
+    }
+
+    /**
+     * Returns whether no pair has been added yet.
+     * 
+     * @return <code>true</code> if the builder is empty
+     */
+    public boolean isEmpty() {
+      return this.size == 0;
+    }
+
+    /**
+     * Discards all pairs added so far, so that the builder can be reused.
+     * 
+     * @return this builder
+     */
+    public Builder clear() {
+      this.size = 0;
+      this.sorted = true;
+      return this;
+    }
+
+    /**
+     * Builds an immutable {@link StatementMap} with all pairs added so far.
+     * 
+     * @return a {@link StatementMap} object
+     */
+    public StatementMap build() {
+      if (this.size == 0) {
+        return EMPTY;
+      }
+
+      if (!this.sorted) {
+        Arrays.sort(this.pairs, 0, this.size);
+        this.sorted = true;
+      }
+
+      // remove duplicates and count distinct statements
+      int distinct = 0;
+      int numStatements = 0;
+      for (int k = 0; k < this.size; k++) {
+        long pair = this.pairs[k];
+        if (distinct == 0) {
+          numStatements++;
+        } else {
+          long previous = this.pairs[distinct - 1];
+          if (pair == previous) {
+            continue;
+          }
+          if ((pair >>> 32) != (previous >>> 32)) {
+            numStatements++;
+          }
+        }
+        this.pairs[distinct++] = pair;
+      }
+      this.size = distinct;
+
+      int[] statements = new int[numStatements];
+      int[] offsets = new int[numStatements + 1];
+      int[] lines = new int[distinct];
+      int s = -1;
+      for (int k = 0; k < distinct; k++) {
+        int statement = (int) (this.pairs[k] >>> 32);
+        if (s < 0 || statements[s] != statement) {
+          statements[++s] = statement;
+          offsets[s] = k;
+        }
+        lines[k] = (int) this.pairs[k];
+      }
+      offsets[numStatements] = distinct;
+
+      return new StatementMap(statements, offsets, lines);
+    }
+  }
+}
@@ -0,0 +1,34 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.statements;
+
+/**
+ * Receives the statements found by a {@link StatementAnalyzer}, one line at a time.
+ */
+public interface StatementSink {
+
+  /**
+   * Receives a line of code that is part of a statement. Lines of the same statement, and
+   * statements of the same file, are received in ascending order. The line on which the statement
+   * starts is received as well.
+   * 
+   * @param file name of the java file, e.g., its path
+   * @param statement line on which the statement starts
+   * @param line a line of the statement
+   */
+  void line(String file, int statement, int line);
+}
@@ -0,0 +1,255 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.statements;
+
+import java.util.Arrays;
+
+/**
+ * Immutable positions and kinds of the statements and declarations of a java file, in source
+ * order (an enclosing statement comes before the statements it contains).
+ * 
+ * <p>
+ * Spans are kept in parallel primitive arrays: begin line, begin column, end line, end column and
+ * kind code of each span. Lines and columns are 1-based, as reported by JavaParser, and the end
+ * column is inclusive.
+ * </p>
+ */
+public final class StatementSpans {
+
+  /**
+   * Spans of a java file without any statement.
+   */
+  public static final StatementSpans EMPTY =
+      new StatementSpans(new int[0], new int[0], new int[0], new int[0], new byte[0]);
+
+  private final int[] beginLines;
+
+  private final int[] beginColumns;
+
+  private final int[] endLines;
+
+  private final int[] endColumns;
+
+  private final byte[] kinds;
+
+  private StatementSpans(final int[] beginLines, final int[] beginColumns, final int[] endLines,
+      final int[] endColumns, final byte[] kinds) {
+    this.beginLines = beginLines;
+    this.beginColumns = beginColumns;
+    this.endLines = endLines;
+    this.endColumns = endColumns;
+    this.kinds = kinds;
+  }
+
+  /**
+   * Returns the number of spans.
+   * 
+   * @return number of spans
+   */
+  public int size() {
+    return this.kinds.length;
+  }
+
+  /**
+   * Returns the line on which the i-th span begins.
+   * 
+   * @param i index of the span
+   * @return a line number
+   */
+  public int beginLine(final int i) {
+    return this.beginLines[i];
+  }
+
+  /**
+   * Returns the column at which the i-th span begins.
+   * 
+   * @param i index of the span
+   * @return a column number
+   */
+  public int beginColumn(final int i) {
+    return this.beginColumns[i];
+  }
+
+  /**
+   * Returns the line on which the i-th span ends.
+   * 
+   * @param i index of the span
+   * @return a line number
+   */
+  public int endLine(final int i) {
+    return this.endLines[i];
+  }
+
+  /**
+   * Returns the column of the last character of the i-th span.
+   * 
+   * @param i index of the span
+   * @return a column number
+   */
+  public int endColumn(final int i) {
+    return this.endColumns[i];
+  }
+
+  /**
+   * Returns the kind of the i-th span.
+   * 
+   * @param i index of the span
+   * @return a {@link StatementKind} object
+   */
+  public StatementKind kind(final int i) {
+    return StatementKind.of(this.kinds[i]);
+  }
+
+  /**
+   * Returns the code of the kind of the i-th span, see {@link StatementKind#code()}.
+   * 
+   * @param i index of the span
+   * @return a code
+   */
+  public byte kindCode(final int i) {
+    return this.kinds[i];
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof StatementSpans)) {
+      return false;
+    }
+    StatementSpans other = (StatementSpans) obj;
+    return Arrays.equals(this.beginLines, other.beginLines)
+        && Arrays.equals(this.beginColumns, other.beginColumns)
+        && Arrays.equals(this.endLines, other.endLines)
+        && Arrays.equals(this.endColumns, other.endColumns)
+        && Arrays.equals(this.kinds, other.kinds);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Arrays.hashCode(this.beginLines) + Arrays.hashCode(this.kinds);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder str = new StringBuilder("[");
+    for (int i = 0; i < this.size(); i++) {
+      str.append(i == 0 ? "" : ", ").append(this.kind(i)).append(' ').append(this.beginLine(i))
+          .append(':').append(this.beginColumn(i)).append('-').append(this.endLine(i))
+          .append(':').append(this.endColumn(i));
+    }
+    return str.append(']').toString();
+  }
+
+  /**
+   * Collects spans in the order in which they are added and builds a {@link StatementSpans}. A
+   * builder is not thread-safe.
+   */
+  public static final class Builder {
+
+    private int[] beginLines = new int[64];
+
+    private int[] beginColumns = new int[64];
+
+    private int[] endLines = new int[64];
+
+    private int[] endColumns = new int[64];
+
+    private byte[] kinds = new byte[64];
+
+    private int size = 0;
+
+    /**
+     * Adds a span.
+     * 
+     * @param kind kind of the statement or declaration
+     * @param beginLine line on which it begins
+     * @param beginColumn column at which it begins
+     * @param endLine line on which it ends
+     * @param endColumn column of its last character
+     * @return this builder
+     */
+    public Builder add(final StatementKind kind, final int beginLine, final int beginColumn,
+        final int endLine, final int endColumn) {
+      return this.add(kind.code(), beginLine, beginColumn, endLine, endColumn);
+    }
+
+    /**
+     * Adds a span, e.g., when decoding spans written by another version, whose kind codes may
+     * be unknown to this one.
+     * 
+     * @param kind code of the kind of the statement or declaration
+     * @param beginLine line on which it begins
+     * @param beginColumn column at which it begins
+     * @param endLine line on which it ends
+     * @param endColumn column of its last character
+     * @return this builder
+     */
+    public Builder add(final byte kind, final int beginLine, final int beginColumn,
+        final int endLine, final int endColumn) {
+      if (this.size == this.kinds.length) {
+        int capacity = this.size * 2;
+        this.beginLines = Arrays.copyOf(this.beginLines, capacity);
+        this.beginColumns = Arrays.copyOf(this.beginColumns, capacity);
+        this.endLines = Arrays.copyOf(this.endLines, capacity);
+        this.endColumns = Arrays.copyOf(this.endColumns, capacity);
+        this.kinds = Arrays.copyOf(this.kinds, capacity);
+      }
+      this.beginLines[this.size] = beginLine;
+      this.beginColumns[this.size] = beginColumn;
+      this.endLines[this.size] = endLine;
+      this.endColumns[this.size] = endColumn;
+      this.kinds[this.size] = kind;
+      this.size++;
+      return this;
+    }
+
+    /**
+     * Returns whether no span has been added yet.
+     * 
+     * @return <code>true</code> if the builder is empty
+     */
+    public boolean isEmpty() {
+      return this.size == 0;
+    }
+
+    /**
+     * Discards all spans added so far, so that the builder can be reused.
+     * 
+     * @return this builder
+     */
+    public Builder clear() {
+      this.size = 0;
+      return this;
+    }
+
+    /**
+     * Builds an immutable {@link StatementSpans} with all spans added so far.
+     * 
+     * @return a {@link StatementSpans} object
+     */
+    public StatementSpans build() {
+      if (this.size == 0) {
+        return EMPTY;
+      }
+      return new StatementSpans(Arrays.copyOf(this.beginLines, this.size),
+          Arrays.copyOf(this.beginColumns, this.size), Arrays.copyOf(this.endLines, this.size),
+          Arrays.copyOf(this.endColumns, this.size), Arrays.copyOf(this.kinds, this.size));
+    }
+  }
+}
@@ -0,0 +1,334 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.stats;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe accumulator of the time spent in each phase of the <code>locstostms</code> command,
+ * of the number of processed files, nodes and statements, and of the slowest files.
+ */
+public final class Statistics {
+
+  /**
+   * Phases of the processing of a java file.
+   */
+  public enum Phase {
+    /** Finding the java file of each class. */
+    LOOKUP,
+    /** Reading the content of java files. */
+    READ,
+    /** Looking up and storing cached statements. */
+    CACHE,
+    /** Building the AST with JavaParser. */
+    PARSE,
+    /** Exploring the AST. */
+    EXPLORE,
+    /** Scanning tokens with the lexer engine. */
+    LEX,
+    /** Writing the output file. */
+    WRITE
+  }
+
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported();
+
+  private static final Comparator<FileTime> BY_TIME = new Comparator<FileTime>() {
+    @Override
+    public int compare(final FileTime a, final FileTime b) {
+      return Long.compare(a.nanos, b.nanos);
+    }
+  };
+
+  private final int slowestFiles;
+
+  private final AtomicLongArray wallNanos = new AtomicLongArray(Phase.values().length);
+
+  private final AtomicLongArray cpuNanos = new AtomicLongArray(Phase.values().length);
+
+  private final AtomicLongArray counts = new AtomicLongArray(Phase.values().length);
+
+  /**
+   * Number of laps of each phase whose CPU time could not be measured, e.g., on a virtual thread
+   * (whose CPU time is not tracked by the JVM) or if CPU time measurement is disabled.
+   */
+  private final AtomicLongArray unmeasured = new AtomicLongArray(Phase.values().length);
+
+  private final AtomicLong files = new AtomicLong();
+
+  private final AtomicLong nodes = new AtomicLong();
+
+  private final AtomicLong statements = new AtomicLong();
+
+  private final AtomicLong lines = new AtomicLong();
+
+  private volatile int peakFilesInFlight = 0;
+
+  private volatile long peakBytesInFlight = 0;
+
+  /**
+   * Min-heap of the slowest files, the fastest of them at the head.
+   */
+  private final PriorityQueue<FileTime> slowest;
+
+  /**
+   * Creates an accumulator.
+   * 
+   * @param slowestFiles number of slowest files to keep track of
+   */
+  public Statistics(final int slowestFiles) {
+    this.slowestFiles = slowestFiles;
+    this.slowest = new PriorityQueue<FileTime>(Math.max(1, slowestFiles), BY_TIME);
+  }
+
+  /**
+   * Starts measuring time on the current thread.
+   * 
+   * @return a {@link Stopwatch} object, which must be used only by the current thread
+   */
+  public Stopwatch start() {
+    return new Stopwatch();
+  }
+
+  /**
+   * Records a processed java file.
+   * 
+   * @param javaFile path (or URI, for an entry of an archive) of the java file
+   * @param nanos wall time spent processing the file
+   * @param numNodes number of AST nodes (and of tokens scanned by the lexer engine), 0 if the
+   *        file was not parsed
+   * @param numStatements number of statements
+   * @param numLines number of (statement, line) pairs
+   */
+  public void file(final String javaFile, final long nanos, final long numNodes,
+      final long numStatements, final long numLines) {
+    this.files.incrementAndGet();
+    this.nodes.addAndGet(numNodes);
+    this.statements.addAndGet(numStatements);
+    this.lines.addAndGet(numLines);
+
+    if (this.slowestFiles <= 0) {
+      return;
+    }
+    synchronized (this.slowest) {
+      if (this.slowest.size() < this.slowestFiles) {
+        this.slowest.add(new FileTime(javaFile, nanos));
+      } else if (this.slowest.peek().nanos < nanos) {
+        this.slowest.poll();
+        this.slowest.add(new FileTime(javaFile, nanos));
+      }
+    }
+  }
+
+  /**
+   * Measures the time spent in consecutive phases on a single thread.
+   */
+  public final class Stopwatch {
+
+    private final long startWall;
+
+    private long lastWall;
+
+    private long lastCpu;
+
+    private Stopwatch() {
+      this.startWall = System.nanoTime();
+      this.lastWall = this.startWall;
+      this.lastCpu = cpuTime();
+    }
+
+    /**
+     * Attributes the time elapsed since the previous lap (or since this stopwatch was started) to
+     * a phase.
+     * 
+     * @param phase the phase that has just finished
+     */
+    public void lap(final Phase phase) {
+      long wall = System.nanoTime();
+      long cpu = cpuTime();
+      wallNanos.addAndGet(phase.ordinal(), wall - this.lastWall);
+      if (cpu < 0 || this.lastCpu < 0) {
+        unmeasured.incrementAndGet(phase.ordinal());
+      } else {
+        cpuNanos.addAndGet(phase.ordinal(), cpu - this.lastCpu);
+      }
+      counts.incrementAndGet(phase.ordinal());
+      this.lastWall = wall;
+      this.lastCpu = cpu;
+    }
+
+    /**
+     * Returns the wall time elapsed since this stopwatch was started.
+     * 
+     * @return nanoseconds
+     */
+    public long elapsed() {
+      return System.nanoTime() - this.startWall;
+    }
+  }
+
+  /**
+   * Returns the CPU time of the current thread, or -1 if it cannot be measured.
+   */
+  private static long cpuTime() {
+    return CPU_TIME ? THREADS.getCurrentThreadCpuTime() : -1L;
+  }
+
+  /**
+   * Returns <code>true</code> if the CPU time of every lap of a phase has been measured, i.e.,
+   * if its total CPU time is meaningful.
+   */
+  private boolean isCpuMeasured(final int phase) {
+    return this.unmeasured.get(phase) == 0;
+  }
+
+  private List<FileTime> slowest() {
+    List<FileTime> slowest;
+    synchronized (this.slowest) {
+      slowest = new ArrayList<FileTime>(this.slowest);
+    }
+    Collections.sort(slowest, Collections.reverseOrder(BY_TIME));
+    return slowest;
+  }
+
+  /**
+   * Records the largest number of java files that have been parsed or waited to be written at the
+   * same time, and their estimated heap.
+   * 
+   * @param numFiles number of java files
+   * @param bytes estimated heap of the java files, in bytes
+   */
+  public void inFlight(final int numFiles, final long bytes) {
+    this.peakFilesInFlight = numFiles;
+    this.peakBytesInFlight = bytes;
+  }
+
+  /**
+   * Prints a human-readable summary.
+   * 
+   * @param out destination
+   */
+  public void print(final PrintStream out) {
+    out.println("* Statistics:");
+    out.println(String.format(Locale.ROOT, "  %-8s %12s %12s %10s", "phase", "wall (ms)",
+        "cpu (ms)", "count"));
+    for (Phase phase : Phase.values()) {
+      int i = phase.ordinal();
+      String cpu = this.isCpuMeasured(i)
+          ? String.format(Locale.ROOT, "%.1f", millis(this.cpuNanos.get(i))) : "n/a";
+      out.println(String.format(Locale.ROOT, "  %-8s %12.1f %12s %10d",
+          phase.name().toLowerCase(Locale.ROOT), millis(this.wallNanos.get(i)), cpu,
+          this.counts.get(i)));
+    }
+    out.println("  files: " + this.files.get() + ", nodes: " + this.nodes.get()
+        + ", statements: " + this.statements.get() + ", lines: " + this.lines.get());
+    out.println(String.format(Locale.ROOT, "  in flight: at most %d files, %.1f MB (estimated)",
+        this.peakFilesInFlight, this.peakBytesInFlight / (double) (1 << 20)));
+
+    List<FileTime> slowest = this.slowest();
+    if (!slowest.isEmpty()) {
+      out.println("  slowest files:");
+      for (FileTime file : slowest) {
+        out.println(String.format(Locale.ROOT, "  %12.1f ms %s", millis(file.nanos),
+            file.javaFile));
+      }
+    }
+  }
+
+  /**
+   * Writes all statistics as a JSON document.
+   * 
+   * @param jsonFile destination
+   * @throws IOException if the file cannot be written
+   */
+  public void writeJson(final File jsonFile) throws IOException {
+    try (Writer writer = Files.newBufferedWriter(jsonFile.toPath(), StandardCharsets.UTF_8)) {
+      writer.write("{\n  \"phases\": {");
+      for (Phase phase : Phase.values()) {
+        int i = phase.ordinal();
+        writer.write(phase.ordinal() == 0 ? "\n" : ",\n");
+        writer.write("    \"" + phase.name().toLowerCase(Locale.ROOT) + "\": {\"wallNanos\": "
+            + this.wallNanos.get(i) + ", \"cpuNanos\": "
+            + (this.isCpuMeasured(i) ? Long.toString(this.cpuNanos.get(i)) : "null")
+            + ", \"count\": " + this.counts.get(i) + "}");
+      }
+      writer.write("\n  },\n");
+      writer.write("  \"files\": " + this.files.get() + ",\n");
+      writer.write("  \"nodes\": " + this.nodes.get() + ",\n");
+      writer.write("  \"statements\": " + this.statements.get() + ",\n");
+      writer.write("  \"lines\": " + this.lines.get() + ",\n");
+      writer.write("  \"inFlight\": {\"files\": " + this.peakFilesInFlight + ", \"bytes\": "
+          + this.peakBytesInFlight + "},\n");
+      writer.write("  \"slowestFiles\": [");
+      List<FileTime> slowest = this.slowest();
+      for (int i = 0; i < slowest.size(); i++) {
+        writer.write(i == 0 ? "\n" : ",\n");
+        writer.write("    {\"file\": \"" + escape(slowest.get(i).javaFile)
+            + "\", \"nanos\": " + slowest.get(i).nanos + "}");
+      }
+      writer.write(slowest.isEmpty() ? "]\n" : "\n  ]\n");
+      writer.write("}\n");
+    }
+  }
+
+  private static double millis(final long nanos) {
+    return nanos / 1e6;
+  }
+
+  private static String escape(final String s) {
+    StringBuilder sb = new StringBuilder(s.length());
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '"' || c == '\\') {
+        sb.append('\\').append(c);
+      } else if (c < 0x20) {
+        sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+  private static final class FileTime {
+
+    private final String javaFile;
+
+    private final long nanos;
+
+    private FileTime(final String javaFile, final long nanos) {
+      this.javaFile = javaFile;
+      this.nanos = nanos;
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.commands;
+
+import static org.junit.Assert.assertEquals;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import com.gzoltar.locstostms.CommandParser;
+import com.gzoltar.locstostms.ResourcesUtil;
+
+public class TestCollapse {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private static final List<String> SPECTRA = Arrays.asList("IfCondition.java#3",
+      "IfCondition.java#4", "IfCondition.java#5", "IfCondition.java#7", "ForLoop.java#4",
+      "ForLoop.java#3", "Missing.java#10", "ForLoop.java#5", "not a line");
+
+  private File statements(final String format) throws Exception {
+    File statementsFile = this.tmp.newFile();
+    LocsToStms command = new LocsToStms();
+    new CommandParser(command).parseArgument("IfCondition", "ForLoop", "--srcDirs",
+        ResourcesUtil.getFile("examples").getAbsolutePath(), "--outputFile",
+        statementsFile.getAbsolutePath(), "--format", format);
+    PrintStream out = new PrintStream(new ByteArrayOutputStream());
+    assertEquals(0, command.execute(out, out));
+    return statementsFile;
+  }
+
+  private int collapse(final File statementsFile, final List<String> matrix,
+      final File outputSpectraFile, final File outputMatrixFile) throws Exception {
+    File spectraFile = this.tmp.newFile();
+    Files.write(spectraFile.toPath(), SPECTRA, StandardCharsets.UTF_8);
+    File matrixFile = this.tmp.newFile();
+    Files.write(matrixFile.toPath(), matrix, StandardCharsets.UTF_8);
+
+    Collapse command = new Collapse();
+    new CommandParser(command).parseArgument("--statementsFile", statementsFile.getAbsolutePath(),
+        "--spectraFile", spectraFile.getAbsolutePath(), "--matrixFile",
+        matrixFile.getAbsolutePath(), "--outputSpectraFile", outputSpectraFile.getAbsolutePath(),
+        "--outputMatrixFile", outputMatrixFile.getAbsolutePath());
+    PrintStream out = new PrintStream(new ByteArrayOutputStream());
+    return command.execute(out, out);
+  }
+
+  @Test
+  public void testCollapse() throws Exception {
+    for (String format : new String[] {"text", "binary", "index"}) {
+      File outputSpectraFile = this.tmp.newFile();
+      File outputMatrixFile = this.tmp.newFile();
+      assertEquals(0, this.collapse(this.statements(format),
+          Arrays.asList("0 1 1 0 0 0 0 0 0 +", "0 0 0 1 0 0 1 1 1 -", "", "1 1 1 1 1 1 1 1 0 +"),
+          outputSpectraFile, outputMatrixFile));
+
+      assertEquals(Arrays.asList("IfCondition.java#3", "IfCondition.java#5",
+          "IfCondition.java#7", "ForLoop.java#3", "Missing.java#10", "not a line"),
+          Files.readAllLines(outputSpectraFile.toPath(), StandardCharsets.UTF_8));
+      assertEquals(Arrays.asList("1 1 0 0 0 0 +", "0 0 1 1 1 1 -", "1 1 1 1 1 0 +"),
+          Files.readAllLines(outputMatrixFile.toPath(), StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void testMalformedMatrix() throws Exception {
+    assertEquals(-1, this.collapse(this.statements("text"), Arrays.asList("0 1 1 0 +"),
+        this.tmp.newFile(), this.tmp.newFile()));
+  }
+}
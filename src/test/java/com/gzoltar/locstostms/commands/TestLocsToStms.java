@@ -0,0 +1,530 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.commands;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.kohsuke.args4j.CmdLineException;
+import com.github.javaparser.JavaParser;
+import com.gzoltar.locstostms.CommandParser;
+import com.gzoltar.locstostms.ResourcesUtil;
+import com.gzoltar.locstostms.output.BinaryStatementFile;
+import com.gzoltar.locstostms.output.SpanIndex;
+import com.gzoltar.locstostms.statements.StatementExplorer;
+import com.gzoltar.locstostms.statements.StatementSpans;
+
+public class TestLocsToStms {
+
+  private static final String[] EXAMPLES = {"Annotation", "ClassDefinition", "Comments",
+      "EnumDeclaration", "Fields", "ForLoop", "IfCondition", "MethodArguments", "WhileLoop"};
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private static String[] withExamples(final String... options) {
+    List<String> args = new ArrayList<String>(Arrays.asList(EXAMPLES));
+    args.addAll(Arrays.asList(options));
+    return args.toArray(new String[args.size()]);
+  }
+
+  private String execute(final File outputFile, final String... options) throws Exception {
+    List<String> args = new ArrayList<String>();
+    args.add("--srcDirs");
+    args.add(ResourcesUtil.getFile("examples").getAbsolutePath());
+    args.add("--outputFile");
+    args.add(outputFile.getAbsolutePath());
+    args.addAll(Arrays.asList(options));
+
+    LocsToStms command = new LocsToStms();
+    new CommandParser(command).parseArgument(args);
+
+    ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+    PrintStream out = new PrintStream(stdout);
+    assertEquals(0, command.execute(out, out));
+    out.flush();
+
+    return stdout.toString();
+  }
+
+  private byte[] run(final File outputFile, final String... options) throws Exception {
+    this.execute(outputFile, withExamples(options));
+    return Files.readAllBytes(outputFile.toPath());
+  }
+
+  @Test
+  public void testParallelOutputIsDeterministic() throws Exception {
+    byte[] sequential = this.run(this.tmp.newFile(), "--threads", "1");
+    assertTrue(sequential.length > 0);
+
+    for (int i = 0; i < 5; i++) {
+      byte[] parallel = this.run(this.tmp.newFile(), "--threads", "4");
+      assertArrayEquals(sequential, parallel);
+    }
+  }
+
+  @Test
+  public void testCacheReplaysStatements() throws Exception {
+    byte[] expected = this.run(this.tmp.newFile());
+    File cacheDir = this.tmp.newFolder();
+
+    File first = this.tmp.newFile();
+    String stdout = this.execute(first, withExamples("--cacheDir", cacheDir.getAbsolutePath()));
+    assertTrue(stdout.contains("* Cache: 0 hits, " + EXAMPLES.length + " misses"));
+    assertArrayEquals(expected, Files.readAllBytes(first.toPath()));
+
+    File second = this.tmp.newFile();
+    stdout = this.execute(second, withExamples("--cacheDir", cacheDir.getAbsolutePath()));
+    assertTrue(stdout.contains("* Cache: " + EXAMPLES.length + " hits, 0 misses"));
+    assertArrayEquals(expected, Files.readAllBytes(second.toPath()));
+  }
+
+  @Test
+  public void testUnwritableCacheIsIgnored() throws Exception {
+    byte[] expected = this.run(this.tmp.newFile());
+    File cacheDir = this.tmp.newFolder();
+    // entries are stored in sub-directories named after the first two characters of their key,
+    // files in their place make every entry unwritable (even to root)
+    for (int i = 0; i < 256; i++) {
+      assertTrue(new File(cacheDir, String.format("%02x", i)).createNewFile());
+    }
+
+    File outputFile = this.tmp.newFile();
+    String stdout =
+        this.execute(outputFile, withExamples("--cacheDir", cacheDir.getAbsolutePath()));
+    assertFalse(stdout.contains("* Failed"));
+    assertTrue(stdout.contains("* Cannot write to cache: " + EXAMPLES.length + " entries"));
+    assertArrayEquals(expected, Files.readAllBytes(outputFile.toPath()));
+  }
+
+  @Test
+  public void testAllClasses() throws Exception {
+    byte[] expected = this.run(this.tmp.newFile());
+
+    File outputFile = this.tmp.newFile();
+    this.execute(outputFile, "--all", "--threads", "4");
+    assertArrayEquals(expected, Files.readAllBytes(outputFile.toPath()));
+  }
+
+  @Test
+  public void testClassesFile() throws Exception {
+    byte[] expected = this.run(this.tmp.newFile());
+
+    File classesFile = this.tmp.newFile();
+    List<String> lines = new ArrayList<String>();
+    lines.add("# examples");
+    lines.addAll(Arrays.asList(EXAMPLES).subList(1, EXAMPLES.length));
+    lines.add("");
+    Files.write(classesFile.toPath(), lines, StandardCharsets.UTF_8);
+
+    File outputFile = this.tmp.newFile();
+    this.execute(outputFile, EXAMPLES[0], "--classesFile", classesFile.getAbsolutePath());
+    assertArrayEquals(expected, Files.readAllBytes(outputFile.toPath()));
+  }
+
+  @Test
+  public void testNoClasses() throws Exception {
+    LocsToStms command = new LocsToStms();
+    new CommandParser(command).parseArgument("--srcDirs",
+        ResourcesUtil.getFile("examples").getAbsolutePath());
+
+    PrintStream out = new PrintStream(new ByteArrayOutputStream());
+    assertEquals(-1, command.execute(out, out));
+  }
+
+  @Test
+  public void testBinaryFormat() throws Exception {
+    File outputFile = this.tmp.newFile();
+    this.run(outputFile, "--format", "binary");
+
+    BinaryStatementFile binary = BinaryStatementFile.load(outputFile);
+    assertEquals(EXAMPLES.length, binary.size());
+    for (int i = 0; i < EXAMPLES.length; i++) {
+      File javaFile = ResourcesUtil.getFile("examples/" + EXAMPLES[i] + ".java");
+      assertEquals(EXAMPLES[i] + ".java", binary.path(i));
+      assertEquals(LocsToStms.parseStatements(javaFile), binary.statements(i));
+    }
+  }
+
+  @Test
+  public void testStatistics() throws Exception {
+    File statsFile = this.tmp.newFile();
+    String stdout = this.execute(this.tmp.newFile(),
+        withExamples("--stats", "--statsFile", statsFile.getAbsolutePath(), "--slowestFiles", "3"));
+    assertTrue(stdout.contains("* Statistics:"));
+    assertTrue(stdout.contains("files: " + EXAMPLES.length + ", nodes: "));
+
+    String json = new String(Files.readAllBytes(statsFile.toPath()), StandardCharsets.UTF_8);
+    assertTrue(json.contains("\"files\": " + EXAMPLES.length + ","));
+    assertTrue(json.contains("\"parse\": {\"wallNanos\": "));
+    assertEquals(3, json.split("\"file\": ").length - 1);
+  }
+
+  @Test
+  public void testStatisticsWithoutCpuTime() throws Exception {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (!threads.isThreadCpuTimeSupported()) {
+      return;
+    }
+    boolean enabled = threads.isThreadCpuTimeEnabled();
+    threads.setThreadCpuTimeEnabled(false);
+    try {
+      File statsFile = this.tmp.newFile();
+      String stdout = this.execute(this.tmp.newFile(),
+          withExamples("--stats", "--statsFile", statsFile.getAbsolutePath()));
+      assertTrue(stdout, stdout.matches("(?s).*\\n  parse +[0-9.]+ +n/a .*"));
+
+      String json = new String(Files.readAllBytes(statsFile.toPath()), StandardCharsets.UTF_8);
+      assertTrue(json.contains("\"cpuNanos\": null"));
+    } finally {
+      threads.setThreadCpuTimeEnabled(enabled);
+    }
+  }
+
+  @Test
+  public void testLexerEngine() throws Exception {
+    byte[] expected = this.run(this.tmp.newFile());
+    assertArrayEquals(expected, this.run(this.tmp.newFile(), "--engine", "lexer"));
+  }
+
+  @Test
+  public void testDifferential() throws Exception {
+    byte[] expected = this.run(this.tmp.newFile());
+
+    File outputFile = this.tmp.newFile();
+    String stdout = this.execute(outputFile, withExamples("--differential", "--engine", "lexer"));
+    assertTrue(stdout.contains("* Differential: 0 of " + EXAMPLES.length + " files disagree"));
+    assertFalse(stdout.contains("* Disagreement"));
+    assertArrayEquals(expected, Files.readAllBytes(outputFile.toPath()));
+  }
+
+  @Test(expected = CmdLineException.class)
+  public void testDifferentialWithCache() throws Exception {
+    new CommandParser(new LocsToStms()).parseArgument("Fields", "--srcDirs",
+        ResourcesUtil.getFile("examples").getAbsolutePath(), "--differential", "--cacheDir",
+        this.tmp.newFolder().getAbsolutePath());
+  }
+
+  private static final String ENCODED = "class Encoded {\n"
+      + "  // café\n"
+      + "  String s = \"naïve\" +\n"
+      + "      \"ß\";\n"
+      + "}\n";
+
+  private byte[] runEncoded(final Charset charset, final String... options) throws Exception {
+    File srcDir = this.tmp.newFolder();
+    Files.write(new File(srcDir, "Encoded.java").toPath(), ENCODED.getBytes(charset));
+
+    List<String> args = new ArrayList<String>(Arrays.asList(options));
+    args.addAll(Arrays.asList("Encoded", "--srcDirs", srcDir.getAbsolutePath()));
+    File outputFile = this.tmp.newFile();
+    this.execute(outputFile, args.toArray(new String[args.size()]));
+    return Files.readAllBytes(outputFile.toPath());
+  }
+
+  @Test
+  public void testEncoding() throws Exception {
+    byte[] expected = this.runEncoded(StandardCharsets.UTF_8);
+    assertTrue(new String(expected, StandardCharsets.UTF_8).contains("Encoded"));
+    assertArrayEquals(expected,
+        this.runEncoded(StandardCharsets.UTF_16, "--encoding", "UTF-16"));
+    assertArrayEquals(expected,
+        this.runEncoded(StandardCharsets.UTF_16, "--encoding", "UTF-16", "--engine", "lexer"));
+  }
+
+  @Test
+  public void testUnsupportedEncoding() throws Exception {
+    LocsToStms command = new LocsToStms();
+    new CommandParser(command).parseArgument("Fields", "--srcDirs",
+        ResourcesUtil.getFile("examples").getAbsolutePath(), "--encoding", "no-such-charset");
+
+    ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+    PrintStream err = new PrintStream(stderr);
+    assertEquals(-1, command.execute(new PrintStream(new ByteArrayOutputStream()), err));
+    err.flush();
+
+    assertTrue(stderr.toString().contains("Unsupported encoding: no-such-charset"));
+  }
+
+  @Test
+  public void testSourcesJar() throws Exception {
+    byte[] expected = this.run(this.tmp.newFile());
+
+    File sourcesJar = this.tmp.newFile("examples-sources.jar");
+    try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(sourcesJar))) {
+      zip.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+      zip.closeEntry();
+      for (String example : EXAMPLES) {
+        zip.putNextEntry(new ZipEntry(example + ".java"));
+        zip.write(Files.readAllBytes(ResourcesUtil.getFile("examples/" + example + ".java")
+            .toPath()));
+        zip.closeEntry();
+      }
+    }
+
+    for (String[] options : new String[][] {EXAMPLES, {"--all", "--threads", "4"}}) {
+      File outputFile = this.tmp.newFile();
+      List<String> args = new ArrayList<String>(Arrays.asList(options));
+      args.addAll(Arrays.asList("--srcDirs", sourcesJar.getAbsolutePath(), "--outputFile",
+          outputFile.getAbsolutePath()));
+
+      LocsToStms command = new LocsToStms();
+      new CommandParser(command).parseArgument(args);
+      PrintStream out = new PrintStream(new ByteArrayOutputStream());
+      assertEquals(0, command.execute(out, out));
+      assertArrayEquals(expected, Files.readAllBytes(outputFile.toPath()));
+    }
+  }
+
+  private static void locsToStms(final String... args) throws Exception {
+    LocsToStms command = new LocsToStms();
+    new CommandParser(command).parseArgument(args);
+    PrintStream out = new PrintStream(new ByteArrayOutputStream());
+    assertEquals(0, command.execute(out, out));
+  }
+
+  @Test
+  public void testUpdate() throws Exception {
+    File srcDir = this.tmp.newFolder("src");
+    for (String example : EXAMPLES) {
+      Files.copy(ResourcesUtil.getFile("examples/" + example + ".java").toPath(),
+          new File(srcDir, example + ".java").toPath());
+    }
+    File outputFile = this.tmp.newFile();
+    locsToStms("--all", "--srcDirs", srcDir.getAbsolutePath(), "--format", "binary",
+        "--outputFile", outputFile.getAbsolutePath());
+
+    // one java file changes, one is deleted and one is added
+    File forLoop = new File(srcDir, "ForLoop.java");
+    Files.write(forLoop.toPath(), ("\n\n" + new String(Files.readAllBytes(forLoop.toPath()),
+        StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8));
+    File whileLoop = new File(srcDir, "WhileLoop.java");
+    assertTrue(whileLoop.delete());
+    Files.copy(ResourcesUtil.getFile("examples/Fields.java").toPath(),
+        new File(srcDir, "Added.java").toPath());
+
+    locsToStms("ForLoop", whileLoop.getPath(), "Added", "--update", "--srcDirs",
+        srcDir.getAbsolutePath(), "--format", "binary", "--outputFile",
+        outputFile.getAbsolutePath());
+
+    File expected = this.tmp.newFile();
+    locsToStms("--all", "--srcDirs", srcDir.getAbsolutePath(), "--format", "binary",
+        "--outputFile", expected.getAbsolutePath());
+    assertArrayEquals(Files.readAllBytes(expected.toPath()),
+        Files.readAllBytes(outputFile.toPath()));
+  }
+
+  @Test
+  public void testUpdateRequiresBinaryFormat() throws Exception {
+    LocsToStms command = new LocsToStms();
+    new CommandParser(command).parseArgument("Fields", "--update", "--srcDirs",
+        ResourcesUtil.getFile("examples").getAbsolutePath());
+
+    ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+    PrintStream err = new PrintStream(stderr);
+    assertEquals(-1, command.execute(new PrintStream(new ByteArrayOutputStream()), err));
+    err.flush();
+    assertTrue(stderr.toString().contains("--update requires --format binary"));
+  }
+
+  @Test
+  public void testSpansFile() throws Exception {
+    File spansFile = this.tmp.newFile();
+    File cacheDir = this.tmp.newFolder();
+    // a warm cache must not prevent the spans of any java file from being written
+    this.run(this.tmp.newFile(), "--cacheDir", cacheDir.getAbsolutePath());
+    String stdout = this.execute(this.tmp.newFile(), withExamples("--cacheDir",
+        cacheDir.getAbsolutePath(), "--spansFile", spansFile.getAbsolutePath()));
+    assertTrue(stdout.contains("* Spans: "));
+
+    SpanIndex index = SpanIndex.load(spansFile);
+    assertEquals(EXAMPLES.length, index.size());
+    for (int i = 0; i < EXAMPLES.length; i++) {
+      File javaFile = ResourcesUtil.getFile("examples/" + EXAMPLES[i] + ".java");
+      StatementSpans.Builder expected = new StatementSpans.Builder();
+      new StatementExplorer().visit(JavaParser.parse(javaFile), expected);
+      assertEquals(EXAMPLES[i] + ".java", index.path(i));
+      assertEquals(expected.build(), index.spans(i));
+    }
+  }
+
+  @Test
+  public void testSpansFileRequiresJavaParser() throws Exception {
+    LocsToStms command = new LocsToStms();
+    new CommandParser(command).parseArgument("Fields", "--engine", "lexer", "--spansFile",
+        this.tmp.newFile().getAbsolutePath(), "--srcDirs",
+        ResourcesUtil.getFile("examples").getAbsolutePath());
+
+    ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+    PrintStream err = new PrintStream(stderr);
+    assertEquals(-1, command.execute(new PrintStream(new ByteArrayOutputStream()), err));
+    err.flush();
+    assertTrue(stderr.toString().contains("--spansFile requires --engine javaparser"));
+  }
+
+  @Test
+  public void testSpansFileCannotBeUpdated() throws Exception {
+    File outputFile = this.tmp.newFile();
+    File spansFile = this.tmp.newFile();
+    this.execute(outputFile, withExamples("--format", "binary", "--spansFile",
+        spansFile.getAbsolutePath()));
+    byte[] spans = Files.readAllBytes(spansFile.toPath());
+
+    try {
+      new CommandParser(new LocsToStms()).parseArgument("Fields", "--update", "--format",
+          "binary", "--outputFile", outputFile.getAbsolutePath(), "--spansFile",
+          spansFile.getAbsolutePath(), "--srcDirs",
+          ResourcesUtil.getFile("examples").getAbsolutePath());
+      fail("--spansFile cannot be combined with --update");
+    } catch (CmdLineException e) {
+      assertTrue(e.getMessage().contains("--spansFile"));
+    }
+    // the spans of the other java files are kept
+    assertArrayEquals(spans, Files.readAllBytes(spansFile.toPath()));
+  }
+
+  @Test
+  public void testFailuresAreSkipped() throws Exception {
+    File srcDir = this.tmp.newFolder("src");
+    Files.copy(ResourcesUtil.getFile("examples/Fields.java").toPath(),
+        new File(srcDir, "Fields.java").toPath());
+    Files.write(new File(srcDir, "Broken.java").toPath(),
+        "class Broken {\n  void m( {\n}\n".getBytes(StandardCharsets.UTF_8));
+    Files.write(new File(srcDir, "Empty.java").toPath(), new byte[0]);
+    // lexical errors, which JavaParser reports with Errors rather than ParseExceptions
+    Files.write(new File(srcDir, "BadEscape.java").toPath(),
+        "class BadEscape { int x = 1 \\u; }\n".getBytes(StandardCharsets.UTF_8));
+    Files.write(new File(srcDir, "Backslash.java").toPath(),
+        "class Backslash { int x = 1 \\ 2; }\n".getBytes(StandardCharsets.UTF_8));
+
+    File expected = this.tmp.newFile();
+    locsToStms("Fields", "--srcDirs", ResourcesUtil.getFile("examples").getAbsolutePath(),
+        "--outputFile", expected.getAbsolutePath());
+
+    File outputFile = this.tmp.newFile();
+    File failuresFile = this.tmp.newFile();
+    locsToStms("--all", "--srcDirs", srcDir.getAbsolutePath(), "--outputFile",
+        outputFile.getAbsolutePath(), "--failuresFile", failuresFile.getAbsolutePath());
+
+    assertArrayEquals(Files.readAllBytes(expected.toPath()),
+        Files.readAllBytes(outputFile.toPath()));
+    List<String> failures = Files.readAllLines(failuresFile.toPath(), StandardCharsets.UTF_8);
+    // java files are written sorted by class name
+    String[] failed = {"Backslash.java", "BadEscape.java", "Broken.java"};
+    assertEquals(failed.length, failures.size());
+    for (int i = 0; i < failed.length; i++) {
+      assertTrue(failures.get(i).startsWith(
+          new File(srcDir, failed[i]).getAbsolutePath() + "\tfailed\t"));
+    }
+  }
+
+  @Test
+  public void testFileTimeout() throws Exception {
+    File srcDir = this.tmp.newFolder("src");
+    Files.copy(ResourcesUtil.getFile("examples/Fields.java").toPath(),
+        new File(srcDir, "Fields.java").toPath());
+    // far too large to be parsed in 100 ms
+    StringBuilder large = new StringBuilder("class Large {\n");
+    for (int i = 0; i < 500000; i++) {
+      large.append("  int f").append(i).append(" = ").append(i).append(" + 1;\n");
+    }
+    large.append("}\n");
+    Files.write(new File(srcDir, "Large.java").toPath(),
+        large.toString().getBytes(StandardCharsets.UTF_8));
+
+    File outputFile = this.tmp.newFile();
+    File failuresFile = this.tmp.newFile();
+    locsToStms("Large", "Fields", "--srcDirs", srcDir.getAbsolutePath(), "--threads", "1",
+        "--outputFile", outputFile.getAbsolutePath(), "--fileTimeout", "100", "--failuresFile",
+        failuresFile.getAbsolutePath());
+
+    assertEquals(
+        Arrays.asList(new File(srcDir, "Large.java").getAbsolutePath() + "\ttimeout\t100 ms"),
+        Files.readAllLines(failuresFile.toPath(), StandardCharsets.UTF_8));
+    assertTrue(new String(Files.readAllBytes(outputFile.toPath()), StandardCharsets.UTF_8)
+        .startsWith("Fields.java#"));
+  }
+
+  @Test
+  public void testVirtualExecutor() throws Exception {
+    if (ExecutorKind.VIRTUAL.isSupported()) {
+      byte[] expected = this.run(this.tmp.newFile());
+      assertArrayEquals(expected, this.run(this.tmp.newFile(), "--executor", "virtual"));
+
+      // the CPU time of virtual threads is not measured
+      String stdout =
+          this.execute(this.tmp.newFile(), withExamples("--executor", "virtual", "--stats"));
+      assertTrue(stdout, stdout.matches("(?s).*\\n  parse +[0-9.]+ +n/a .*"));
+      return;
+    }
+
+    LocsToStms command = new LocsToStms();
+    new CommandParser(command).parseArgument("Fields", "--srcDirs",
+        ResourcesUtil.getFile("examples").getAbsolutePath(), "--executor", "virtual");
+
+    ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+    PrintStream err = new PrintStream(stderr);
+    assertEquals(-1, command.execute(new PrintStream(new ByteArrayOutputStream()), err));
+    err.flush();
+    assertTrue(stderr.toString().contains("Unsupported executor: virtual"));
+  }
+
+  @Test
+  public void testClassNotFound() throws Exception {
+    LocsToStms command = new LocsToStms();
+    new CommandParser(command).parseArgument("Fields", "org.foo.Missing", "--srcDirs",
+        ResourcesUtil.getFile("examples").getAbsolutePath(), "--outputFile",
+        this.tmp.newFile().getAbsolutePath());
+
+    ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+    PrintStream err = new PrintStream(stderr);
+    assertEquals(0, command.execute(new PrintStream(new ByteArrayOutputStream()), err));
+    err.flush();
+
+    assertTrue(stderr.toString().contains("* Class not found: org.foo.Missing"));
+    assertFalse(stderr.toString().contains("Fields"));
+  }
+
+  @Test
+  public void testInvalidNumberOfThreads() throws Exception {
+    LocsToStms command = new LocsToStms();
+    new CommandParser(command).parseArgument("Fields", "--srcDirs",
+        ResourcesUtil.getFile("examples").getAbsolutePath(), "--threads", "0");
+
+    PrintStream out = new PrintStream(new ByteArrayOutputStream());
+    assertEquals(-1, command.execute(out, out));
+  }
+}
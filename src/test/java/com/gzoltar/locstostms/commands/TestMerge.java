@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.commands;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import com.gzoltar.locstostms.Command;
+import com.gzoltar.locstostms.CommandParser;
+import com.gzoltar.locstostms.ResourcesUtil;
+import com.gzoltar.locstostms.output.OutputFormat;
+import com.gzoltar.locstostms.output.StatementWriter;
+import com.gzoltar.locstostms.statements.StatementMap;
+
+public class TestMerge {
+
+  private static final int SHARDS = 3;
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private static int execute(final Command command, final String... args) throws Exception {
+    new CommandParser(command).parseArgument(args);
+    PrintStream out = new PrintStream(new ByteArrayOutputStream());
+    return command.execute(out, out);
+  }
+
+  private File parse(final String format, final String... options) throws Exception {
+    return this.parse(format, ResourcesUtil.getFile("examples"), options);
+  }
+
+  private File parse(final String format, final File srcDir, final String... options)
+      throws Exception {
+    File outputFile = this.tmp.newFile();
+    List<String> args = new ArrayList<String>(Arrays.asList("--all", "--srcDirs",
+        srcDir.getAbsolutePath(), "--outputFile", outputFile.getAbsolutePath(), "--format",
+        format));
+    args.addAll(Arrays.asList(options));
+    assertEquals(0, execute(new LocsToStms(), args.toArray(new String[args.size()])));
+    return outputFile;
+  }
+
+  private File merge(final String format, final List<File> inputFiles) throws Exception {
+    File outputFile = this.tmp.newFile();
+    List<String> args = new ArrayList<String>();
+    for (File inputFile : inputFiles) {
+      args.add(inputFile.getAbsolutePath());
+    }
+    args.addAll(Arrays.asList("--outputFile", outputFile.getAbsolutePath(), "--format", format));
+    assertEquals(0, execute(new Merge(), args.toArray(new String[args.size()])));
+    return outputFile;
+  }
+
+  @Test
+  public void testMergedShardsEqualSingleRun() throws Exception {
+    for (String format : new String[] {"text", "binary", "index"}) {
+      byte[] expected = Files.readAllBytes(this.parse(format).toPath());
+
+      List<File> shards = new ArrayList<File>();
+      for (int i = 0; i < SHARDS; i++) {
+        shards.add(this.parse(format, "--shard", i + "/" + SHARDS));
+      }
+      assertArrayEquals(format, expected, Files.readAllBytes(this.merge(format, shards).toPath()));
+
+      // the order of the shards does not matter
+      List<File> reversed = new ArrayList<File>(shards);
+      Collections.reverse(reversed);
+      assertArrayEquals(format, expected,
+          Files.readAllBytes(this.merge(format, reversed).toPath()));
+    }
+  }
+
+  @Test
+  public void testMergeFollowsClassOrder() throws Exception {
+    // Foo is written before Foo$1, although Foo.java is greater than Foo$1.java
+    File srcDir = this.tmp.newFolder();
+    for (String clazz : new String[] {"Foo", "Foo$1", "Foo$2", "Bar"}) {
+      Files.write(new File(srcDir, clazz + ".java").toPath(),
+          ("class " + clazz + " {\n  int x;\n}\n").getBytes(StandardCharsets.UTF_8));
+    }
+    for (String format : new String[] {"text", "binary", "index"}) {
+      byte[] expected = Files.readAllBytes(this.parse(format, srcDir).toPath());
+
+      List<File> shards = new ArrayList<File>();
+      shards.add(this.parse(format, srcDir));
+      for (int i = 0; i < 2; i++) {
+        shards.add(this.parse(format, srcDir, "--shard", i + "/2"));
+      }
+      assertArrayEquals(format, expected,
+          Files.readAllBytes(this.merge(format, shards.subList(0, 1)).toPath()));
+      assertArrayEquals(format, expected,
+          Files.readAllBytes(this.merge(format, shards.subList(1, 3)).toPath()));
+    }
+  }
+
+  @Test
+  public void testUnsortedInput() throws Exception {
+    File inputFile = this.tmp.newFile();
+    StatementWriter writer = OutputFormat.TEXT.open(inputFile);
+    writer.write("org.foo.Foo", new StatementMap.Builder().add(1, 2).build());
+    writer.write("org.foo.Bar", new StatementMap.Builder().add(1, 2).build());
+    writer.close();
+
+    Merge merge = new Merge();
+    new CommandParser(merge).parseArgument(inputFile.getAbsolutePath(), "--outputFile",
+        this.tmp.newFile().getAbsolutePath());
+    ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+    PrintStream err = new PrintStream(stderr);
+    assertEquals(-1, merge.execute(new PrintStream(new ByteArrayOutputStream()), err));
+    err.flush();
+    assertTrue(stderr.toString(), stderr.toString().contains(inputFile.getPath()
+        + " is not sorted by class name (org/foo/Bar.java after org/foo/Foo.java)"));
+  }
+
+  @Test
+  public void testShardsArePartitions() throws Exception {
+    List<String> expected = Files.readAllLines(this.parse("text").toPath(), StandardCharsets.UTF_8);
+    List<String> rows = new ArrayList<String>();
+    for (int i = 0; i < SHARDS; i++) {
+      rows.addAll(Files.readAllLines(this.parse("text", "--shard", i + "/" + SHARDS).toPath(),
+          StandardCharsets.UTF_8));
+    }
+    assertEquals(expected.size(), rows.size());
+    assertTrue(rows.containsAll(expected));
+  }
+
+  @Test
+  public void testShardOf() {
+    // shards depend on the path of the java file only
+    assertEquals(("org/foo/Bar.java".hashCode() & 0x7FFFFFFF) % 7,
+        LocsToStms.shardOf("org.foo.Bar", 7));
+    assertEquals(0, LocsToStms.shardOf("org.foo.Bar", 1));
+  }
+
+  @Test
+  public void testInvalidShard() throws Exception {
+    for (String shard : new String[] {"3/3", "-1/3", "0/0", "1", "a/b", "/3"}) {
+      assertEquals(shard, -1, execute(new LocsToStms(), "--all", "--srcDirs",
+          ResourcesUtil.getFile("examples").getAbsolutePath(), "--shard", shard));
+    }
+  }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.commands;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import com.gzoltar.locstostms.statements.Engine;
+import com.gzoltar.locstostms.statements.StatementAnalyzer;
+import com.gzoltar.locstostms.stats.Statistics;
+
+public class TestParsePipeline {
+
+  private static final int NUM_FILES = 10;
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+  @After
+  public void shutdown() {
+    this.executor.shutdownNow();
+  }
+
+  private ParsePipeline pipeline(final long budget) {
+    return new ParsePipeline(this.executor, StandardCharsets.UTF_8, Engine.JAVAPARSER, null,
+        new Statistics(0), null, false, budget);
+  }
+
+  /**
+   * Creates java files of the same size, the i-th with a statement on line i + 1.
+   */
+  private List<Path> javaFiles() throws Exception {
+    List<Path> javaFiles = new ArrayList<Path>();
+    for (int i = 0; i < NUM_FILES; i++) {
+      StringBuilder source = new StringBuilder("class C" + i + " {\n");
+      for (int j = 0; j < NUM_FILES; j++) {
+        source.append(j == i ? "  int f = 0;\n" : "\n");
+      }
+      source.append("}\n");
+      File javaFile = this.tmp.newFile("C" + i + ".java");
+      Files.write(javaFile.toPath(), source.toString().getBytes(StandardCharsets.UTF_8));
+      javaFiles.add(javaFile.toPath());
+    }
+    return javaFiles;
+  }
+
+  private static long cost(final Path javaFile) throws Exception {
+    return Files.size(javaFile) * ParsePipeline.HEAP_PER_SOURCE_BYTE;
+  }
+
+  @Test
+  public void testBudget() throws Exception {
+    List<Path> javaFiles = this.javaFiles();
+    // room for two java files and a half
+    ParsePipeline pipeline = this.pipeline(cost(javaFiles.get(0)) * 5 / 2);
+    for (int i = 0; i < NUM_FILES; i++) {
+      pipeline.add(ParsePipeline.job("C" + i, javaFiles.get(i)));
+    }
+
+    StatementAnalyzer analyzer = new StatementAnalyzer();
+    for (int i = 0; i < NUM_FILES; i++) {
+      assertTrue(pipeline.hasNext());
+      ParsePipeline.Job job = pipeline.next();
+      assertEquals("C" + i, job.clazz);
+      assertEquals(analyzer.analyze(javaFiles.get(i).toFile()), job.await(0));
+      pipeline.done(job);
+    }
+    assertFalse(pipeline.hasNext());
+    assertEquals(2, pipeline.getPeakFiles());
+    assertEquals(2 * cost(javaFiles.get(0)), pipeline.getPeakUsed());
+  }
+
+  @Test
+  public void testNextFileIsAlwaysParsed() throws Exception {
+    List<Path> javaFiles = this.javaFiles();
+    ParsePipeline pipeline = this.pipeline(1);
+
+    // submitted while the budget is free, even if the java file alone exceeds it
+    ParsePipeline.Job first = ParsePipeline.job("C0", javaFiles.get(0));
+    assertTrue(pipeline.trySubmit(first));
+    ParsePipeline.Job second = ParsePipeline.job("C1", javaFiles.get(1));
+    assertFalse(pipeline.trySubmit(second));
+
+    pipeline.add(first);
+    pipeline.add(second);
+    assertEquals(first, pipeline.next());
+    pipeline.done(first);
+    assertEquals(second, pipeline.next());
+    assertEquals(1, second.await(0).size());
+    pipeline.done(second);
+    assertEquals(1, pipeline.getPeakFiles());
+  }
+
+  @Test
+  public void testTimedOutFileKeepsItsBudget() throws Exception {
+    // far too large to be parsed in 1 ms
+    StringBuilder source = new StringBuilder("class Large {\n");
+    for (int i = 0; i < 200000; i++) {
+      source.append("  int f").append(i).append(" = ").append(i).append(" + 1;\n");
+    }
+    source.append("}\n");
+    File javaFile = this.tmp.newFile("Large.java");
+    Files.write(javaFile.toPath(), source.toString().getBytes(StandardCharsets.UTF_8));
+
+    ParsePipeline pipeline = this.pipeline(1);
+    pipeline.add(ParsePipeline.job("Large", javaFile.toPath()));
+    ParsePipeline.Job job = pipeline.next();
+    try {
+      job.await(1);
+      fail("Large.java should have timed out");
+    } catch (TimeoutException e) {
+      // expected
+    }
+    pipeline.timedOut(job);
+    pipeline.done(job);
+
+    // the budget is released, and the extra thread removed, only once the task has ended
+    ThreadPoolExecutor pool = (ThreadPoolExecutor) this.executor;
+    long used = pipeline.getUsed();
+    int poolSize = pool.getCorePoolSize();
+    if (job.isParsing()) {
+      assertEquals(cost(javaFile.toPath()), used);
+      assertEquals(3, poolSize);
+    }
+    long deadline = System.currentTimeMillis() + 60000;
+    while ((pipeline.getUsed() != 0 || pool.getCorePoolSize() != 2)
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, pipeline.getUsed());
+    assertEquals(2, pool.getCorePoolSize());
+    assertEquals(2, pool.getMaximumPoolSize());
+  }
+}
@@ -0,0 +1,233 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.commands;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import com.gzoltar.locstostms.CommandParser;
+import com.gzoltar.locstostms.ResourcesUtil;
+import com.gzoltar.locstostms.sources.SourceIndex;
+
+public class TestServe {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private String request(final File outputFile, final String... options) throws Exception {
+    StringBuilder sb = new StringBuilder("locstostms Fields MethodArguments --srcDirs \"");
+    sb.append(ResourcesUtil.getFile("examples").getAbsolutePath());
+    sb.append("\" --outputFile \"").append(outputFile.getAbsolutePath()).append('"');
+    for (String option : options) {
+      sb.append(' ').append(option);
+    }
+    return sb.append('\n').toString();
+  }
+
+  private static String serve(final Serve.Daemon daemon, final String requests,
+      final boolean shutdown) throws Exception {
+    ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+    PrintStream out = new PrintStream(stdout);
+    assertEquals(shutdown,
+        daemon.serve(new BufferedReader(new StringReader(requests)), out));
+    return stdout.toString();
+  }
+
+  @Test
+  public void testRequestsShareCache() throws Exception {
+    File expected = this.tmp.newFile();
+    LocsToStms command = new LocsToStms();
+    new CommandParser(command).parseArgument("Fields", "MethodArguments",
+        "--srcDirs", ResourcesUtil.getFile("examples").getAbsolutePath(), "--outputFile",
+        expected.getAbsolutePath());
+    assertEquals(0, command.execute(new PrintStream(new ByteArrayOutputStream()),
+        new PrintStream(new ByteArrayOutputStream())));
+
+    File first = this.tmp.newFile();
+    File second = this.tmp.newFile();
+    try (Serve.Daemon daemon = new Serve.Daemon(2, 10)) {
+      String stdout = serve(daemon, this.request(first) + "\n" + this.request(second), false);
+      assertTrue(stdout.contains("* Cache: 0 hits, 2 misses\n"));
+      assertTrue(stdout.contains("* Cache: 2 hits, 0 misses\n"));
+      assertTrue(stdout.endsWith("exit 0\n"));
+      assertEquals(2, stdout.split("exit 0\n").length);
+      assertEquals(2, daemon.getMemory().size());
+    }
+    assertArrayEquals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(first.toPath()));
+    assertArrayEquals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(second.toPath()));
+  }
+
+  @Test
+  public void testCacheIsBounded() throws Exception {
+    try (Serve.Daemon daemon = new Serve.Daemon(1, 1)) {
+      serve(daemon, this.request(this.tmp.newFile()), false);
+      assertEquals(1, daemon.getMemory().size());
+    }
+  }
+
+  @Test
+  public void testFailedRequests() throws Exception {
+    try (Serve.Daemon daemon = new Serve.Daemon(1, 0)) {
+      String stdout = serve(daemon, "--noSuchOption\n"
+          + this.request(this.tmp.newFile(), "--encoding", "no-such-charset")
+          + this.request(this.tmp.newFile(), "--quiet"), false);
+      assertTrue(stdout.contains("* Invalid request: "));
+      // the output of a quiet request is only its exit code
+      assertTrue(stdout.endsWith("Unsupported encoding: no-such-charset\nexit -1\nexit 0\n"));
+    }
+  }
+
+  @Test
+  public void testSourcesAreShared() throws Exception {
+    File srcDir = this.tmp.newFolder("src");
+    File foo = new File(srcDir, "Foo.java");
+    Files.write(foo.toPath(), "class Foo {}\n".getBytes(StandardCharsets.UTF_8));
+    String request = "Foo Bar --srcDirs \"" + srcDir.getAbsolutePath() + "\" --outputFile \""
+        + this.tmp.newFile().getAbsolutePath() + "\"\n";
+
+    try (Serve.Daemon daemon = new Serve.Daemon(1, 0)) {
+      String stdout = serve(daemon, request, false);
+      assertTrue(stdout.contains("* Class not found: Bar\n"));
+      List<File> srcDirs = Arrays.asList(srcDir);
+      SourceIndex sources = daemon.sources(srcDirs);
+      assertEquals(1, sources.size());
+
+      // the index is reused, but java files are looked up again
+      Files.move(foo.toPath(), new File(srcDir, "Bar.java").toPath());
+      stdout = serve(daemon, request, false);
+      assertTrue(stdout.contains("* Class not found: Foo\n"));
+      assertFalse(stdout.contains("* Class not found: Bar\n"));
+      assertSame(sources, daemon.sources(srcDirs));
+    }
+  }
+
+  @Test
+  public void testThreadsOfRequestsAreIgnored() throws Exception {
+    try (Serve.Daemon daemon = new Serve.Daemon(1, 0)) {
+      String stdout = serve(daemon,
+          this.request(this.tmp.newFile(), "--threads", "4", "--executor=platform"), false);
+      assertTrue(stdout.contains("* Ignoring --threads, "));
+      assertTrue(stdout.contains("* Ignoring --executor, "));
+      assertTrue(stdout.endsWith("exit 0\n"));
+    }
+  }
+
+  @Test
+  public void testShutdown() throws Exception {
+    try (Serve.Daemon daemon = new Serve.Daemon(1, 0)) {
+      String stdout = serve(daemon, "\n" + Serve.SHUTDOWN + "\n" + Serve.SHUTDOWN + "\n", true);
+      assertEquals("exit 0\n", stdout);
+      assertFalse(serve(daemon, "", false).contains("exit"));
+    }
+  }
+
+  @Test
+  public void testSplit() {
+    assertEquals(Arrays.asList("a", "b c", "d", ""), Serve.split("  a \"b c\"\td \"\" "));
+    assertEquals(Arrays.asList(), Serve.split("   "));
+  }
+
+  /**
+   * Sends requests on a new connection and returns the responses.
+   */
+  private static String connect(final int port, final String requests) throws Exception {
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+      Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+      out.write(requests);
+      out.flush();
+      socket.shutdownOutput();
+      BufferedReader in = new BufferedReader(
+          new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+      StringBuilder responses = new StringBuilder();
+      String line;
+      while ((line = in.readLine()) != null) {
+        responses.append(line).append('\n');
+      }
+      return responses.toString();
+    }
+  }
+
+  @Test
+  public void testConnectionsRequireToken() throws Exception {
+    final File tokenFile = new File(this.tmp.getRoot(), "serve.token");
+    final Serve serve = new Serve();
+    new CommandParser(serve).parseArgument("--port", "0", "--threads", "1", "--tokenFile",
+        tokenFile.getAbsolutePath());
+    final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+    final PrintStream out = new PrintStream(stdout, true);
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          serve.execute(out, out);
+        } catch (Exception e) {
+          e.printStackTrace(out);
+        }
+      }
+    });
+    thread.start();
+
+    Pattern listening = Pattern.compile("\\* Listening on [^:]+:(\\d+)\n");
+    long deadline = System.currentTimeMillis() + 10000;
+    String output = stdout.toString();
+    while (!listening.matcher(output).find() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+      output = stdout.toString();
+    }
+    Matcher matcher = listening.matcher(output);
+    assertTrue(output, matcher.find());
+    int port = Integer.parseInt(matcher.group(1));
+
+    String token = new String(Files.readAllBytes(tokenFile.toPath()), StandardCharsets.UTF_8);
+    assertEquals(64 + 1, token.length());
+    if (Files.getFileStore(tokenFile.toPath()).supportsFileAttributeView("posix")) {
+      assertEquals(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE),
+          Files.getPosixFilePermissions(tokenFile.toPath()));
+    }
+
+    assertEquals("* Unauthorized\n", connect(port, Serve.SHUTDOWN + "\n"));
+    assertEquals("* Unauthorized\n", connect(port, "wrong\n" + Serve.SHUTDOWN + "\n"));
+    assertEquals("exit 0\n", connect(port, token + Serve.SHUTDOWN + "\n"));
+
+    thread.join(10000);
+    assertFalse(thread.isAlive());
+    assertFalse(tokenFile.exists());
+  }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.output;
+
+import static org.junit.Assert.fail;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Helpers to corrupt files written by the writers of this package, which all start with
+ * <code>MAGIC VERSION</code> and end with the trailer <code>int64(offset of table) MAGIC</code>.
+ */
+public final class OutputFilesUtil {
+
+  /**
+   * Loads a file, e.g., with <code>LineIndex.load</code>.
+   */
+  public interface Loader {
+    void load(File file) throws IOException;
+  }
+
+  /**
+   * Returns the offset of the table of a file.
+   * 
+   * @param content content of a file written by a writer of this package
+   * @return offset of the table
+   */
+  public static int tableOffset(final byte[] content) {
+    return (int) ByteBuffer.wrap(content).getLong(content.length - 12);
+  }
+
+  /**
+   * Replaces bytes of the content of a file, e.g., a variable-length integer by a longer one. The
+   * trailer (and thus the offset of the table) is kept.
+   * 
+   * @param content content of a file
+   * @param offset offset of the bytes to replace
+   * @param length number of bytes to replace
+   * @param bytes new bytes
+   * @return the new content
+   */
+  public static byte[] replace(final byte[] content, final int offset, final int length,
+      final byte[] bytes) {
+    byte[] replaced = new byte[content.length - length + bytes.length];
+    System.arraycopy(content, 0, replaced, 0, offset);
+    System.arraycopy(bytes, 0, replaced, offset, bytes.length);
+    System.arraycopy(content, offset + length, replaced, offset + bytes.length,
+        content.length - offset - length);
+    return replaced;
+  }
+
+  /**
+   * Writes a corrupted copy of a file next to it.
+   * 
+   * @param file the original file
+   * @param content content of the copy
+   * @return the copy
+   * @throws IOException if the copy cannot be written
+   */
+  public static File corrupt(final File file, final byte[] content) throws IOException {
+    File copy = File.createTempFile("corrupt", ".tmp", file.getParentFile());
+    Files.write(copy.toPath(), content);
+    return copy;
+  }
+
+  /**
+   * Asserts that a loader rejects the usual corruptions of a valid file: truncations, a wrong
+   * magic number (in the header or in the trailer), an unsupported version, an offset of the table
+   * out of range, and the text output of the <code>locstostms</code> command.
+   * 
+   * @param loader loads a file
+   * @param file a valid file
+   * @throws IOException if the corrupted files cannot be written
+   */
+  public static void assertRejectsMalformedFiles(final Loader loader, final File file)
+      throws IOException {
+    byte[] content = Files.readAllBytes(file.toPath());
+    int length = content.length;
+
+    for (int truncated : new int[] {0, 4, 19, length / 2, length - 12, length - 1}) {
+      assertMalformed(loader, corrupt(file, Arrays.copyOf(content, truncated)));
+    }
+    // magic number, version, magic number of the trailer
+    for (int offset : new int[] {0, 4, length - 4}) {
+      ByteBuffer corrupted = ByteBuffer.wrap(content.clone());
+      corrupted.putInt(offset, corrupted.getInt(offset) + 1);
+      assertMalformed(loader, corrupt(file, corrupted.array()));
+    }
+    for (long tableOffset : new long[] {-1L, 0L, 7L, length - 11, length, Long.MAX_VALUE}) {
+      ByteBuffer corrupted = ByteBuffer.wrap(content.clone());
+      corrupted.putLong(length - 12, tableOffset);
+      assertMalformed(loader, corrupt(file, corrupted.array()));
+    }
+    assertMalformed(loader,
+        corrupt(file, "Foo.java#1:Foo.java#2\n".getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Asserts that a loader rejects a file whose table starts with corrupted int32 counts (e.g.,
+   * the number of files), either negative or larger than the file.
+   * 
+   * @param loader loads a file
+   * @param file a valid file
+   * @param numCounts number of int32 counts at the beginning of the table
+   * @throws IOException if the corrupted files cannot be written
+   */
+  public static void assertRejectsCorruptCounts(final Loader loader, final File file,
+      final int numCounts) throws IOException {
+    byte[] content = Files.readAllBytes(file.toPath());
+    int table = tableOffset(content);
+    for (int count = 0; count < numCounts; count++) {
+      for (int value : new int[] {-1, 1000, Integer.MAX_VALUE}) {
+        ByteBuffer corrupted = ByteBuffer.wrap(content.clone());
+        corrupted.putInt(table + 4 * count, value);
+        assertMalformed(loader, corrupt(file, corrupted.array()));
+      }
+    }
+  }
+
+  /**
+   * Asserts that loading a file fails with an {@link IOException} (and not, e.g., with a
+   * {@link NegativeArraySizeException} or an {@link OutOfMemoryError}).
+   * 
+   * @param loader loads the file
+   * @param file a malformed file
+   */
+  public static void assertMalformed(final Loader loader, final File file) {
+    try {
+      loader.load(file);
+      fail(file.getName() + " should be malformed");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+}
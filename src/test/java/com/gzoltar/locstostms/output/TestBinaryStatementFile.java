@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import com.gzoltar.locstostms.statements.StatementMap;
+
+public class TestBinaryStatementFile {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private final StatementMap foo = new StatementMap.Builder().add(2, 2).add(2, 3).add(2, 4)
+      .add(8, 8).add(10, 10).add(10, 11).build();
+
+  private final StatementMap bar =
+      new StatementMap.Builder().add(1000000, 1000000).add(1000000, 999999).build();
+
+  private static final OutputFilesUtil.Loader LOAD = new OutputFilesUtil.Loader() {
+    @Override
+    public void load(final File file) throws IOException {
+      BinaryStatementFile.load(file);
+    }
+  };
+
+  private static final OutputFilesUtil.Loader MAP = new OutputFilesUtil.Loader() {
+    @Override
+    public void load(final File file) throws IOException {
+      BinaryStatementFile.map(file);
+    }
+  };
+
+  private static final OutputFilesUtil.Loader UPDATE = new OutputFilesUtil.Loader() {
+    @Override
+    public void load(final File file) throws IOException {
+      new BinaryStatementUpdater(file).close();
+    }
+  };
+
+  private File write() throws IOException {
+    File file = this.tmp.newFile();
+    StatementWriter writer = OutputFormat.BINARY.open(file);
+    writer.write("org.foo.Foo", this.foo);
+    writer.write("Bar", this.bar);
+    writer.write("org.foo.Empty", StatementMap.EMPTY);
+    writer.close();
+
+    assertEquals(this.foo.pairs() + this.bar.pairs(), writer.getRows());
+    assertEquals(file.length(), writer.getBytes());
+    return file;
+  }
+
+  private void check(final BinaryStatementFile file) throws IOException {
+    assertEquals(3, file.size());
+    assertEquals("org/foo/Foo.java", file.path(0));
+    assertEquals("Bar.java", file.path(1));
+    assertEquals(2, file.indexOf("org/foo/Empty.java"));
+    assertEquals(-1, file.indexOf("org/foo/Missing.java"));
+    // paths are matched exactly
+    assertEquals(-1, file.indexOf("Foo.java"));
+    assertNull(file.statements("org/foo/Foo"));
+
+    assertEquals(this.foo, file.statements(0));
+    assertEquals(this.bar, file.statements("Bar.java"));
+    assertEquals(StatementMap.EMPTY, file.statements(2));
+    assertNull(file.statements("org/foo/Missing.java"));
+  }
+
+  @Test
+  public void testLoad() throws IOException {
+    this.check(BinaryStatementFile.load(this.write()));
+  }
+
+  @Test
+  public void testMap() throws IOException {
+    this.check(BinaryStatementFile.map(this.write()));
+  }
+
+  @Test
+  public void testUpdate() throws IOException {
+    File file = this.write();
+    StatementMap baz = new StatementMap.Builder().add(5, 5).add(5, 6).build();
+
+    BinaryStatementUpdater updater = new BinaryStatementUpdater(file);
+    updater.remove("Bar");
+    updater.write("Baz", baz);
+    updater.write("org.foo.Foo", this.bar);
+    updater.close();
+    assertEquals(1, updater.getRemoved());
+    assertEquals(1, updater.getCopied());
+    assertEquals(file.length(), updater.getBytes());
+
+    // sections of the existing file are merged in ascending order
+    BinaryStatementFile updated = BinaryStatementFile.load(file);
+    assertEquals(3, updated.size());
+    assertEquals("Baz.java", updated.path(0));
+    assertEquals(baz, updated.statements(0));
+    assertEquals("org/foo/Foo.java", updated.path(1));
+    assertEquals(this.bar, updated.statements(1));
+    assertEquals("org/foo/Empty.java", updated.path(2));
+    assertEquals(StatementMap.EMPTY, updated.statements(2));
+    assertEquals(1, this.tmp.getRoot().list().length);
+  }
+
+  @Test
+  public void testUpdateKeepsPermissions() throws IOException {
+    File file = this.write();
+    // e.g., left behind by an update that crashed, or used by a concurrent update
+    File leftover = new File(file.getParentFile(), "." + file.getName() + ".tmp");
+    assertTrue(leftover.mkdir());
+    boolean posix = Files.getFileStore(file.toPath()).supportsFileAttributeView("posix");
+    if (posix) {
+      Files.setPosixFilePermissions(file.toPath(), PosixFilePermissions.fromString("rw-r-----"));
+    }
+
+    BinaryStatementUpdater updater = new BinaryStatementUpdater(file);
+    updater.remove("Bar");
+    updater.close();
+
+    assertEquals(2, BinaryStatementFile.load(file).size());
+    assertTrue(leftover.isDirectory());
+    assertEquals(2, this.tmp.getRoot().list().length);
+    if (posix) {
+      assertEquals(PosixFilePermissions.fromString("rw-r-----"),
+          Files.getPosixFilePermissions(file.toPath()));
+    }
+  }
+
+  @Test
+  public void testMalformedFiles() throws IOException {
+    File file = this.write();
+    OutputFilesUtil.assertRejectsMalformedFiles(LOAD, file);
+    OutputFilesUtil.assertRejectsMalformedFiles(MAP, file);
+    OutputFilesUtil.assertRejectsMalformedFiles(UPDATE, file);
+  }
+
+  @Test
+  public void testCorruptCounts() throws IOException {
+    File file = this.write();
+    byte[] content = Files.readAllBytes(file.toPath());
+    // #files, #bytes of the first path and offset of its section (after the 16 bytes of
+    // org/foo/Foo.java), all single-byte varints
+    for (int field : new int[] {0, 1, 2 + 16}) {
+      for (int value : new int[] {-1, 1000, Integer.MAX_VALUE}) {
+        ByteBuffer varint = ByteBuffer.allocate(BinaryFormat.MAX_VARINT_LENGTH);
+        BinaryFormat.putVarint(varint, value);
+        File corrupted = OutputFilesUtil.corrupt(file,
+            OutputFilesUtil.replace(content, OutputFilesUtil.tableOffset(content) + field, 1,
+                Arrays.copyOf(varint.array(), varint.position())));
+        OutputFilesUtil.assertMalformed(LOAD, corrupted);
+        OutputFilesUtil.assertMalformed(MAP, corrupted);
+        OutputFilesUtil.assertMalformed(UPDATE, corrupted);
+      }
+    }
+  }
+}
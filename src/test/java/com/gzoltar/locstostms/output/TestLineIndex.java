@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import com.gzoltar.locstostms.statements.StatementMap;
+
+public class TestLineIndex {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  // statement 2 spans lines 2-6 and contains statement 4, which spans lines 4-5
+  private final StatementMap foo = new StatementMap.Builder().add(2, 2).add(2, 3).add(2, 4)
+      .add(2, 5).add(2, 6).add(4, 4).add(4, 5).add(8, 8).add(10, 10).add(10, 11).build();
+
+  private final StatementMap bar = new StatementMap.Builder().add(3, 2).add(3, 3).build();
+
+  private static final OutputFilesUtil.Loader LOAD = new OutputFilesUtil.Loader() {
+    @Override
+    public void load(final File file) throws IOException {
+      LineIndex.load(file);
+    }
+  };
+
+  private File write() throws IOException {
+    File file = this.tmp.newFile();
+    StatementWriter writer = OutputFormat.INDEX.open(file);
+    writer.write("org.foo.Foo", this.foo);
+    writer.write("Bar", this.bar);
+    writer.write("org.foo.Empty", StatementMap.EMPTY);
+    writer.close();
+
+    assertEquals(11 + 3, writer.getRows());
+    assertEquals(file.length(), writer.getBytes());
+    return file;
+  }
+
+  @Test
+  public void testLoad() throws IOException {
+    LineIndex index = LineIndex.load(this.write());
+    assertEquals(3, index.size());
+    assertEquals("org/foo/Foo.java", index.path(0));
+    assertEquals(1, index.id("Bar.java"));
+    assertEquals(2, index.id("org/foo/Empty.java"));
+    assertEquals(-1, index.id("org/foo/Missing.java"));
+
+    int foo = index.id("org/foo/Foo.java");
+    assertEquals(11, index.lineCount(foo));
+    int[] expected = {-1, 2, 2, 4, 4, 2, -1, 8, -1, 10, 10, -1};
+    for (int line = 1; line <= expected.length; line++) {
+      assertEquals("line " + line, expected[line - 1], index.statement(foo, line));
+    }
+    assertEquals(LineIndex.NO_STATEMENT, index.statement(foo, 0));
+    assertEquals(LineIndex.NO_STATEMENT, index.statement(foo, -1));
+    assertEquals(LineIndex.NO_STATEMENT, index.statement(foo, expected.length + 1));
+    assertEquals(LineIndex.NO_STATEMENT, index.statement(foo, Integer.MAX_VALUE));
+
+    assertEquals(3, index.lineCount(1));
+    assertEquals(3, index.statement("Bar.java", 2));
+    assertEquals(3, index.statement("Bar.java", 3));
+    assertEquals(LineIndex.NO_STATEMENT, index.statement("Bar.java", 1));
+
+    assertEquals(0, index.lineCount(2));
+    assertEquals(LineIndex.NO_STATEMENT, index.statement(2, 1));
+    assertEquals(LineIndex.NO_STATEMENT, index.statement("org/foo/Missing.java", 1));
+    // paths are matched exactly
+    assertEquals(-1, index.id("Foo.java"));
+    assertEquals(-1, index.id("org/foo/Foo"));
+    assertEquals(LineIndex.NO_STATEMENT, index.statement("Foo.java", 2));
+  }
+
+  @Test
+  public void testBuilder() throws IOException {
+    File file = this.write();
+    assertTrue(LineIndex.isIndex(file));
+    LineIndex loaded = LineIndex.load(file);
+    LineIndex built = new LineIndex.Builder().add("org/foo/Foo.java", this.foo)
+        .add("Bar.java", this.bar).add("org/foo/Empty.java", StatementMap.EMPTY).build();
+
+    assertEquals(loaded.size(), built.size());
+    for (int id = 0; id < loaded.size(); id++) {
+      assertEquals(loaded.path(id), built.path(id));
+      assertEquals(loaded.lineCount(id), built.lineCount(id));
+      for (int line = 0; line <= loaded.lineCount(id) + 1; line++) {
+        assertEquals(loaded.statement(id, line), built.statement(id, line));
+      }
+    }
+  }
+
+  @Test
+  public void testMalformedFiles() throws IOException {
+    OutputFilesUtil.assertRejectsMalformedFiles(LOAD, this.write());
+  }
+
+  @Test
+  public void testCorruptCounts() throws IOException {
+    // #files, #lines of the first java file and #bytes of its path
+    OutputFilesUtil.assertRejectsCorruptCounts(LOAD, this.write(), 3);
+  }
+
+  @Test
+  public void testNotAnIndex() throws IOException {
+    File file = this.tmp.newFile();
+    assertFalse(LineIndex.isIndex(file));
+    Files.write(file.toPath(), "Foo.java#1:Foo.java#2\n".getBytes("UTF-8"));
+    assertFalse(LineIndex.isIndex(file));
+  }
+
+  @Test(expected = IOException.class)
+  public void testBinaryFileIsNotAnIndex() throws IOException {
+    File file = this.tmp.newFile();
+    StatementWriter writer = OutputFormat.BINARY.open(file);
+    writer.write("Bar", this.bar);
+    writer.close();
+    LineIndex.load(file);
+  }
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.output;
+
+import static org.junit.Assert.assertEquals;
+import java.io.File;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import com.gzoltar.locstostms.statements.StatementKind;
+import com.gzoltar.locstostms.statements.StatementMap;
+import com.gzoltar.locstostms.statements.StatementSpans;
+
+public class TestSpanIndex {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  // three spans, so that the kinds of the next java file are preceded by a byte of padding
+  private final StatementSpans foo = new StatementSpans.Builder()
+      .add(StatementKind.METHOD, 2, 3, 6, 3).add(StatementKind.IF, 3, 5, 5, 5)
+      .add(StatementKind.RETURN, 4, 7, 4, 15).build();
+
+  private final StatementSpans bar = new StatementSpans.Builder()
+      .add(StatementKind.FIELD, 1, 14, 1, 23).add(StatementKind.VARIABLE, 1, 18, 1, 22)
+      .add((byte) 127, 3, 1, 3, 2).add(StatementKind.EXPRESSION, 7, 5, 9, 8)
+      .add(StatementKind.WHILE, 10, 1, 12, 1).build();
+
+  private static final OutputFilesUtil.Loader LOAD = new OutputFilesUtil.Loader() {
+    @Override
+    public void load(final File file) throws IOException {
+      SpanIndex.load(file);
+    }
+  };
+
+  private File write() throws IOException {
+    File file = this.tmp.newFile();
+    SpanIndexWriter writer = new SpanIndexWriter(file);
+    writer.write("org.foo.Foo", this.foo);
+    writer.write("org.foo.Empty", StatementSpans.EMPTY);
+    writer.write("Bar", this.bar);
+    writer.close();
+
+    assertEquals(3 + 5, writer.getRows());
+    assertEquals(file.length(), writer.getBytes());
+    return file;
+  }
+
+  @Test
+  public void testLoad() throws IOException {
+    SpanIndex index = SpanIndex.load(this.write());
+    assertEquals(3, index.size());
+    assertEquals("org/foo/Foo.java", index.path(0));
+    assertEquals(1, index.id("org/foo/Empty.java"));
+    assertEquals(2, index.id("Bar.java"));
+    assertEquals(-1, index.id("org/foo/Missing.java"));
+    // paths are matched exactly
+    assertEquals(-1, index.id("Foo.java"));
+    assertEquals(-1, index.id("org/foo/Foo"));
+
+    assertEquals(this.foo, index.spans(0));
+    assertEquals(StatementSpans.EMPTY, index.spans(1));
+    assertEquals(this.bar, index.spans(2));
+
+    int bar = index.id("Bar.java");
+    assertEquals(5, index.spanCount(bar));
+    int span = index.first(bar) + 3;
+    assertEquals(StatementKind.EXPRESSION, index.kind(span));
+    assertEquals(7, index.beginLine(span));
+    assertEquals(5, index.beginColumn(span));
+    assertEquals(9, index.endLine(span));
+    assertEquals(8, index.endColumn(span));
+    // kinds unknown to this version
+    assertEquals(StatementKind.OTHER, index.kind(index.first(bar) + 2));
+
+    assertEquals(0, index.spanCount(1));
+    assertEquals(index.first(2), index.first(1));
+    assertEquals(3 + 5, index.first(index.size()));
+  }
+
+  @Test
+  public void testMalformedFiles() throws IOException {
+    OutputFilesUtil.assertRejectsMalformedFiles(LOAD, this.write());
+  }
+
+  @Test
+  public void testCorruptCounts() throws IOException {
+    // #files, #spans of the first java file and #bytes of its path
+    OutputFilesUtil.assertRejectsCorruptCounts(LOAD, this.write(), 3);
+  }
+
+  @Test(expected = IOException.class)
+  public void testLineIndexIsNotASpanIndex() throws IOException {
+    File file = this.tmp.newFile();
+    StatementWriter writer = OutputFormat.INDEX.open(file);
+    writer.write("Bar", new StatementMap.Builder().add(3, 2).add(3, 3).build());
+    writer.close();
+    SpanIndex.load(file);
+  }
+}
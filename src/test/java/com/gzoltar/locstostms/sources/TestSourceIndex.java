@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.sources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestSourceIndex {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private File zip(final String name, final String... entries) throws Exception {
+    File archive = this.tmp.newFile(name);
+    try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive))) {
+      for (String entry : entries) {
+        zip.putNextEntry(new ZipEntry(entry));
+        zip.write(("// " + name + "\n").getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+      }
+    }
+    return archive;
+  }
+
+  @Test
+  public void testArchive() throws Exception {
+    File archive = this.zip("foo-sources.jar", "org/foo/", "org/foo/Bar.java",
+        "org/foo/package-info.txt", "Baz.java");
+    assertTrue(SourceIndex.isArchive(archive));
+    assertFalse(SourceIndex.isArchive(this.tmp.getRoot()));
+
+    try (SourceIndex index = SourceIndex.build(Arrays.asList(archive))) {
+      assertEquals(2, index.size());
+      assertNull(index.find("org.foo.package-info"));
+
+      Path bar = index.find("org.foo.Bar");
+      assertTrue(SourceIndex.toString(bar).startsWith("jar:"));
+      assertTrue(SourceIndex.toString(bar).endsWith("/org/foo/Bar.java"));
+
+      SourceReader reader = new SourceReader(StandardCharsets.UTF_8);
+      reader.read(bar);
+      assertEquals("// foo-sources.jar\n", reader.decode().toString());
+      reader.read(index.find("Baz"));
+      assertEquals("// foo-sources.jar\n", reader.decode().toString());
+    }
+  }
+
+  @Test
+  public void testFirstRootWins() throws Exception {
+    File srcDir = this.tmp.newFolder("src");
+    File dirBar = new File(srcDir, "Bar.java");
+    Files.write(dirBar.toPath(), "// src\n".getBytes(StandardCharsets.UTF_8));
+    File archive = this.zip("bar.zip", "Bar.java", "Qux.java");
+
+    try (SourceIndex index = SourceIndex.build(Arrays.asList(srcDir, archive))) {
+      assertEquals(2, index.size());
+      assertEquals(dirBar.getAbsolutePath(), SourceIndex.toString(index.find("Bar")));
+      assertTrue(SourceIndex.toString(index.find("Qux")).startsWith("jar:"));
+    }
+  }
+
+  @Test
+  public void testOpen() throws Exception {
+    File srcDir = this.tmp.newFolder("src");
+    File dirBar = new File(srcDir, "org/foo/Bar.java");
+    dirBar.getParentFile().mkdirs();
+    Files.write(dirBar.toPath(), "// src\n".getBytes(StandardCharsets.UTF_8));
+    Files.write(new File(srcDir, "Other.java").toPath(),
+        "// src\n".getBytes(StandardCharsets.UTF_8));
+    File archive = this.zip("bar.zip", "org/foo/Bar.java", "Qux.java", "Unused.java");
+
+    try (SourceIndex index = SourceIndex.open(Arrays.asList(srcDir, archive))) {
+      // source roots are not walked, classes are only looked up on demand
+      assertEquals(0, index.size());
+      assertEquals(dirBar.getAbsolutePath(), SourceIndex.toString(index.find("org.foo.Bar")));
+      assertTrue(SourceIndex.toString(index.find("Qux")).startsWith("jar:"));
+      assertNull(index.find("Missing"));
+      assertNull(index.find("..src.Other"));
+      assertEquals(2, index.size());
+
+      // a deleted java file is looked up again, in the next source roots
+      Files.delete(dirBar.toPath());
+      assertTrue(SourceIndex.toString(index.find("org.foo.Bar")).startsWith("jar:"));
+    }
+  }
+}
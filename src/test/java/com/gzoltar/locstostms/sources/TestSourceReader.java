@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.sources;
+
+import static org.junit.Assert.assertEquals;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestSourceReader {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private File write(final byte[] content) throws Exception {
+    File file = this.tmp.newFile();
+    Files.write(file.toPath(), content);
+    return file;
+  }
+
+  @Test
+  public void testDecode() throws Exception {
+    String source = "class A {\n  String s = \"café\";\n}\n";
+    SourceReader reader = new SourceReader(StandardCharsets.ISO_8859_1);
+    ByteBuffer bytes = reader.read(this.write(source.getBytes(StandardCharsets.ISO_8859_1)));
+    assertEquals(source.length(), bytes.remaining());
+    assertEquals(source, reader.decode().toString());
+  }
+
+  @Test
+  public void testMalformedInputIsReplaced() throws Exception {
+    SourceReader reader = new SourceReader(StandardCharsets.UTF_8);
+    reader.read(this.write(new byte[] {'a', (byte) 0xFF, 'b'}));
+    assertEquals("a�b", reader.decode().toString());
+  }
+
+  @Test
+  public void testReaderIsReusable() throws Exception {
+    // larger than the initial buffers, followed by a smaller and an empty file
+    char[] large = new char[200 * 1024];
+    Arrays.fill(large, 'x');
+    String[] sources = {new String(large), "class B {}\n", ""};
+
+    SourceReader reader = new SourceReader(StandardCharsets.UTF_8);
+    for (String source : sources) {
+      ByteBuffer bytes = reader.read(this.write(source.getBytes(StandardCharsets.UTF_8)));
+      assertEquals(source.length(), bytes.remaining());
+      assertEquals(source, reader.decode().toString());
+    }
+  }
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.statements;
+
+import static org.junit.Assert.assertEquals;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseException;
+import com.gzoltar.locstostms.ResourcesUtil;
+
+public class TestStatementAnalyzer {
+
+  private static final String[] EXAMPLES = {"Annotation", "ClassDefinition", "Comments",
+      "EnumDeclaration", "Fields", "ForLoop", "IfCondition", "MethodArguments", "WhileLoop"};
+
+  private static StatementMap expected(final File javaFile) throws Exception {
+    return StatementExplorer.explore(
+        JavaParser.parse(new ByteArrayInputStream(Files.readAllBytes(javaFile.toPath()))));
+  }
+
+  /**
+   * Collects the lines received by a sink back into a map of statements.
+   */
+  private static final class Collector implements StatementSink {
+
+    private final StatementMap.Builder builder = new StatementMap.Builder();
+
+    private final List<String> files = new ArrayList<String>();
+
+    @Override
+    public void line(final String file, final int statement, final int line) {
+      if (this.files.isEmpty() || !this.files.get(this.files.size() - 1).equals(file)) {
+        this.files.add(file);
+      }
+      this.builder.add(statement, line);
+    }
+  }
+
+  @Test
+  public void testEngines() throws Exception {
+    for (Engine engine : Engine.values()) {
+      StatementAnalyzer analyzer = new StatementAnalyzer(engine, StandardCharsets.UTF_8);
+      for (String example : EXAMPLES) {
+        File javaFile = ResourcesUtil.getFile("examples/" + example + ".java");
+        StatementMap expected = expected(javaFile);
+        assertEquals(expected, analyzer.analyze(javaFile));
+        assertEquals(expected, analyzer.analyze(
+            new String(Files.readAllBytes(javaFile.toPath()), StandardCharsets.UTF_8)));
+      }
+    }
+  }
+
+  @Test
+  public void testSink() throws Exception {
+    StatementAnalyzer analyzer = new StatementAnalyzer();
+
+    File javaFile = ResourcesUtil.getFile("examples/MethodArguments.java");
+    Collector collector = new Collector();
+    analyzer.analyze(javaFile, collector);
+    assertEquals(Arrays.asList(javaFile.getPath()), collector.files);
+    assertEquals(expected(javaFile), collector.builder.build());
+
+    String source = "class A {\n  int a =\n      1;\n}\n";
+    collector = new Collector();
+    analyzer.analyze("A.java", new StringBuilder(source), collector);
+    assertEquals(Arrays.asList("A.java"), collector.files);
+    assertEquals(analyzer.analyze(source), collector.builder.build());
+    assertEquals(new HashSet<Integer>(Arrays.asList(2, 3)),
+        collector.builder.build().asMap().get(2));
+  }
+
+  @Test
+  public void testAnalyzerIsThreadSafe() throws Exception {
+    final StatementAnalyzer analyzer = new StatementAnalyzer();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<StatementMap>> futures = new ArrayList<Future<StatementMap>>();
+      for (int i = 0; i < 8; i++) {
+        for (String example : EXAMPLES) {
+          final File javaFile = ResourcesUtil.getFile("examples/" + example + ".java");
+          futures.add(executor.submit(new Callable<StatementMap>() {
+            @Override
+            public StatementMap call() throws Exception {
+              return analyzer.analyze(javaFile);
+            }
+          }));
+        }
+      }
+      for (int i = 0; i < futures.size(); i++) {
+        File javaFile = ResourcesUtil.getFile("examples/" + EXAMPLES[i % EXAMPLES.length]
+            + ".java");
+        assertEquals(expected(javaFile), futures.get(i).get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testEmptySource() throws Exception {
+    for (Engine engine : Engine.values()) {
+      StatementAnalyzer analyzer = new StatementAnalyzer(engine, StandardCharsets.UTF_8);
+      assertEquals(StatementMap.EMPTY, analyzer.analyze(""));
+      assertEquals(StatementMap.EMPTY, analyzer.analyze("// nothing but a comment\n"));
+    }
+  }
+
+  @Test(expected = ParseException.class)
+  public void testInvalidSource() throws Exception {
+    new StatementAnalyzer().analyze("class {");
+  }
+
+  @Test(expected = ParseException.class)
+  public void testLexicalError() throws Exception {
+    new StatementAnalyzer().analyze("class A { String s = \"unterminated\n; }");
+  }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.statements;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestStatementCache {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private final StatementMap foo =
+      new StatementMap.Builder().add(2, 2).add(2, 3).add(5, 5).add(5, 7).build();
+
+  private static File entry(final File cacheDir, final String key) {
+    return new File(new File(cacheDir, key.substring(0, 2)), key + ".stms");
+  }
+
+  @Test
+  public void testHit() throws IOException {
+    File cacheDir = this.tmp.newFolder();
+    StatementCache cache = new StatementCache(cacheDir, "test");
+    String key = cache.key("class Foo {}".getBytes(StandardCharsets.UTF_8));
+    assertNull(cache.get(key));
+
+    cache.put(key, this.foo);
+    assertEquals(this.foo, new StatementCache(cacheDir, "test").get(key));
+    // entries of another version are never used
+    StatementCache other = new StatementCache(cacheDir, "other");
+    assertNull(other.get(other.key("class Foo {}".getBytes(StandardCharsets.UTF_8))));
+  }
+
+  @Test
+  public void testCorruptedEntriesAreMisses() throws IOException {
+    File cacheDir = this.tmp.newFolder();
+    StatementCache cache = new StatementCache(cacheDir, "test");
+    String key = cache.key("class Foo {}".getBytes(StandardCharsets.UTF_8));
+    cache.put(key, this.foo);
+    File entry = entry(cacheDir, key);
+    byte[] content = Files.readAllBytes(entry.toPath());
+
+    // #statements, #lines and the line count of the first statement (after the magic number)
+    int misses = 0;
+    for (int offset : new int[] {4, 8, 16}) {
+      for (int value : new int[] {-1, 1000, Integer.MAX_VALUE}) {
+        ByteBuffer corrupted = ByteBuffer.wrap(content.clone());
+        corrupted.putInt(offset, value);
+        Files.write(entry.toPath(), corrupted.array());
+        assertNull(cache.get(key));
+        assertEquals(++misses, cache.getMisses());
+      }
+    }
+    for (int truncated : new int[] {0, 4, 10, content.length - 1}) {
+      Files.write(entry.toPath(), Arrays.copyOf(content, truncated));
+      assertNull(cache.get(key));
+      assertEquals(++misses, cache.getMisses());
+    }
+
+    // a corrupted entry is overwritten by the next put
+    cache.put(key, this.foo);
+    assertEquals(this.foo, cache.get(key));
+    assertEquals(1, cache.getHits());
+  }
+}
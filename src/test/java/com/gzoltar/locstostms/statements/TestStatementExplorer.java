@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.statements;
+
+import static org.junit.Assert.assertEquals;
+import java.io.StringReader;
+import org.junit.Test;
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.expr.BinaryExpr;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.IntegerLiteralExpr;
+import com.github.javaparser.ast.stmt.ExpressionStmt;
+
+public class TestStatementExplorer {
+
+  /**
+   * Builds <code>1 + 2 + ... + depth</code>, one literal per line, as a single statement whose
+   * binary expressions are nested <code>depth</code> levels deep.
+   */
+  private static ExpressionStmt deepStatement(final int depth) {
+    Expression expression = literal(1);
+    for (int line = 2; line <= depth; line++) {
+      Expression binary = new BinaryExpr(expression, literal(line), BinaryExpr.Operator.plus);
+      binary.setBeginLine(1);
+      binary.setEndLine(line);
+      expression = binary;
+    }
+
+    ExpressionStmt statement = new ExpressionStmt(expression);
+    statement.setBeginLine(1);
+    statement.setEndLine(depth);
+    return statement;
+  }
+
+  private static Expression literal(final int line) {
+    Expression literal = new IntegerLiteralExpr(String.valueOf(line));
+    literal.setBeginLine(line);
+    literal.setEndLine(line);
+    return literal;
+  }
+
+  @Test
+  public void testDeeplyNestedTree() {
+    final int depth = 100000;
+
+    StatementExplorer explorer = new StatementExplorer();
+    StatementMap statements = explorer.visit(deepStatement(depth));
+
+    assertEquals(1, statements.size());
+    assertEquals(1, statements.statement(0));
+    assertEquals(depth, statements.lineCount(0));
+    assertEquals(2 * depth, explorer.getVisitedNodes());
+  }
+
+  @Test
+  public void testExplorerIsReusable() {
+    StatementExplorer explorer = new StatementExplorer();
+    StatementMap first = explorer.visit(deepStatement(10));
+    StatementMap second = explorer.visit(deepStatement(10));
+    assertEquals(first, second);
+  }
+
+  @Test
+  public void testSpans() throws Exception {
+    CompilationUnit compilationUnit = JavaParser.parse(new StringReader("class A {\n"
+        + "  int f = 1;\n"
+        + "  void m(int x) {\n"
+        + "    if (x > 0) {\n"
+        + "      f = x;\n"
+        + "    }\n"
+        + "  }\n"
+        + "}\n"), true);
+
+    StatementSpans.Builder builder = new StatementSpans.Builder();
+    StatementMap statements = new StatementExplorer().visit(compilationUnit, builder);
+    assertEquals(StatementExplorer.explore(compilationUnit), statements);
+
+    StatementSpans spans = builder.build();
+    assertEquals("[CLASS 1:1-8:1, FIELD 2:3-2:12, VARIABLE 2:7-2:11, METHOD 3:3-7:3, "
+        + "BLOCK 3:17-7:3, IF 4:5-6:5, BLOCK 4:16-6:5, EXPRESSION 5:7-5:12]", spans.toString());
+    assertEquals(StatementKind.IF, spans.kind(5));
+    assertEquals(4, spans.beginLine(5));
+    assertEquals(5, spans.beginColumn(5));
+    assertEquals(6, spans.endLine(5));
+    assertEquals(5, spans.endColumn(5));
+  }
+}
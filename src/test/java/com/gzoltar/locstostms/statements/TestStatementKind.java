@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.statements;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+public class TestStatementKind {
+
+  @Test
+  public void testCodesAreStable() {
+    // codes are written to span files and must never change
+    assertEquals(0, StatementKind.ASSERT.code());
+    assertEquals(8, StatementKind.EXPRESSION.code());
+    assertEquals(21, StatementKind.VARIABLE.code());
+    assertEquals(29, StatementKind.ANNOTATION_MEMBER.code());
+    assertEquals(30, StatementKind.OTHER.code());
+
+    for (StatementKind kind : StatementKind.values()) {
+      assertSame(kind, StatementKind.of(kind.code()));
+    }
+  }
+
+  @Test
+  public void testUnknownCodes() {
+    assertSame(StatementKind.OTHER, StatementKind.of(-1));
+    assertSame(StatementKind.OTHER, StatementKind.of(31));
+    assertSame(StatementKind.OTHER, StatementKind.of(127));
+    assertSame(StatementKind.OTHER, StatementKind.of(1000));
+  }
+}
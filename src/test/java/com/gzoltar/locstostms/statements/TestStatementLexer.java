@@ -0,0 +1,219 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.statements;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.Test;
+import com.github.javaparser.JavaParser;
+import com.gzoltar.locstostms.ResourcesUtil;
+
+public class TestStatementLexer {
+
+  private static final String[] EXAMPLES = {"Annotation", "ClassDefinition", "Comments",
+      "EnumDeclaration", "Fields", "ForLoop", "IfCondition", "MethodArguments", "WhileLoop"};
+
+  /**
+   * Asserts that the lexer and JavaParser find the same statements in a java source.
+   */
+  private static void assertSameStatements(final String source) throws Exception {
+    byte[] content = source.getBytes(StandardCharsets.UTF_8);
+    StatementMap expected =
+        StatementExplorer.explore(JavaParser.parse(new ByteArrayInputStream(content)));
+    StatementMap actual = new StatementLexer().scan(source);
+
+    List<String> differences = StatementDiff.compare("javaparser", expected, "lexer", actual);
+    assertTrue(differences.toString(), differences.isEmpty());
+    assertEquals(expected, actual);
+  }
+
+  @Test
+  public void testExamples() throws Exception {
+    for (String example : EXAMPLES) {
+      File javaFile = ResourcesUtil.getFile("examples/" + example + ".java");
+      assertSameStatements(new String(Files.readAllBytes(javaFile.toPath()),
+          StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void testExpressions() throws Exception {
+    assertSameStatements("class A {\n"
+        + "  String s = \"a\" +\n"
+        + "      \"b\" +\n"
+        + "      \"c\";\n"
+        + "  boolean b = x == 1 ||\n"
+        + "      y == 2;\n"
+        + "  void m() {\n"
+        + "    x = a.b(c,\n"
+        + "        d) + e;\n"
+        + "    Object o = new java.util.ArrayList<String>(\n"
+        + "        1);\n"
+        + "    int i = c ? 1\n"
+        + "        : 2;\n"
+        + "    m(!f(g,\n"
+        + "        h), (int) k);\n"
+        + "  }\n"
+        + "}\n");
+  }
+
+  @Test
+  public void testLambdasAndAnonymousClasses() throws Exception {
+    assertSameStatements("class A {\n"
+        + "  void m() {\n"
+        + "    run(new Runnable() {\n"
+        + "      public void run() {\n"
+        + "        f(x -> x + 1, (a, b) -> {\n"
+        + "          return a;\n"
+        + "        });\n"
+        + "      }\n"
+        + "    }, () -> { });\n"
+        + "  }\n"
+        + "}\n");
+  }
+
+  @Test
+  public void testDeclarations() throws Exception {
+    assertSameStatements("package a;\n"
+        + "import java.util.List;\n"
+        + "@SuppressWarnings(\"x\")\n"
+        + "class A<T extends Comparable<? super T>> extends B<T,\n"
+        + "    T> implements C {\n"
+        + "  static { }\n"
+        + "  interface D {}\n"
+        + "  int[] a = {1,\n"
+        + "      2}, b;\n"
+        + "  public synchronized byte toByteArray()[] {\n"
+        + "    return null;\n"
+        + "  }\n"
+        + "  <U> List<U> m(final int x, String... y) throws Exception {\n"
+        + "    try (Reader r = open();\n"
+        + "        Reader s = open()) {\n"
+        + "      for (int i = 0, j = 1; i < j; i++) {\n"
+        + "        continue;\n"
+        + "      }\n"
+        + "    } catch (Exception e) {\n"
+        + "      // ignored\n"
+        + "    } finally {\n"
+        + "      label: while (true) break label;\n"
+        + "    }\n"
+        + "    switch (x) {\n"
+        + "      case 1:\n"
+        + "      default:\n"
+        + "    }\n"
+        + "    return null;\n"
+        + "  }\n"
+        + "}\n");
+  }
+
+  @Test
+  public void testPackageAnnotations() throws Exception {
+    // e.g., a package-info.java file
+    assertSameStatements("@Deprecated\n"
+        + "@XmlSchema(namespace = \"a\",\n"
+        + "    elementFormDefault = XmlNsForm.QUALIFIED,\n"
+        + "    xmlns = {@XmlNs(prefix = \"b\",\n"
+        + "        namespaceURI = \"c\")})\n"
+        + "@Generated({\"d\",\n"
+        + "    \"e\"})\n"
+        + "package a.\n"
+        + "    b;\n"
+        + "class C {}\n");
+  }
+
+  @Test
+  public void testMultiLineArguments() throws Exception {
+    assertSameStatements("class A {\n"
+        + "  void m() {\n"
+        + "    M m =\n"
+        + "        new C(\n"
+        + "            (O) broker,\n"
+        + "            (byte) (a ^\n"
+        + "                b),\n"
+        + "            r++, // fake\n"
+        + "            new String[] {},\n"
+        + "            new int[] {\n"
+        + "                1, 2},\n"
+        + "            Collections.<T>emptyList(),\n"
+        + "            table[\n"
+        + "                i],\n"
+        + "            K.\n"
+        + "                V,\n"
+        + "            (Runnable)\n"
+        + "                () -> run(),\n"
+        + "            x instanceof\n"
+        + "                Y);\n"
+        + "  }\n"
+        + "}\n");
+  }
+
+  @Test
+  public void testMultiLineDeclarations() throws Exception {
+    assertSameStatements("@Documented\n"
+        + "@Target({ElementType.TYPE,\n"
+        + "    ElementType.METHOD})\n"
+        + "@interface A {\n"
+        + "  String[] value() default {};\n"
+        + "}\n"
+        + "class B {\n"
+        + "  @Deprecated\n"
+        + "  @SuppressWarnings({\"a\",\n"
+        + "      \"b\"})\n"
+        + "  void m(String a, boolean\n"
+        + "      b, Class\n"
+        + "      c, Map.Entry<K,\n"
+        + "      V[]> d) {\n"
+        + "    for (Map.Entry<K,\n"
+        + "        V> e : d) {\n"
+        + "    }\n"
+        + "    try {\n"
+        + "      m();\n"
+        + "    }\n"
+        + "    catch (Exception e)\n"
+        + "    {\n"
+        + "      // ignored\n"
+        + "    }\n"
+        + "  }\n"
+        + "}\n");
+  }
+
+  @Test
+  public void testLexerIsReusable() throws Exception {
+    File javaFile = ResourcesUtil.getFile("examples/MethodArguments.java");
+    String source = new String(Files.readAllBytes(javaFile.toPath()), StandardCharsets.UTF_8);
+
+    StatementLexer lexer = new StatementLexer();
+    StatementMap first = lexer.scan(source);
+    long tokens = lexer.getScannedTokens();
+    assertTrue(tokens > 0);
+
+    StatementMap second = lexer.scan(source);
+    assertEquals(first, second);
+    assertEquals(2 * tokens, lexer.getScannedTokens());
+  }
+
+  @Test
+  public void testEmptySource() {
+    assertEquals(0, new StatementLexer().scan("").size());
+    assertEquals(0, new StatementLexer().scan("// nothing\n").size());
+  }
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright (C) 2018 José Campos and locs-to-stm contributors.
+ * 
+ * This file is part of locs-to-stm.
+ * 
+ * locs-to-stm is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * locs-to-stm is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with locs-to-stm.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.locstostms.statements;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+
+public class TestStatementMap {
+
+  @Test
+  public void testEmpty() {
+    assertSame(StatementMap.EMPTY, new StatementMap.Builder().build());
+    assertEquals(0, StatementMap.EMPTY.size());
+    assertTrue(StatementMap.EMPTY.asMap().isEmpty());
+  }
+
+  @Test
+  public void testSortsAndRemovesDuplicates() {
+    StatementMap map = new StatementMap.Builder().add(10, 11).add(2, 4).add(2, 2).add(10, 10)
+        .add(2, 3).add(2, 4).add(2, 2).build();
+
+    assertEquals(2, map.size());
+    assertEquals(5, map.pairs());
+
+    assertEquals(2, map.statement(0));
+    assertEquals(3, map.lineCount(0));
+    assertEquals(2, map.line(0, 0));
+    assertEquals(3, map.line(0, 1));
+    assertEquals(4, map.line(0, 2));
+
+    assertEquals(10, map.statement(1));
+    assertEquals(2, map.lineCount(1));
+    assertEquals(10, map.line(1, 0));
+    assertEquals(11, map.line(1, 1));
+
+    assertEquals(1, map.indexOf(10));
+    assertTrue(map.indexOf(3) < 0);
+  }
+
+  @Test
+  public void testMapView() {
+    StatementMap map = new StatementMap.Builder().add(2, 2).add(2, 3).add(8, 8).build();
+
+    Map<Integer, Set<Integer>> expected = new HashMap<Integer, Set<Integer>>();
+    expected.put(2, new HashSet<Integer>(Arrays.asList(2, 3)));
+    expected.put(8, new HashSet<Integer>(Arrays.asList(8)));
+
+    Map<Integer, Set<Integer>> view = map.asMap();
+    assertEquals(expected, view);
+    assertTrue(view.get(2).contains(3));
+    assertFalse(view.get(2).contains(4));
+    assertNull(view.get(3));
+  }
+}